@@ -106,6 +106,11 @@ public abstract class AbstractAlertBolt extends BaseRichBolt {
 		}
 	}
 
+	@Override
+	public void cleanup() {
+		_adapter.close();
+	}
+
 	public void declareOutputFields(OutputFieldsDeclarer declearer) {
 		declearer.declareStream("message", new Fields("key", "message"));
 		declearer.declareStream("alert", new Fields( "message"));
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.alerts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Rolls up alerts that share the same key fields, by default designated_host
+ * and type, over tumbling windows of processing time. The first alert of a
+ * key in a window is kept, and every later one only updates its count and
+ * last seen time. When the window closes, one alert per key is released with
+ * count, first_seen, last_seen, window_start and window_end added.
+ * <p>
+ * State is an open addressing table of 64 bit key hashes with the counts and
+ * times in parallel primitive arrays, sized once for the maximum number of
+ * keys per window. Once that many keys are held, alerts for new keys are not
+ * aggregated and should be emitted as they are.
+ * <p>
+ * Not thread safe; each bolt executor owns one.
+ */
+public class AlertAggregator {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final String[] keyFields;
+	private final long windowMillis;
+	private final int maxKeys;
+
+	private final int mask;
+	/** Key hash per slot, 0 if the slot is free */
+	private final long[] hashes;
+	private final long[] counts;
+	private final long[] firstSeen;
+	private final long[] lastSeen;
+	private final JSONObject[] alerts;
+	/** Occupied slots in insertion order */
+	private final int[] used;
+	private int size = 0;
+
+	private long windowStart = -1;
+	private long overflow = 0;
+
+	/**
+	 * @param keyFields
+	 *            Alert fields that together form the aggregation key
+	 * @param windowMillis
+	 *            Window length in milliseconds
+	 * @param maxKeys
+	 *            Maximum number of keys held per window
+	 */
+	public AlertAggregator(String[] keyFields, long windowMillis, int maxKeys) {
+		if (keyFields.length == 0)
+			throw new IllegalArgumentException("At least one key field is required");
+		if (windowMillis <= 0)
+			throw new IllegalArgumentException("Window must be positive: "
+					+ windowMillis);
+		if (maxKeys <= 0 || maxKeys > 1 << 29)
+			throw new IllegalArgumentException("Invalid maximum number of keys: "
+					+ maxKeys);
+
+		this.keyFields = keyFields.clone();
+		this.windowMillis = windowMillis;
+		this.maxKeys = maxKeys;
+
+		// At most half full, so probe sequences stay short
+		int capacity = Integer.highestOneBit(maxKeys * 2 - 1) << 1;
+		mask = capacity - 1;
+		hashes = new long[capacity];
+		counts = new long[capacity];
+		firstSeen = new long[capacity];
+		lastSeen = new long[capacity];
+		alerts = new JSONObject[capacity];
+		used = new int[maxKeys];
+	}
+
+	/**
+	 * Counts an alert in the window of now. Call {@link #advance(long)} first
+	 * so an earlier window is released before the alert is counted.
+	 *
+	 * @return false if the alert opens a new key and the table is full, in
+	 *         which case it is not held
+	 */
+	public boolean add(JSONObject alert, long now) {
+		if (windowStart < 0)
+			windowStart = now - now % windowMillis;
+
+		long hash = hash(alert);
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+
+		while (hashes[slot] != 0) {
+			if (hashes[slot] == hash && sameKey(alerts[slot], alert)) {
+				counts[slot]++;
+				lastSeen[slot] = now;
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (size == maxKeys) {
+			overflow++;
+			return false;
+		}
+
+		hashes[slot] = hash;
+		counts[slot] = 1;
+		firstSeen[slot] = now;
+		lastSeen[slot] = now;
+		alerts[slot] = alert;
+		used[size++] = slot;
+		return true;
+	}
+
+	/**
+	 * Closes the current window if now is past its end.
+	 *
+	 * @return One rolled up alert per key of the closed window, in the order
+	 *         the keys were first seen; empty if the window is still open
+	 */
+	@SuppressWarnings("unchecked")
+	public List<JSONObject> advance(long now) {
+		if (windowStart < 0 || now < windowStart + windowMillis)
+			return Collections.emptyList();
+
+		List<JSONObject> rolled_up = new ArrayList<JSONObject>(size);
+
+		for (int i = 0; i < size; i++) {
+			int slot = used[i];
+
+			JSONObject alert = alerts[slot];
+			alert.put("count", counts[slot]);
+			alert.put("first_seen", firstSeen[slot]);
+			alert.put("last_seen", lastSeen[slot]);
+			alert.put("window_start", windowStart);
+			alert.put("window_end", windowStart + windowMillis);
+			rolled_up.add(alert);
+
+			hashes[slot] = 0;
+			alerts[slot] = null;
+		}
+
+		size = 0;
+		windowStart = -1;
+		return rolled_up;
+	}
+
+	/**
+	 * @return Number of keys held in the current window
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Alerts that were not aggregated because the table was full,
+	 *         since the last call
+	 */
+	public long takeOverflow() {
+		long taken = overflow;
+		overflow = 0;
+		return taken;
+	}
+
+	private long hash(JSONObject alert) {
+		long hash = FNV_OFFSET;
+
+		for (String field : keyFields) {
+			String value = String.valueOf(alert.get(field));
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+				hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+			}
+			// Keeps ("ab", "c") apart from ("a", "bc")
+			hash = (hash ^ 0x100) * FNV_PRIME;
+		}
+		return hash == 0 ? 1 : hash;
+	}
+
+	private boolean sameKey(JSONObject held, JSONObject alert) {
+		for (String field : keyFields) {
+			Object a = held.get(field);
+			Object b = alert.get(field);
+			if (a == null ? b != null : !String.valueOf(a).equals(
+					String.valueOf(b)))
+				return false;
+		}
+		return true;
+	}
+}
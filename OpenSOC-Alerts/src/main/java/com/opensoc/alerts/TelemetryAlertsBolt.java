@@ -18,6 +18,9 @@
 package com.opensoc.alerts;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
@@ -26,6 +29,8 @@ import org.apache.commons.configuration.Configuration;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import backtype.storm.Config;
+import backtype.storm.Constants;
 import backtype.storm.task.OutputCollector;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.tuple.Tuple;
@@ -58,6 +63,11 @@ public class TelemetryAlertsBolt extends AbstractAlertBolt {
 	private Properties metricProperties;
 	private JSONObject metricConfiguration;
 
+	private int _aggregation_window = 0;
+	private String[] _aggregation_key = { "designated_host", "type" };
+	private int _aggregation_max_keys = 10000;
+	private transient AlertAggregator aggregator;
+
 	// private AlertsCache suppressed_alerts;
 
 	/**
@@ -140,6 +150,41 @@ public class TelemetryAlertsBolt extends AbstractAlertBolt {
 		return this;
 	}
 
+	/**
+	 * @param seconds
+	 *            Length of the window over which alerts with the same key are
+	 *            rolled up into one, 0 to emit every alert as it fires
+	 * @return Instance of this class
+	 */
+
+	public TelemetryAlertsBolt withAggregationWindow(int seconds) {
+		_aggregation_window = seconds;
+		return this;
+	}
+
+	/**
+	 * @param fields
+	 *            Alert fields that together identify the alerts to roll up
+	 * @return Instance of this class
+	 */
+
+	public TelemetryAlertsBolt withAggregationKey(String... fields) {
+		_aggregation_key = fields;
+		return this;
+	}
+
+	/**
+	 * @param max_keys
+	 *            Maximum number of keys held per window, which bounds the
+	 *            memory of the aggregation state
+	 * @return Instance of this class
+	 */
+
+	public TelemetryAlertsBolt withAggregationMaxKeys(int max_keys) {
+		_aggregation_max_keys = max_keys;
+		return this;
+	}
+
 	@Override
 	void doPrepare(Map conf, TopologyContext topologyContext,
 			OutputCollector collector) throws IOException {
@@ -147,6 +192,13 @@ public class TelemetryAlertsBolt extends AbstractAlertBolt {
 		cache = CacheBuilder.newBuilder().maximumSize(_MAX_CACHE_SIZE)
 				.expireAfterWrite(_MAX_TIME_RETAIN, TimeUnit.MINUTES).build();
 
+		if (_aggregation_window > 0) {
+			aggregator = new AlertAggregator(_aggregation_key,
+					_aggregation_window * 1000L, _aggregation_max_keys);
+			LOG.info("[OpenSOC] Rolling up alerts every " + _aggregation_window
+					+ " seconds by " + Arrays.toString(_aggregation_key));
+		}
+
 		LOG.info("[OpenSOC] Preparing TelemetryAlert Bolt...");
 
 		try {
@@ -161,6 +213,12 @@ public class TelemetryAlertsBolt extends AbstractAlertBolt {
 	@SuppressWarnings("unchecked")
 	public void execute(Tuple tuple) {
 
+		if (isTickTuple(tuple)) {
+			if (aggregator != null)
+				releaseAggregated(System.currentTimeMillis());
+			return;
+		}
+
 		LOG.trace("[OpenSOC] Starting to process message for alerts");
 		JSONObject original_message = null;
 		String key = null;
@@ -178,61 +236,63 @@ public class TelemetryAlertsBolt extends AbstractAlertBolt {
 			
 			LOG.trace("[OpenSOC] Received tuple: " + original_message);
 
-			JSONObject alerts_tag = new JSONObject();
 			Map<String, JSONObject> alerts_list = _adapter
 					.alert(original_message);
 			JSONArray uuid_list = new JSONArray();
 
 			if (alerts_list == null || alerts_list.isEmpty()) {
-				System.out.println("[OpenSOC] No alerts detected in: "
+				LOG.trace("[OpenSOC] No alerts detected in: "
 						+ original_message);
-				_collector.ack(tuple);
-				_collector.emit("message", new Values(key, original_message));
 			} else {
+				long now = System.currentTimeMillis();
+				if (aggregator != null)
+					releaseAggregated(now);
+
 				for (String alert : alerts_list.keySet()) {
 					uuid_list.add(alert);
 
+					JSONObject global_alert = new JSONObject();
+					global_alert.putAll(_identifier);
+					global_alert.putAll(alerts_list.get(alert));
+					global_alert.put("timestamp", now);
+
+					if (aggregator != null) {
+						if (!aggregator.add(global_alert, now))
+							_collector.emit("alert", new Values(global_alert));
+						continue;
+					}
+
 					LOG.trace("[OpenSOC] Checking alerts cache: " + alert);
 
 					if (cache.getIfPresent(alert) == null) {
-						System.out.println("[OpenSOC]: Alert not found in cache: " + alert);
-
-						JSONObject global_alert = new JSONObject();
-						global_alert.putAll(_identifier);
-						global_alert.putAll(alerts_list.get(alert));
-						global_alert.put("timestamp", System.currentTimeMillis());
+						LOG.trace("[OpenSOC] Alert not found in cache: " + alert);
 						_collector.emit("alert", new Values(global_alert));
-
 						cache.put(alert, "");
-
 					} else
 						LOG.trace("Alert located in cache: " + alert);
+				}
 
-					LOG.debug("[OpenSOC] Alerts are: " + alerts_list);
-
-					if (original_message.containsKey("alerts")) {
-						JSONArray already_triggered = (JSONArray) original_message
-								.get("alerts");
-
-						uuid_list.addAll(already_triggered);
-						LOG.trace("[OpenSOC] Messages already had alerts...tagging more");
-					}
-
-					original_message.put("alerts", uuid_list);
-
-					LOG.debug("[OpenSOC] Detected alerts: " + alerts_tag);
+				LOG.debug("[OpenSOC] Alerts are: " + alerts_list);
 
-					_collector.ack(tuple);
-					_collector.emit("message", new Values(key, original_message));
+				if (original_message.containsKey("alerts")) {
+					JSONArray already_triggered = (JSONArray) original_message
+							.get("alerts");
 
+					uuid_list.addAll(already_triggered);
+					LOG.trace("[OpenSOC] Messages already had alerts...tagging more");
 				}
 
+				original_message.put("alerts", uuid_list);
+
 				/*
 				 * if (metricConfiguration != null) { emitCounter.inc();
 				 * ackCounter.inc(); }
 				 */
 			}
 
+			_collector.ack(tuple);
+			_collector.emit("message", new Values(key, original_message));
+
 		} catch (Exception e) {
 			e.printStackTrace();
 			LOG.error("Failed to tag message :" + original_message);
@@ -252,4 +312,44 @@ public class TelemetryAlertsBolt extends AbstractAlertBolt {
 		}
 	}
 
+	/**
+	 * Emits the rolled up alerts of a window that has closed by now, and
+	 * reports how many alerts of that window did not fit.
+	 */
+	private void releaseAggregated(long now) {
+		List<JSONObject> released = aggregator.advance(now);
+		if (released.isEmpty())
+			return;
+
+		for (JSONObject rolled_up : released)
+			_collector.emit("alert", new Values(rolled_up));
+
+		long overflow = aggregator.takeOverflow();
+		if (overflow > 0)
+			LOG.warn("[OpenSOC] Alert aggregation is full at "
+					+ _aggregation_max_keys + " keys, emitted " + overflow
+					+ " alerts without rolling them up");
+	}
+
+	private static boolean isTickTuple(Tuple tuple) {
+		return Constants.SYSTEM_COMPONENT_ID.equals(tuple.getSourceComponent())
+				&& Constants.SYSTEM_TICK_STREAM_ID.equals(tuple
+						.getSourceStreamId());
+	}
+
+	/**
+	 * Requests tick tuples when aggregating, so a window is released on time
+	 * even when no new alerts arrive.
+	 */
+	@Override
+	public Map<String, Object> getComponentConfiguration() {
+		if (_aggregation_window <= 0)
+			return null;
+
+		Map<String, Object> conf = new HashMap<String, Object>();
+		conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS,
+				Math.max(1, Math.min(_aggregation_window, 10)));
+		return conf;
+	}
+
 }
\ No newline at end of file
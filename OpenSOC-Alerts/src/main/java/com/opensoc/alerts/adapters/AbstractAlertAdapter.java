@@ -60,7 +60,7 @@ public abstract class AbstractAlertAdapter implements AlertsAdapter, Serializabl
 		return (ip1 + "-" + ip2 + "-" + alert_type);
 	}
 	
-	private void generateCache(int _MAX_CACHE_SIZE, int _MAX_TIME_RETAIN)
+	protected void generateCache(int _MAX_CACHE_SIZE, int _MAX_TIME_RETAIN)
 	{
 		cache = CacheBuilder.newBuilder().maximumSize(_MAX_CACHE_SIZE)
 				.expireAfterWrite(_MAX_TIME_RETAIN, TimeUnit.MINUTES).build();
@@ -2,24 +2,14 @@ package com.opensoc.alerts.adapters;
 
 import java.io.Serializable;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.validator.routines.InetAddressValidator;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
-import org.apache.hadoop.hbase.client.HBaseAdmin;
-import org.apache.hadoop.hbase.client.HConnection;
-import org.apache.hadoop.hbase.client.HConnectionManager;
-import org.apache.hadoop.hbase.client.HTable;
-import org.apache.hadoop.hbase.client.HTableInterface;
-import org.apache.hadoop.hbase.client.Result;
-import org.apache.hadoop.hbase.client.ResultScanner;
-import org.apache.hadoop.hbase.client.Scan;
-import org.apache.hadoop.hbase.util.Bytes;
 import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,8 +22,6 @@ public class CIFAlertsAdapter implements AlertsAdapter, Serializable {
 
 	String enrichment_tag;
 
-	HTableInterface blacklist_table;
-	HTableInterface whitelist_table;
 	InetAddressValidator ipvalidator = new InetAddressValidator();
 	String _whitelist_table_name;
 	String _blacklist_table_name;
@@ -45,8 +33,9 @@ public class CIFAlertsAdapter implements AlertsAdapter, Serializable {
 	Cache<String, String> cache;
 	String _topology_name;
 
-	Set<String> loaded_whitelist = new HashSet<String>();
-	Set<String> loaded_blacklist = new HashSet<String>();
+	volatile NetworkLists lists = NetworkLists.EMPTY;
+	long _refresh_minutes = 0;
+	transient ScheduledFuture<?> refresher;
 
 	protected static final Logger LOG = LoggerFactory
 			.getLogger(CIFAlertsAdapter.class);
@@ -90,6 +79,10 @@ public class CIFAlertsAdapter implements AlertsAdapter, Serializable {
 					.expireAfterWrite(_MAX_TIME_RETAIN, TimeUnit.MINUTES)
 					.build();
 
+			if (config.containsKey("refresh_minutes"))
+				_refresh_minutes = Long.parseLong(config
+						.get("refresh_minutes"));
+
 			enrichment_tag = config.get("enrichment_tag");
 
 		} catch (Exception e) {
@@ -114,69 +107,11 @@ public class CIFAlertsAdapter implements AlertsAdapter, Serializable {
 				+ conf.get("hbase.zookeeper.property.clientPort"));
 
 		try {
+			lists = NetworkLists.load(conf, _whitelist_table_name,
+					_blacklist_table_name);
 
-			LOG.trace("[OpenSOC] Attempting to connect to hbase");
-
-			HConnection connection = HConnectionManager.createConnection(conf);
-
-			LOG.trace("[OpenSOC] CONNECTED TO HBASE");
-
-			HBaseAdmin hba = new HBaseAdmin(conf);
-
-			if (!hba.tableExists(_whitelist_table_name))
-				throw new Exception("Whitelist table doesn't exist");
-
-			if (!hba.tableExists(_blacklist_table_name))
-				throw new Exception("Blacklist table doesn't exist");
-
-			whitelist_table = new HTable(conf, _whitelist_table_name);
-
-			LOG.trace("[OpenSOC] CONNECTED TO TABLE: " + _whitelist_table_name);
-			blacklist_table = new HTable(conf, _blacklist_table_name);
-			LOG.trace("[OpenSOC] CONNECTED TO TABLE: " + _blacklist_table_name);
-
-			if (connection == null || whitelist_table == null
-					|| blacklist_table == null)
-				throw new Exception("Unable to initialize hbase connection");
-
-			Scan scan = new Scan();
-
-			ResultScanner rs = whitelist_table.getScanner(scan);
-			try {
-				for (Result r = rs.next(); r != null; r = rs.next()) {
-					loaded_whitelist.add(Bytes.toString(r.getRow()));
-				}
-			} catch (Exception e) {
-				LOG.trace("[OpenSOC] COULD NOT READ FROM HBASE");
-				e.printStackTrace();
-			} finally {
-				rs.close(); // always close the ResultScanner!
-				hba.close();
-			}
-			whitelist_table.close();
-
-			LOG.trace("[OpenSOC] READ IN WHITELIST: " + loaded_whitelist.size());
-
-			scan = new Scan();
-
-			rs = blacklist_table.getScanner(scan);
-			try {
-				for (Result r = rs.next(); r != null; r = rs.next()) {
-					loaded_blacklist.add(Bytes.toString(r.getRow()));
-				}
-			} catch (Exception e) {
-				LOG.trace("[OpenSOC] COULD NOT READ FROM HBASE");
-				e.printStackTrace();
-			} finally {
-				rs.close(); // always close the ResultScanner!
-				hba.close();
-			}
-			blacklist_table.close();
-
-			LOG.trace("[OpenSOC] READ IN WHITELIST: " + loaded_whitelist.size());
-
-			rs.close(); // always close the ResultScanner!
-			hba.close();
+			if (_refresh_minutes > 0 && refresher == null)
+				refresher = NetworkLists.scheduleRefresh(this, _refresh_minutes);
 
 			return true;
 		} catch (Exception e) {
@@ -190,12 +125,24 @@ public class CIFAlertsAdapter implements AlertsAdapter, Serializable {
 
 	@Override
 	public boolean refresh() throws Exception {
+		lists = NetworkLists.load(conf, _whitelist_table_name,
+				_blacklist_table_name);
 		return true;
 	}
 
+	@Override
+	public void close() {
+		if (refresher != null) {
+			refresher.cancel(false);
+			refresher = null;
+		}
+	}
+
 	@Override
 	public Map<String, JSONObject> alert(JSONObject raw_message) {
 
+		NetworkLists current = lists;
+
 		System.out.println("LOOKING FOR ENRICHMENT TAG: " + enrichment_tag);
 
 		Map<String, JSONObject> alerts = new HashMap<String, JSONObject>();
@@ -238,14 +185,14 @@ public class CIFAlertsAdapter implements AlertsAdapter, Serializable {
 			if (content.containsKey("ip_src_addr")) {
 				source = content.get("ip_src_addr").toString();
 
-				if (RangeChecker.checkRange(loaded_whitelist, source))
+				if (current.getWhitelist().contains(source))
 					host = source;
 			}
 
 			if (content.containsKey("ip_dst_addr")) {
 				dest = content.get("ip_dst_addr").toString();
 
-				if (RangeChecker.checkRange(loaded_whitelist, dest))
+				if (current.getWhitelist().contains(dest))
 					host = dest;
 			}
 			
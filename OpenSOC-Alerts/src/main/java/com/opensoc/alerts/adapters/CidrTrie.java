@@ -0,0 +1,352 @@
+package com.opensoc.alerts.adapters;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable binary trie of IPv4 and IPv6 networks, used to check addresses
+ * against the white and black lists. Entries are CIDR blocks such as
+ * 10.0.0.0/8 or 2001:db8::/32; a plain address is a /32 or /128.
+ * <p>
+ * A lookup walks at most one node per address bit and does not allocate, so
+ * its cost does not depend on the number of networks. Nodes are kept in two
+ * flat arrays and every node stores the longest prefix that covers it, so the
+ * walk simply stops at the first missing child.
+ */
+public final class CidrTrie implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOG = LoggerFactory.getLogger(CidrTrie.class);
+
+	private static final int V4_ROOT = 0;
+	private static final int V6_ROOT = 1;
+	private static final int INVALID = Integer.MIN_VALUE;
+
+	/** Zero and one child of every node, 0 if absent */
+	private final int[] children;
+	/** Longest prefix length + 1 covering every node, 0 if none */
+	private final byte[] prefixes;
+	private final int size;
+	private final GroupVisitor lookup = new Lookup(this);
+
+	private CidrTrie(int[] children, byte[] prefixes, int size) {
+		this.children = children;
+		this.prefixes = prefixes;
+		this.size = size;
+	}
+
+	/**
+	 * Builds a trie from a list of networks. Entries that are not valid CIDR
+	 * blocks or addresses are logged and skipped.
+	 */
+	public static CidrTrie build(Collection<String> networks) {
+		Builder builder = new Builder();
+
+		for (String network : networks) {
+			if (!builder.add(network))
+				LOG.warn("[OpenSOC] Skipping invalid network: " + network);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @return Number of networks in the trie
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the address is in any of the networks
+	 */
+	public boolean contains(String ip) {
+		return match(ip) >= 0;
+	}
+
+	/**
+	 * @return Prefix length of the longest network containing the address,
+	 *         or -1 if there is none or the address is not valid
+	 */
+	public int match(String ip) {
+		if (ip == null)
+			return -1;
+
+		int node;
+
+		if (ip.indexOf(':') < 0) {
+			long address = parseV4(ip, 0, ip.length());
+			if (address < 0)
+				return -1;
+			node = descend(V4_ROOT, (int) address, 32);
+		} else {
+			node = parseV6(ip, 0, ip.length(), lookup, V6_ROOT);
+			if (node == INVALID)
+				return -1;
+		}
+
+		if (node < 0)
+			node = -node - 1;
+		return (prefixes[node] & 0xff) - 1;
+	}
+
+	/**
+	 * Follows the top count bits of value from node. Returns the node reached,
+	 * or -(last node) - 1 if the path ends early; a negative node is passed
+	 * through unchanged.
+	 */
+	private int descend(int node, int value, int count) {
+		if (node < 0)
+			return node;
+
+		for (int i = count - 1; i >= 0; i--) {
+			int next = children[2 * node + ((value >>> i) & 1)];
+			if (next == 0)
+				return -node - 1;
+			node = next;
+		}
+		return node;
+	}
+
+	/**
+	 * Parses a dotted quad without allocating.
+	 *
+	 * @return The address as an unsigned 32 bit value, or -1 if invalid
+	 */
+	static long parseV4(String s, int from, int to) {
+		long address = 0;
+		int octets = 0;
+		int value = -1;
+
+		for (int i = from; i < to; i++) {
+			char c = s.charAt(i);
+
+			if (c >= '0' && c <= '9') {
+				value = value < 0 ? c - '0' : value * 10 + c - '0';
+				if (value > 255)
+					return -1;
+			} else if (c == '.' && value >= 0 && octets < 3) {
+				address = address << 8 | value;
+				octets++;
+				value = -1;
+			} else {
+				return -1;
+			}
+		}
+
+		if (value < 0 || octets != 3)
+			return -1;
+		return address << 8 | value;
+	}
+
+	/**
+	 * Parses an IPv6 address, including the :: shorthand and a trailing
+	 * dotted quad, and hands its eight 16 bit groups to the visitor in order.
+	 *
+	 * @return The final visitor state, or INVALID
+	 */
+	static int parseV6(String s, int from, int to, GroupVisitor visitor,
+			int state) {
+		int gap = s.indexOf("::", from);
+		if (gap >= to)
+			gap = -1;
+		if (gap >= 0) {
+			int second = s.indexOf("::", gap + 1);
+			if (second >= 0 && second < to)
+				return INVALID;
+		}
+
+		// Groups after :: are right aligned
+		int tail = 0;
+		if (gap >= 0 && gap + 2 < to) {
+			tail = 1;
+			for (int i = gap + 2; i < to; i++) {
+				char c = s.charAt(i);
+				if (c == ':')
+					tail++;
+				else if (c == '.') {
+					tail++;
+					break;
+				}
+			}
+		}
+
+		int pos = 0;
+		int i = from;
+
+		while (i < to) {
+			if (i == gap) {
+				if (pos >= 8 - tail)
+					return INVALID;
+				for (; pos < 8 - tail; pos++)
+					state = visitor.visit(state, 0);
+				i += 2;
+				continue;
+			}
+
+			int value = 0;
+			int end = i;
+			while (end < to && end - i <= 4) {
+				int digit = hex(s.charAt(end));
+				if (digit < 0)
+					break;
+				value = value << 4 | digit;
+				end++;
+			}
+
+			if (end < to && s.charAt(end) == '.') {
+				long address = pos == 6 ? parseV4(s, i, to) : -1;
+				if (address < 0)
+					return INVALID;
+				state = visitor.visit(state, (int) (address >>> 16));
+				state = visitor.visit(state, (int) address & 0xffff);
+				pos = 8;
+				break;
+			}
+
+			if (end == i || end - i > 4 || pos >= 8)
+				return INVALID;
+			state = visitor.visit(state, value);
+			pos++;
+
+			if (end == to)
+				break;
+			if (s.charAt(end) != ':')
+				return INVALID;
+
+			i = end == gap ? end : end + 1;
+			if (i == to)
+				return INVALID;
+		}
+
+		return pos == 8 ? state : INVALID;
+	}
+
+	private static int hex(char c) {
+		if (c >= '0' && c <= '9')
+			return c - '0';
+		if (c >= 'a' && c <= 'f')
+			return c - 'a' + 10;
+		if (c >= 'A' && c <= 'F')
+			return c - 'A' + 10;
+		return -1;
+	}
+
+	/**
+	 * Receives the 16 bit groups of a parsed address.
+	 */
+	interface GroupVisitor {
+		int visit(int state, int group);
+	}
+
+	private static final class Lookup implements GroupVisitor, Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final CidrTrie trie;
+
+		Lookup(CidrTrie trie) {
+			this.trie = trie;
+		}
+
+		public int visit(int node, int group) {
+			return trie.descend(node, group, 16);
+		}
+	}
+
+	/**
+	 * Collects networks for {@link CidrTrie#build(Collection)}.
+	 */
+	static final class Builder {
+
+		private int[] children = new int[64];
+		private byte[] prefixes = new byte[32];
+		private int nodes = 2;
+		private int size;
+
+		/**
+		 * @return false if the network is not valid
+		 */
+		boolean add(String network) {
+			if (network == null)
+				return false;
+
+			String entry = network.trim();
+			int slash = entry.indexOf('/');
+			int end = slash < 0 ? entry.length() : slash;
+			boolean v6 = entry.indexOf(':') >= 0;
+			int length = v6 ? 128 : 32;
+
+			if (slash >= 0) {
+				int max = length;
+				try {
+					length = Integer.parseInt(entry.substring(slash + 1));
+				} catch (NumberFormatException e) {
+					return false;
+				}
+				if (length < 0 || length > max)
+					return false;
+			}
+
+			final int[] groups = new int[8];
+
+			if (v6) {
+				GroupVisitor collect = new GroupVisitor() {
+					public int visit(int index, int group) {
+						groups[index] = group;
+						return index + 1;
+					}
+				};
+				if (parseV6(entry, 0, end, collect, 0) == INVALID)
+					return false;
+			} else {
+				long address = parseV4(entry, 0, end);
+				if (address < 0)
+					return false;
+				groups[0] = (int) (address >>> 16);
+				groups[1] = (int) address & 0xffff;
+			}
+
+			int node = v6 ? V6_ROOT : V4_ROOT;
+			for (int i = 0; i < length; i++) {
+				int slot = 2 * node + ((groups[i >> 4] >>> (15 - (i & 15))) & 1);
+				if (children[slot] == 0) {
+					int next = newNode();
+					children[slot] = next;
+				}
+				node = children[slot];
+			}
+
+			prefixes[node] = (byte) (length + 1);
+			size++;
+			return true;
+		}
+
+		private int newNode() {
+			if (nodes == prefixes.length) {
+				prefixes = Arrays.copyOf(prefixes, nodes * 2);
+				children = Arrays.copyOf(children, nodes * 4);
+			}
+			return nodes++;
+		}
+
+		CidrTrie build() {
+			int[] c = Arrays.copyOf(children, nodes * 2);
+			byte[] p = Arrays.copyOf(prefixes, nodes);
+
+			// Children always come after their parent
+			for (int node = 0; node < nodes; node++) {
+				for (int slot = 2 * node; slot <= 2 * node + 1; slot++) {
+					int child = c[slot];
+					if (child != 0 && p[child] == 0)
+						p[child] = p[node];
+				}
+			}
+			return new CidrTrie(c, p, size);
+		}
+	}
+}
@@ -2,24 +2,14 @@ package com.opensoc.alerts.adapters;
 
 import java.io.Serializable;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.validator.routines.InetAddressValidator;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
-import org.apache.hadoop.hbase.client.HBaseAdmin;
-import org.apache.hadoop.hbase.client.HConnection;
-import org.apache.hadoop.hbase.client.HConnectionManager;
-import org.apache.hadoop.hbase.client.HTable;
-import org.apache.hadoop.hbase.client.HTableInterface;
-import org.apache.hadoop.hbase.client.Result;
-import org.apache.hadoop.hbase.client.ResultScanner;
-import org.apache.hadoop.hbase.client.Scan;
-import org.apache.hadoop.hbase.util.Bytes;
 import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,8 +21,6 @@ import com.opensoc.alerts.interfaces.AlertsAdapter;
 public class HbaseWhiteAndBlacklistAdapter implements AlertsAdapter,
 		Serializable {
 
-	HTableInterface blacklist_table;
-	HTableInterface whitelist_table;
 	InetAddressValidator ipvalidator = new InetAddressValidator();
 	String _whitelist_table_name;
 	String _blacklist_table_name;
@@ -44,8 +32,9 @@ public class HbaseWhiteAndBlacklistAdapter implements AlertsAdapter,
 	Cache<String, String> cache;
 	String _topology_name;
 
-	Set<String> loaded_whitelist = new HashSet<String>();
-	Set<String> loaded_blacklist = new HashSet<String>();
+	volatile NetworkLists lists = NetworkLists.EMPTY;
+	long _refresh_minutes = 0;
+	transient ScheduledFuture<?> refresher;
 
 	protected static final Logger LOG = LoggerFactory
 			.getLogger(HbaseWhiteAndBlacklistAdapter.class);
@@ -88,6 +77,10 @@ public class HbaseWhiteAndBlacklistAdapter implements AlertsAdapter,
 			cache = CacheBuilder.newBuilder().maximumSize(_MAX_CACHE_SIZE)
 					.expireAfterWrite(_MAX_TIME_RETAIN, TimeUnit.MINUTES)
 					.build();
+
+			if (config.containsKey("refresh_minutes"))
+				_refresh_minutes = Long.parseLong(config
+						.get("refresh_minutes"));
 		} catch (Exception e) {
 			System.out.println("Could not initialize Alerts Adapter");
 			e.printStackTrace();
@@ -110,69 +103,11 @@ public class HbaseWhiteAndBlacklistAdapter implements AlertsAdapter,
 				+ conf.get("hbase.zookeeper.property.clientPort"));
 
 		try {
+			lists = NetworkLists.load(conf, _whitelist_table_name,
+					_blacklist_table_name);
 
-			LOG.trace("[OpenSOC] Attempting to connect to hbase");
-
-			HConnection connection = HConnectionManager.createConnection(conf);
-
-			LOG.trace("[OpenSOC] CONNECTED TO HBASE");
-
-			HBaseAdmin hba = new HBaseAdmin(conf);
-
-			if (!hba.tableExists(_whitelist_table_name))
-				throw new Exception("Whitelist table doesn't exist");
-
-			if (!hba.tableExists(_blacklist_table_name))
-				throw new Exception("Blacklist table doesn't exist");
-
-			whitelist_table = new HTable(conf, _whitelist_table_name);
-
-			LOG.trace("[OpenSOC] CONNECTED TO TABLE: " + _whitelist_table_name);
-			blacklist_table = new HTable(conf, _blacklist_table_name);
-			LOG.trace("[OpenSOC] CONNECTED TO TABLE: " + _blacklist_table_name);
-
-			if (connection == null || whitelist_table == null
-					|| blacklist_table == null)
-				throw new Exception("Unable to initialize hbase connection");
-
-			Scan scan = new Scan();
-
-			ResultScanner rs = whitelist_table.getScanner(scan);
-			try {
-				for (Result r = rs.next(); r != null; r = rs.next()) {
-					loaded_whitelist.add(Bytes.toString(r.getRow()));
-				}
-			} catch (Exception e) {
-				LOG.trace("[OpenSOC] COULD NOT READ FROM HBASE");
-				e.printStackTrace();
-			} finally {
-				rs.close(); // always close the ResultScanner!
-				hba.close();
-			}
-			whitelist_table.close();
-
-			LOG.trace("[OpenSOC] READ IN WHITELIST: " + loaded_whitelist.size());
-
-			scan = new Scan();
-
-			rs = blacklist_table.getScanner(scan);
-			try {
-				for (Result r = rs.next(); r != null; r = rs.next()) {
-					loaded_blacklist.add(Bytes.toString(r.getRow()));
-				}
-			} catch (Exception e) {
-				LOG.trace("[OpenSOC] COULD NOT READ FROM HBASE");
-				e.printStackTrace();
-			} finally {
-				rs.close(); // always close the ResultScanner!
-				hba.close();
-			}
-			blacklist_table.close();
-
-			LOG.trace("[OpenSOC] READ IN WHITELIST: " + loaded_whitelist.size());
-
-			rs.close(); // always close the ResultScanner!
-			hba.close();
+			if (_refresh_minutes > 0 && refresher == null)
+				refresher = NetworkLists.scheduleRefresh(this, _refresh_minutes);
 
 			return true;
 		} catch (Exception e) {
@@ -203,8 +138,16 @@ public class HbaseWhiteAndBlacklistAdapter implements AlertsAdapter,
 	}
 
 	public boolean refresh() throws Exception {
-		// TODO Auto-generated method stub
-		return false;
+		lists = NetworkLists.load(conf, _whitelist_table_name,
+				_blacklist_table_name);
+		return true;
+	}
+
+	public void close() {
+		if (refresher != null) {
+			refresher.cancel(false);
+			refresher = null;
+		}
 	}
 
 	private String makeKey(String ip1, String ip2, int alert_type) {
@@ -214,6 +157,8 @@ public class HbaseWhiteAndBlacklistAdapter implements AlertsAdapter,
 	@SuppressWarnings("unchecked")
 	public Map<String, JSONObject> alert(JSONObject raw_message) {
 
+		NetworkLists current = lists;
+
 		Map<String, JSONObject> alerts = new HashMap<String, JSONObject>();
 
 		JSONObject content = (JSONObject) raw_message.get("message");
@@ -316,9 +261,9 @@ public class HbaseWhiteAndBlacklistAdapter implements AlertsAdapter,
 
 		String designated_host = null;
 
-		if (loaded_whitelist.contains(source_ip))
+		if (current.getWhitelist().contains(source_ip))
 			designated_host = source_ip;
-		else if (loaded_whitelist.contains(dst_ip))
+		else if (current.getWhitelist().contains(dst_ip))
 			designated_host = dst_ip;
 
 		if (designated_host == null) {
@@ -402,7 +347,7 @@ public class HbaseWhiteAndBlacklistAdapter implements AlertsAdapter,
 
 		}
 
-		if (loaded_blacklist.contains(source_ip)) {
+		if (current.getBlacklist().contains(source_ip)) {
 			int alert_type = 6;
 
 			JSONObject alert = new JSONObject();
@@ -427,7 +372,7 @@ public class HbaseWhiteAndBlacklistAdapter implements AlertsAdapter,
 
 		}
 
-		if (loaded_blacklist.contains(dst_ip)) {
+		if (current.getBlacklist().contains(dst_ip)) {
 			int alert_type = 7;
 
 			JSONObject alert = new JSONObject();
@@ -0,0 +1,155 @@
+package com.opensoc.alerts.adapters;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opensoc.alerts.interfaces.AlertsAdapter;
+
+/**
+ * Whitelist and blacklist networks, read from the row keys of two HBase
+ * tables. Instances are immutable: adapters keep the current lists in a
+ * volatile field and swap in a freshly loaded instance on refresh, so
+ * alert() always sees a consistent pair and never waits on a reload.
+ */
+public final class NetworkLists implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(NetworkLists.class);
+
+	public static final NetworkLists EMPTY = new NetworkLists(
+			CidrTrie.build(Collections.<String> emptyList()),
+			CidrTrie.build(Collections.<String> emptyList()));
+
+	private static ScheduledThreadPoolExecutor refresher;
+
+	private final CidrTrie whitelist;
+	private final CidrTrie blacklist;
+
+	private NetworkLists(CidrTrie whitelist, CidrTrie blacklist) {
+		this.whitelist = whitelist;
+		this.blacklist = blacklist;
+	}
+
+	static NetworkLists of(Collection<String> whitelist,
+			Collection<String> blacklist) {
+		return new NetworkLists(CidrTrie.build(whitelist),
+				CidrTrie.build(blacklist));
+	}
+
+	public CidrTrie getWhitelist() {
+		return whitelist;
+	}
+
+	public CidrTrie getBlacklist() {
+		return blacklist;
+	}
+
+	/**
+	 * Scans both tables. A table that is missing or cannot be read fails the
+	 * whole load, so a partial list is never swapped in.
+	 */
+	public static NetworkLists load(Configuration conf, String whitelist_table,
+			String blacklist_table) throws IOException {
+		HBaseAdmin hba = new HBaseAdmin(conf);
+
+		try {
+			if (!hba.tableExists(whitelist_table))
+				throw new IOException("Whitelist table doesn't exist");
+
+			if (!hba.tableExists(blacklist_table))
+				throw new IOException("Blacklist table doesn't exist");
+		} finally {
+			hba.close();
+		}
+
+		CidrTrie whitelist = CidrTrie.build(scan(conf, whitelist_table));
+		CidrTrie blacklist = CidrTrie.build(scan(conf, blacklist_table));
+
+		LOG.trace("[OpenSOC] READ IN WHITELIST: " + whitelist.size()
+				+ " BLACKLIST: " + blacklist.size());
+
+		return new NetworkLists(whitelist, blacklist);
+	}
+
+	private static List<String> scan(Configuration conf, String table_name)
+			throws IOException {
+		List<String> rows = new ArrayList<String>();
+		HTable table = new HTable(conf, table_name);
+
+		try {
+			ResultScanner rs = table.getScanner(new Scan());
+			try {
+				for (Result r = rs.next(); r != null; r = rs.next())
+					rows.add(Bytes.toString(r.getRow()));
+			} finally {
+				rs.close();
+			}
+		} finally {
+			table.close();
+		}
+		return rows;
+	}
+
+	/**
+	 * Calls {@link AlertsAdapter#refresh()} every interval on a daemon thread
+	 * shared by all adapters of the worker. Failed refreshes are logged and
+	 * the adapter keeps its current lists. The adapter cancels the returned
+	 * future in {@link AlertsAdapter#close()}.
+	 */
+	public static ScheduledFuture<?> scheduleRefresh(AlertsAdapter adapter,
+			long minutes) {
+		return scheduleRefresh(adapter, minutes, TimeUnit.MINUTES);
+	}
+
+	static ScheduledFuture<?> scheduleRefresh(final AlertsAdapter adapter,
+			long period, TimeUnit unit) {
+		Runnable task = new Runnable() {
+			public void run() {
+				try {
+					if (!adapter.refresh())
+						LOG.warn("[OpenSOC] Could not refresh white and blacklists");
+				} catch (Exception e) {
+					LOG.error("[OpenSOC] Could not refresh white and blacklists",
+							e);
+				}
+			}
+		};
+		return getRefresher().scheduleWithFixedDelay(task, period, period,
+				unit);
+	}
+
+	private static synchronized ScheduledThreadPoolExecutor getRefresher() {
+		if (refresher == null) {
+			refresher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "alerts-list-refresh");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			// Drops a cancelled task, and the adapter it holds, right away
+			refresher.setRemoveOnCancelPolicy(true);
+		}
+		return refresher;
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.alerts.adapters;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.json.simple.JSONObject;
+
+import com.opensoc.alerts.rules.RuleSet;
+
+/**
+ * Fires the alerts of every rule in an alerts.xml file that matches the
+ * message, see {@link RuleSet} for the rule format. The rules are compiled
+ * when the adapter is created, so the file only has to exist where the
+ * topology is submitted.
+ * <p>
+ * Settings:
+ * <ul>
+ * <li>rules_file - alerts.xml to compile. Defaults to the topology's
+ * alerts.xml</li>
+ * <li>_MAX_CACHE_SIZE, _MAX_TIME_RETAIN - alert id cache</li>
+ * <li>whitelist_table_name, blacklist_table_name - optional HBase tables for
+ * list conditions and the designated host</li>
+ * <li>refresh_minutes - reload interval of the tables, 0 disables</li>
+ * </ul>
+ */
+@SuppressWarnings("serial")
+public class RuleAlertAdapter extends AbstractAlertAdapter {
+
+	RuleSet rules;
+	String _whitelist_table_name;
+	String _blacklist_table_name;
+	long _refresh_minutes = 0;
+	Configuration conf = null;
+
+	volatile NetworkLists lists = NetworkLists.EMPTY;
+	transient ScheduledFuture<?> refresher;
+
+	public RuleAlertAdapter(Map<String, String> config) {
+		try {
+			if (!config.containsKey("rules_file"))
+				throw new Exception("Rules file is missing");
+
+			rules = RuleSet.load(config.get("rules_file"));
+
+			if (!config.containsKey("_MAX_CACHE_SIZE"))
+				throw new Exception("_MAX_CACHE_SIZE name is missing");
+
+			if (!config.containsKey("_MAX_TIME_RETAIN"))
+				throw new Exception("_MAX_TIME_RETAIN name is missing");
+
+			generateCache(Integer.parseInt(config.get("_MAX_CACHE_SIZE")),
+					Integer.parseInt(config.get("_MAX_TIME_RETAIN")));
+
+			_whitelist_table_name = config.get("whitelist_table_name");
+			_blacklist_table_name = config.get("blacklist_table_name");
+
+			if ((_whitelist_table_name == null) != (_blacklist_table_name == null))
+				throw new Exception(
+						"Whitelist and blacklist table names must be set together");
+
+			if (config.containsKey("refresh_minutes"))
+				_refresh_minutes = Long.parseLong(config
+						.get("refresh_minutes"));
+
+			_LOG.info("[OpenSOC] Compiled " + rules.size() + " alert rules from "
+					+ config.get("rules_file"));
+		} catch (Exception e) {
+			throw new IllegalArgumentException(
+					"Could not initialize Alerts Adapter", e);
+		}
+	}
+
+	public boolean initialize() {
+		if (_whitelist_table_name == null)
+			return true;
+
+		conf = HBaseConfiguration.create();
+
+		try {
+			lists = NetworkLists.load(conf, _whitelist_table_name,
+					_blacklist_table_name);
+
+			if (_refresh_minutes > 0 && refresher == null)
+				refresher = NetworkLists.scheduleRefresh(this, _refresh_minutes);
+
+			return true;
+		} catch (Exception e) {
+
+			e.printStackTrace();
+		}
+
+		return false;
+	}
+
+	public boolean refresh() throws Exception {
+		if (_whitelist_table_name == null)
+			return true;
+
+		lists = NetworkLists.load(conf, _whitelist_table_name,
+				_blacklist_table_name);
+		return true;
+	}
+
+	public void close() {
+		if (refresher != null) {
+			refresher.cancel(false);
+			refresher = null;
+		}
+	}
+
+	public Map<String, JSONObject> alert(JSONObject raw_message) {
+
+		NetworkLists current = lists;
+		List<RuleSet.Rule> fired = rules.match(raw_message, current);
+
+		if (fired.isEmpty())
+			return null;
+
+		Map<String, JSONObject> alerts = new HashMap<String, JSONObject>();
+		JSONObject content = (JSONObject) raw_message.get("message");
+		Object enrichment = raw_message.get("enrichment");
+
+		String source = "unknown";
+		String dest = "unknown";
+		String host = "unknown";
+
+		if (content != null && content.containsKey("ip_src_addr")) {
+			source = content.get("ip_src_addr").toString();
+
+			if (current.getWhitelist().contains(source))
+				host = source;
+		}
+
+		if (content != null && content.containsKey("ip_dst_addr")) {
+			dest = content.get("ip_dst_addr").toString();
+
+			if (current.getWhitelist().contains(dest))
+				host = dest;
+		}
+
+		for (RuleSet.Rule rule : fired) {
+			JSONObject alert = rule.newAlert();
+
+			putIfAbsent(alert, "designated_host", host);
+			putIfAbsent(alert, "source", source);
+			putIfAbsent(alert, "dest", dest);
+			putIfAbsent(alert, "description", rule.getName());
+
+			String alert_id = generateAlertId(source, dest, rule.getId());
+			putIfAbsent(alert, "alert_id", alert_id);
+
+			if (enrichment != null)
+				putIfAbsent(alert, "enrichment", enrichment);
+
+			alerts.put(alert_id, alert);
+		}
+
+		return alerts;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void putIfAbsent(JSONObject alert, String key, Object value) {
+		if (!alert.containsKey(key))
+			alert.put(key, value);
+	}
+
+	public boolean containsAlertId(String alert) {
+		return false;
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.alerts.rules;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.opensoc.alerts.adapters.CidrTrie;
+import com.opensoc.alerts.adapters.NetworkLists;
+
+/**
+ * A single test on one message field. Predicates are shared by every rule
+ * that uses them and evaluated at most once per message.
+ */
+@SuppressWarnings("serial")
+abstract class RulePredicate implements Serializable {
+
+	/** Index of the tested field in the rule set */
+	final int field;
+
+	RulePredicate(int field) {
+		this.field = field;
+	}
+
+	/**
+	 * @return Relative evaluation cost, cheaper predicates of a rule are
+	 *         checked first
+	 */
+	abstract int cost();
+
+	/**
+	 * @param value
+	 *            Field value, null if the message does not have the field
+	 */
+	abstract boolean test(Object value, NetworkLists lists);
+
+	/**
+	 * Field is present and, for JSON objects and strings, not empty.
+	 */
+	static class Exists extends RulePredicate {
+
+		Exists(int field) {
+			super(field);
+		}
+
+		int cost() {
+			return 0;
+		}
+
+		@SuppressWarnings("rawtypes")
+		boolean test(Object value, NetworkLists lists) {
+			if (value instanceof Map)
+				return !((Map) value).isEmpty();
+			if (value instanceof String)
+				return !((String) value).isEmpty();
+			return value != null;
+		}
+	}
+
+	/**
+	 * Field value is one of a set of strings.
+	 */
+	static class In extends RulePredicate {
+
+		private final Set<String> values;
+
+		In(int field, Set<String> values) {
+			super(field);
+			this.values = values;
+		}
+
+		int cost() {
+			return 1;
+		}
+
+		boolean test(Object value, NetworkLists lists) {
+			return value != null && values.contains(value.toString());
+		}
+	}
+
+	/**
+	 * Numeric field value is above or below a threshold.
+	 */
+	static class Threshold extends RulePredicate {
+
+		private final double threshold;
+		private final boolean above;
+
+		Threshold(int field, double threshold, boolean above) {
+			super(field);
+			this.threshold = threshold;
+			this.above = above;
+		}
+
+		int cost() {
+			return 1;
+		}
+
+		boolean test(Object value, NetworkLists lists) {
+			double number;
+
+			if (value instanceof Number)
+				number = ((Number) value).doubleValue();
+			else if (value != null) {
+				try {
+					number = Double.parseDouble(value.toString());
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			} else
+				return false;
+
+			return above ? number > threshold : number < threshold;
+		}
+	}
+
+	/**
+	 * Field value is an address in one of a fixed list of networks.
+	 */
+	static class Cidr extends RulePredicate {
+
+		private final CidrTrie networks;
+
+		Cidr(int field, CidrTrie networks) {
+			super(field);
+			this.networks = networks;
+		}
+
+		int cost() {
+			return 2;
+		}
+
+		boolean test(Object value, NetworkLists lists) {
+			return value != null && networks.contains(value.toString());
+		}
+	}
+
+	/**
+	 * Field value is an address on the adapter's whitelist or blacklist.
+	 */
+	static class ListMember extends RulePredicate {
+
+		private final boolean whitelist;
+
+		ListMember(int field, boolean whitelist) {
+			super(field);
+			this.whitelist = whitelist;
+		}
+
+		int cost() {
+			return 2;
+		}
+
+		boolean test(Object value, NetworkLists lists) {
+			if (value == null || lists == null)
+				return false;
+
+			CidrTrie networks = whitelist ? lists.getWhitelist() : lists
+					.getBlacklist();
+			return networks.contains(value.toString());
+		}
+	}
+
+	/**
+	 * Whole field value matches a regular expression. On the whole message
+	 * the message is matched as a JSON string, like the RegexTagger does.
+	 */
+	static class Matches extends RulePredicate {
+
+		private final Pattern pattern;
+
+		Matches(int field, Pattern pattern) {
+			super(field);
+			this.pattern = pattern;
+		}
+
+		int cost() {
+			return field == RuleSet.WHOLE_MESSAGE ? 4 : 3;
+		}
+
+		boolean test(Object value, NetworkLists lists) {
+			return value != null && pattern.matcher(value.toString()).matches();
+		}
+	}
+}
@@ -0,0 +1,423 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.alerts.rules;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import com.opensoc.alerts.adapters.CidrTrie;
+import com.opensoc.alerts.adapters.NetworkLists;
+
+/**
+ * Alert rules from an alerts.xml file, compiled into one evaluation plan.
+ * <p>
+ * Every rule is a list of conditions that must all hold:
+ *
+ * <pre>
+ * &lt;rule&gt;
+ *   &lt;name&gt;Blacklisted source&lt;/name&gt;
+ *   &lt;pattern&gt;regex over the whole message as JSON&lt;/pattern&gt;
+ *   &lt;field name="message.ip_src_addr" list="blacklist"/&gt;
+ *   &lt;field name="message.ip_dst_addr" cidr="10.0.0.0/8,192.168.0.0/16"/&gt;
+ *   &lt;field name="message.protocol" in="TCP,UDP"/&gt;
+ *   &lt;field name="message.bytes" above="1000000"/&gt;
+ *   &lt;field name="message.app" matches="regex" negate="true"/&gt;
+ *   &lt;field name="message.user" exists="true"/&gt;
+ *   &lt;tag name="cif"/&gt;
+ *   &lt;alert&gt;{"type":"alert","priority":5,"title":"..."}&lt;/alert&gt;
+ * &lt;/rule&gt;
+ * </pre>
+ *
+ * Field names are paths into the message, e.g. enrichment.geo.country. A tag
+ * holds if enrichment.&lt;name&gt; is present and not empty. The list condition
+ * checks the white or blacklist of the adapter.
+ * <p>
+ * Fields and predicates are de-duplicated across rules, and each message
+ * resolves a field and evaluates a predicate at most once, however many rules
+ * use it. The conditions of a rule are ordered by cost, so regular
+ * expressions only run when the cheaper conditions pass. The alert JSON of
+ * every rule is parsed once at compile time and copied when the rule fires.
+ */
+public final class RuleSet implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Field index of the whole message as a JSON string */
+	static final int WHOLE_MESSAGE = 0;
+
+	private static final byte UNKNOWN = 0;
+	private static final byte TRUE = 1;
+	private static final byte FALSE = 2;
+
+	private final String[][] fields;
+	private final RulePredicate[] predicates;
+	private final Rule[] rules;
+
+	private RuleSet(String[][] fields, RulePredicate[] predicates, Rule[] rules) {
+		this.fields = fields;
+		this.predicates = predicates;
+		this.rules = rules;
+	}
+
+	/**
+	 * Reads and compiles a rules file.
+	 */
+	public static RuleSet load(String config_path)
+			throws ConfigurationException {
+		XMLConfiguration alert_rules = new XMLConfiguration();
+		alert_rules.setDelimiterParsingDisabled(true);
+		alert_rules.load(config_path);
+
+		return compile(alert_rules);
+	}
+
+	static RuleSet compile(HierarchicalConfiguration config)
+			throws ConfigurationException {
+		return new Compiler().compile(config);
+	}
+
+	/**
+	 * @return Number of rules
+	 */
+	public int size() {
+		return rules.length;
+	}
+
+	/**
+	 * @return Number of distinct predicates across all rules
+	 */
+	int predicateCount() {
+		return predicates.length;
+	}
+
+	/**
+	 * Checks all rules against a message in one pass.
+	 *
+	 * @param lists
+	 *            White and blacklists for list conditions, may be null
+	 * @return The rules that fired, in file order
+	 */
+	public List<Rule> match(JSONObject message, NetworkLists lists) {
+		Object[] values = new Object[fields.length];
+		boolean[] resolved = new boolean[fields.length];
+		byte[] results = new byte[predicates.length];
+		List<Rule> matched = null;
+
+		for (Rule rule : rules) {
+			boolean fire = true;
+
+			for (int i = 0; fire && i < rule.terms.length; i++) {
+				int p = rule.terms[i];
+
+				if (results[p] == UNKNOWN) {
+					RulePredicate predicate = predicates[p];
+					int field = predicate.field;
+
+					if (!resolved[field]) {
+						values[field] = resolve(field, message);
+						resolved[field] = true;
+					}
+					results[p] = predicate.test(values[field], lists) ? TRUE
+							: FALSE;
+				}
+				fire = (results[p] == TRUE) != rule.negated[i];
+			}
+
+			if (fire) {
+				if (matched == null)
+					matched = new ArrayList<Rule>();
+				matched.add(rule);
+			}
+		}
+
+		if (matched == null)
+			return Collections.emptyList();
+		return matched;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private Object resolve(int field, JSONObject message) {
+		if (field == WHOLE_MESSAGE)
+			return message.toString();
+
+		Object value = message;
+		for (String segment : fields[field]) {
+			if (!(value instanceof Map))
+				return null;
+			value = ((Map) value).get(segment);
+		}
+		return value;
+	}
+
+	/**
+	 * A compiled rule and its alert template.
+	 */
+	public static final class Rule implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int id;
+		private final String name;
+		private final int[] terms;
+		private final boolean[] negated;
+		private final JSONObject template;
+
+		private Rule(int id, String name, int[] terms, boolean[] negated,
+				JSONObject template) {
+			this.id = id;
+			this.name = name;
+			this.terms = terms;
+			this.negated = negated;
+			this.template = template;
+		}
+
+		/**
+		 * @return Position of the rule in the file, starting at 0
+		 */
+		public int getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return A new copy of the rule's alert
+		 */
+		@SuppressWarnings("unchecked")
+		public JSONObject newAlert() {
+			JSONObject alert = new JSONObject();
+			alert.putAll(template);
+			return alert;
+		}
+	}
+
+	private static class Compiler {
+
+		private final Map<String, Integer> fieldIndex = new LinkedHashMap<String, Integer>();
+		private final Map<String, Integer> predicateIndex = new LinkedHashMap<String, Integer>();
+		private final List<RulePredicate> predicates = new ArrayList<RulePredicate>();
+
+		private final List<Integer> terms = new ArrayList<Integer>();
+		private final List<Boolean> negated = new ArrayList<Boolean>();
+
+		Compiler() {
+			fieldIndex.put("", WHOLE_MESSAGE);
+		}
+
+		RuleSet compile(HierarchicalConfiguration config)
+				throws ConfigurationException {
+			List<HierarchicalConfiguration> rule_configs = config
+					.configurationsAt("rule");
+			Rule[] rules = new Rule[rule_configs.size()];
+			JSONParser parser = new JSONParser();
+
+			for (int id = 0; id < rules.length; id++) {
+				HierarchicalConfiguration rule = rule_configs.get(id);
+				String name = rule.getString("name", "rule " + id);
+
+				terms.clear();
+				negated.clear();
+
+				for (String pattern : rule.getStringArray("pattern"))
+					add(name, "matches", "", pattern, false);
+
+				for (HierarchicalConfiguration field : rule
+						.configurationsAt("field"))
+					addField(name, field);
+
+				for (HierarchicalConfiguration tag : rule
+						.configurationsAt("tag")) {
+					String tag_name = required(name, tag, "[@name]");
+					add(name, "exists", "enrichment." + tag_name, "",
+							tag.getBoolean("[@negate]", false));
+				}
+
+				if (terms.isEmpty())
+					throw new ConfigurationException("Rule " + name
+							+ " has no conditions");
+
+				String alert = rule.getString("alert");
+				if (alert == null)
+					throw new ConfigurationException("Rule " + name
+							+ " has no alert");
+
+				JSONObject template;
+				try {
+					template = (JSONObject) parser.parse(alert);
+				} catch (ParseException e) {
+					throw new ConfigurationException("Rule " + name
+							+ " has an invalid alert: " + alert, e);
+				}
+
+				rules[id] = plan(id, name, template);
+			}
+
+			String[][] fields = new String[fieldIndex.size()][];
+			for (Map.Entry<String, Integer> field : fieldIndex.entrySet())
+				fields[field.getValue()] = field.getKey().split("\\.");
+
+			return new RuleSet(fields,
+					predicates.toArray(new RulePredicate[predicates.size()]),
+					rules);
+		}
+
+		private void addField(String rule, HierarchicalConfiguration field)
+				throws ConfigurationException {
+			String path = required(rule, field, "[@name]");
+			boolean negate = field.getBoolean("[@negate]", false);
+			int count = terms.size();
+
+			for (String kind : new String[] { "exists", "in", "above",
+					"below", "cidr", "list", "matches" }) {
+				String argument = field.getString("[@" + kind + "]");
+				if (argument == null)
+					continue;
+
+				if (kind.equals("exists"))
+					add(rule, kind, path, "",
+							negate == Boolean.parseBoolean(argument.trim()));
+				else
+					add(rule, kind, path, argument.trim(), negate);
+			}
+
+			if (terms.size() == count)
+				throw new ConfigurationException("Rule " + rule
+						+ " has a condition on " + path + " without a test");
+		}
+
+		private void add(String rule, String kind, String path,
+				String argument, boolean negate) throws ConfigurationException {
+			String key = kind + ":" + path + ":" + argument;
+			Integer index = predicateIndex.get(key);
+
+			if (index == null) {
+				index = predicates.size();
+				predicates.add(create(rule, kind, field(path), argument));
+				predicateIndex.put(key, index);
+			}
+
+			terms.add(index);
+			negated.add(negate);
+		}
+
+		private int field(String path) {
+			Integer index = fieldIndex.get(path);
+			if (index == null) {
+				index = fieldIndex.size();
+				fieldIndex.put(path, index);
+			}
+			return index;
+		}
+
+		private RulePredicate create(String rule, String kind, int field,
+				String argument) throws ConfigurationException {
+			try {
+				if (kind.equals("exists"))
+					return new RulePredicate.Exists(field);
+				if (kind.equals("in"))
+					return new RulePredicate.In(field, split(argument));
+				if (kind.equals("above") || kind.equals("below"))
+					return new RulePredicate.Threshold(field,
+							Double.parseDouble(argument), kind.equals("above"));
+				if (kind.equals("cidr")) {
+					Set<String> networks = split(argument);
+					CidrTrie trie = CidrTrie.build(networks);
+					if (trie.size() != networks.size())
+						throw new ConfigurationException("Rule " + rule
+								+ " has an invalid network in " + argument);
+					return new RulePredicate.Cidr(field, trie);
+				}
+				if (kind.equals("list")) {
+					if (!argument.equals("whitelist")
+							&& !argument.equals("blacklist"))
+						throw new ConfigurationException("Rule " + rule
+								+ " has an unknown list: " + argument);
+					return new RulePredicate.ListMember(field,
+							argument.equals("whitelist"));
+				}
+				return new RulePredicate.Matches(field,
+						Pattern.compile(argument));
+			} catch (NumberFormatException e) {
+				throw new ConfigurationException("Rule " + rule
+						+ " has an invalid threshold: " + argument, e);
+			} catch (PatternSyntaxException e) {
+				throw new ConfigurationException("Rule " + rule
+						+ " has an invalid pattern: " + argument, e);
+			}
+		}
+
+		private Rule plan(int id, String name, JSONObject template) {
+			Integer[] order = new Integer[terms.size()];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return predicates.get(terms.get(a)).cost()
+							- predicates.get(terms.get(b)).cost();
+				}
+			});
+
+			int[] rule_terms = new int[order.length];
+			boolean[] rule_negated = new boolean[order.length];
+			for (int i = 0; i < order.length; i++) {
+				rule_terms[i] = terms.get(order[i]);
+				rule_negated[i] = negated.get(order[i]);
+			}
+			return new Rule(id, name, rule_terms, rule_negated, template);
+		}
+
+		private static String required(String rule,
+				HierarchicalConfiguration config, String key)
+				throws ConfigurationException {
+			String value = config.getString(key);
+			if (value == null || value.trim().isEmpty())
+				throw new ConfigurationException("Rule " + rule
+						+ " is missing " + key);
+			return value.trim();
+		}
+
+		private static Set<String> split(String argument) {
+			Set<String> values = new HashSet<String>();
+			for (String value : argument.split(","))
+				if (!value.trim().isEmpty())
+					values.add(value.trim());
+			return values;
+		}
+	}
+}
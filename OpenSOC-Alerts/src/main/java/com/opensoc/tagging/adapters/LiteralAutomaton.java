@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.tagging.adapters;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over a set of literal strings, compiled to a DFA so
+ * one pass over a text finds every literal it contains, in time independent
+ * of the number of literals.
+ * <p>
+ * Characters that do not occur in any literal share one input class, which
+ * keeps the transition table small.
+ */
+final class LiteralAutomaton {
+
+	/** Literals shorter than this are not selective enough to prefilter on */
+	static final int MIN_LITERAL_LENGTH = 3;
+
+	private final char[] classes = new char[Character.MAX_VALUE + 1];
+	private final int width;
+	private final int[] delta;
+	/** Literal ending at each state, -1 if none */
+	private final int[] literalAt;
+	/** Next state on the failure chain that ends a literal, 0 if none */
+	private final int[] outLink;
+	private final int literals;
+
+	LiteralAutomaton(List<String> literals) {
+		this.literals = literals.size();
+
+		int states = 1;
+		char next_class = 1;
+		for (String literal : literals) {
+			states += literal.length();
+			for (int i = 0; i < literal.length(); i++) {
+				char c = literal.charAt(i);
+				if (classes[c] == 0)
+					classes[c] = next_class++;
+			}
+		}
+
+		width = next_class;
+
+		int[] goto_table = new int[states * width];
+		Arrays.fill(goto_table, -1);
+		int[] literal_at = new int[states];
+		Arrays.fill(literal_at, -1);
+
+		int count = 1;
+		for (int id = 0; id < literals.size(); id++) {
+			String literal = literals.get(id);
+			int state = 0;
+
+			for (int i = 0; i < literal.length(); i++) {
+				int slot = state * width + classes[literal.charAt(i)];
+				if (goto_table[slot] < 0)
+					goto_table[slot] = count++;
+				state = goto_table[slot];
+			}
+			literal_at[state] = id;
+		}
+
+		delta = Arrays.copyOf(goto_table, count * width);
+		literalAt = Arrays.copyOf(literal_at, count);
+		outLink = new int[count];
+		int[] fail = new int[count];
+
+		// Breadth first, so the failure state of every state is complete
+		// before the state itself
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		for (int a = 0; a < width; a++) {
+			int child = delta[a];
+			if (child < 0)
+				delta[a] = 0;
+			else
+				queue.add(child);
+		}
+
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			int f = fail[state];
+			outLink[state] = literalAt[f] >= 0 ? f : outLink[f];
+
+			for (int a = 0; a < width; a++) {
+				int slot = state * width + a;
+				int child = delta[slot];
+				if (child < 0) {
+					delta[slot] = delta[f * width + a];
+				} else {
+					fail[child] = delta[f * width + a];
+					queue.add(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return For each literal id, whether the text contains it
+	 */
+	boolean[] find(CharSequence text) {
+		boolean[] found = new boolean[literals];
+		int state = 0;
+
+		for (int i = 0; i < text.length(); i++) {
+			state = delta[state * width + classes[text.charAt(i)]];
+
+			int out = literalAt[state] >= 0 ? state : outLink[state];
+			while (out > 0) {
+				found[literalAt[out]] = true;
+				out = outLink[out];
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the longest literal that every match of a regular expression
+	 * must contain. Only the top level of the expression is considered;
+	 * groups, character classes and escapes other than escaped punctuation
+	 * end a literal, and an optional character is dropped from it.
+	 *
+	 * @return The literal, or null if none of at least
+	 *         {@link #MIN_LITERAL_LENGTH} characters could be found
+	 */
+	static String requiredLiteral(String regex) {
+		// Embedded flags such as (?i) or (?x) change how literals match
+		for (int i = regex.indexOf("(?"); i >= 0; i = regex.indexOf("(?",
+				i + 1)) {
+			if (i + 2 < regex.length()
+					&& "idmsuxU-".indexOf(regex.charAt(i + 2)) >= 0)
+				return null;
+		}
+
+		StringBuilder run = new StringBuilder();
+		String best = "";
+		boolean last_char = false;
+		int length = regex.length();
+		int i = 0;
+
+		while (i < length) {
+			char c = regex.charAt(i);
+
+			switch (c) {
+			case '|':
+				return null;
+			case '(':
+				best = commit(run, best);
+				i = skipGroup(regex, i);
+				last_char = false;
+				continue;
+			case '[':
+				best = commit(run, best);
+				i = skipClass(regex, i);
+				last_char = false;
+				continue;
+			case '.':
+			case '^':
+			case '$':
+				best = commit(run, best);
+				last_char = false;
+				i++;
+				continue;
+			case '*':
+			case '?':
+			case '{':
+				if (last_char)
+					run.setLength(run.length() - 1);
+				best = commit(run, best);
+				last_char = false;
+				i = c == '{' ? regex.indexOf('}', i) + 1 : i + 1;
+				if (i == 0)
+					return null;
+				i = skipLazy(regex, i);
+				continue;
+			case '+':
+				best = commit(run, best);
+				last_char = false;
+				i = skipLazy(regex, i + 1);
+				continue;
+			case '\\':
+				if (i + 1 >= length)
+					return null;
+				char escaped = regex.charAt(i + 1);
+				if (Character.isLetterOrDigit(escaped)) {
+					if (escaped == 'Q')
+						return null;
+					best = commit(run, best);
+					last_char = false;
+					i = skipEscape(regex, i + 1);
+				} else {
+					run.append(escaped);
+					last_char = true;
+					i += 2;
+				}
+				continue;
+			default:
+				run.append(c);
+				last_char = true;
+				i++;
+			}
+		}
+
+		best = commit(run, best);
+		return best.length() >= MIN_LITERAL_LENGTH ? best : null;
+	}
+
+	private static String commit(StringBuilder run, String best) {
+		if (run.length() > best.length())
+			best = run.toString();
+		run.setLength(0);
+		return best;
+	}
+
+	private static int skipLazy(String regex, int i) {
+		if (i < regex.length()
+				&& (regex.charAt(i) == '?' || regex.charAt(i) == '+'))
+			return i + 1;
+		return i;
+	}
+
+	/**
+	 * @return Index after the group starting at i
+	 */
+	private static int skipGroup(String regex, int i) {
+		int depth = 0;
+
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			if (c == '\\')
+				i += 2;
+			else if (c == '[')
+				i = skipClass(regex, i);
+			else {
+				if (c == '(')
+					depth++;
+				else if (c == ')' && --depth == 0)
+					return i + 1;
+				i++;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * @return Index after the character class starting at i
+	 */
+	private static int skipClass(String regex, int i) {
+		int depth = 0;
+		i++;
+		depth++;
+
+		if (i < regex.length() && regex.charAt(i) == '^')
+			i++;
+		if (i < regex.length() && regex.charAt(i) == ']')
+			i++;
+
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			if (c == '\\')
+				i += 2;
+			else {
+				if (c == '[')
+					depth++;
+				else if (c == ']' && --depth == 0)
+					return i + 1;
+				i++;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * @return Index after the escape whose letter is at i
+	 */
+	private static int skipEscape(String regex, int i) {
+		char c = regex.charAt(i++);
+		int length = regex.length();
+
+		switch (c) {
+		case 'x':
+		case 'p':
+		case 'P':
+		case 'N':
+			if (i < length && regex.charAt(i) == '{') {
+				int end = regex.indexOf('}', i);
+				return end < 0 ? length : end + 1;
+			}
+			return Math.min(length, i + (c == 'x' ? 2 : 1));
+		case 'k':
+			int end = regex.indexOf('>', i);
+			return end < 0 ? length : end + 1;
+		case 'u':
+			return Math.min(length, i + 4);
+		case 'c':
+			return Math.min(length, i + 1);
+		default:
+			while (Character.isDigit(c) && i < length
+					&& Character.isDigit(regex.charAt(i)))
+				i++;
+			return i;
+		}
+	}
+}
@@ -18,7 +18,10 @@
 
 package com.opensoc.tagging.adapters;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -27,10 +30,21 @@ public class RegexTagger extends AbstractTaggerAdapter{
 	
 	/**
 	 * Reads a regex rules file and tags a message with alerts if any rule from that file
-	 * matches anything in the telemetry message
+	 * matches anything in the telemetry message.
+	 * <p>
+	 * The rules are compiled once. Each rule is matched against the whole
+	 * message as a JSON string, or with {@link #withFields(String...)} against
+	 * each of the selected fields. Before any regex runs, one Aho-Corasick pass
+	 * over the text looks for the literal each rule requires (the "evil.com"
+	 * of ".*evil\.com.*"), and only the rules whose literal is present, or
+	 * that have none, are matched. The cost per message therefore grows with
+	 * the number of candidate rules rather than with all rules.
 	 */
 	private static final long serialVersionUID = -6091495636459799411L;
 	Map <String, JSONObject> _rules;
+	String[][] _fields;
+
+	private transient volatile Compiled compiled;
 	
 	/**
 	 * 
@@ -38,7 +52,21 @@ public class RegexTagger extends AbstractTaggerAdapter{
 	 */
 	public RegexTagger(Map<String, JSONObject> rules)
 	{
-		_rules = rules;
+		_rules = new LinkedHashMap<String, JSONObject>(rules);
+	}
+
+	/**
+	 * @param fields
+	 *            Paths of the fields to match the rules against, e.g.
+	 *            message.url. A rule tags the message if it matches any of
+	 *            them
+	 * @return Instance of this class
+	 */
+	public RegexTagger withFields(String... fields) {
+		_fields = new String[fields.length][];
+		for (int i = 0; i < fields.length; i++)
+			_fields[i] = fields[i].split("\\.");
+		return this;
 	}
 
 	/**
@@ -47,18 +75,107 @@ public class RegexTagger extends AbstractTaggerAdapter{
 	@SuppressWarnings("unchecked")
 	public JSONArray tag(JSONObject raw_message) {
 
-		JSONArray ja = new JSONArray();
-		String message_as_string = raw_message.toString();
-		
-		for(String rule : _rules.keySet())
-		{		
-			if (message_as_string.matches(rule))
-			{
-				ja.add(_rules.get(rule));
+		Compiled rules = compiled();
+		boolean[] fired = new boolean[rules.patterns.length];
+
+		if (_fields == null)
+			rules.match(raw_message.toString(), fired);
+		else {
+			for (String[] field : _fields) {
+				Object value = resolve(raw_message, field);
+				if (value != null)
+					rules.match(value.toString(), fired);
 			}
-		}	
-		
+		}
+
+		JSONArray ja = new JSONArray();
+		for (int i = 0; i < fired.length; i++)
+			if (fired[i])
+				ja.add(rules.alerts[i]);
+
 		return ja;
 	}
 
+	@SuppressWarnings("rawtypes")
+	private static Object resolve(JSONObject message, String[] field) {
+		Object value = message;
+		for (String segment : field) {
+			if (!(value instanceof Map))
+				return null;
+			value = ((Map) value).get(segment);
+		}
+		return value;
+	}
+
+	private Compiled compiled() {
+		Compiled rules = compiled;
+		if (rules == null) {
+			synchronized (this) {
+				rules = compiled;
+				if (rules == null) {
+					rules = new Compiled(_rules);
+					compiled = rules;
+				}
+			}
+		}
+		return rules;
+	}
+
+	/**
+	 * Compiled patterns and the literal prefilter.
+	 */
+	private static class Compiled {
+
+		final Pattern[] patterns;
+		final JSONObject[] alerts;
+		/** Literal each rule requires, -1 if it has to be matched always */
+		final int[] literals;
+		final LiteralAutomaton automaton;
+
+		Compiled(Map<String, JSONObject> rules) {
+			patterns = new Pattern[rules.size()];
+			alerts = new JSONObject[rules.size()];
+			literals = new int[rules.size()];
+
+			Map<String, Integer> literal_ids = new LinkedHashMap<String, Integer>();
+			int i = 0;
+
+			for (Map.Entry<String, JSONObject> rule : rules.entrySet()) {
+				patterns[i] = Pattern.compile(rule.getKey());
+				alerts[i] = rule.getValue();
+
+				String literal = LiteralAutomaton.requiredLiteral(rule.getKey());
+				if (literal == null)
+					literals[i] = -1;
+				else {
+					Integer id = literal_ids.get(literal);
+					if (id == null) {
+						id = literal_ids.size();
+						literal_ids.put(literal, id);
+					}
+					literals[i] = id;
+				}
+				i++;
+			}
+
+			automaton = new LiteralAutomaton(new ArrayList<String>(
+					literal_ids.keySet()));
+
+			_LOG.info("[OpenSOC] Compiled " + patterns.length
+					+ " tagging rules, " + literal_ids.size()
+					+ " distinct literals");
+		}
+
+		void match(String text, boolean[] fired) {
+			boolean[] present = automaton.find(text);
+
+			for (int i = 0; i < patterns.length; i++) {
+				if (fired[i] || (literals[i] >= 0 && !present[literals[i]]))
+					continue;
+				if (patterns[i].matcher(text).matches())
+					fired[i] = true;
+			}
+		}
+	}
+
 }
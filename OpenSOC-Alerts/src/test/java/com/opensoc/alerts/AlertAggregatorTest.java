@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.alerts;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONObject;
+
+/**
+ * <ul>
+ * <li>Title: AlertAggregatorTest</li>
+ * <li>Description: Tests for AlertAggregator</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class AlertAggregatorTest extends TestCase {
+
+	private static final String[] KEY = { "designated_host", "type" };
+
+	public void testRollUp() {
+		AlertAggregator aggregator = new AlertAggregator(KEY, 60000, 100);
+
+		assertTrue(aggregator.add(alert("10.0.0.1", "alert", "a"), 60500));
+		assertTrue(aggregator.add(alert("10.0.0.2", "alert", "b"), 61000));
+		assertTrue(aggregator.add(alert("10.0.0.1", "alert", "c"), 62000));
+		assertTrue(aggregator.add(alert("10.0.0.1", "error", "d"), 63000));
+		assertTrue(aggregator.add(alert("10.0.0.1", "alert", "e"), 64000));
+		assertEquals(3, aggregator.size());
+
+		assertTrue(aggregator.advance(119999).isEmpty());
+
+		List<JSONObject> released = aggregator.advance(120000);
+		assertEquals(3, released.size());
+		assertEquals(0, aggregator.size());
+
+		JSONObject first = released.get(0);
+		assertEquals("a", first.get("title"));
+		assertEquals(3L, first.get("count"));
+		assertEquals(60500L, first.get("first_seen"));
+		assertEquals(64000L, first.get("last_seen"));
+		assertEquals(60000L, first.get("window_start"));
+		assertEquals(120000L, first.get("window_end"));
+
+		assertEquals(1L, released.get(1).get("count"));
+		assertEquals("d", released.get(2).get("title"));
+
+		assertTrue(aggregator.advance(500000).isEmpty());
+	}
+
+	public void testKeysAreNotConcatenated() {
+		AlertAggregator aggregator = new AlertAggregator(KEY, 1000, 10);
+
+		aggregator.add(alert("ab", "c", "x"), 0);
+		aggregator.add(alert("a", "bc", "y"), 0);
+		aggregator.add(alert(null, "c", "z"), 0);
+		aggregator.add(alert("null", "c", "z"), 0);
+
+		assertEquals(4, aggregator.size());
+	}
+
+	public void testFull() {
+		AlertAggregator aggregator = new AlertAggregator(KEY, 1000, 2);
+
+		assertTrue(aggregator.add(alert("1", "alert", "a"), 0));
+		assertTrue(aggregator.add(alert("2", "alert", "b"), 0));
+		assertFalse(aggregator.add(alert("3", "alert", "c"), 0));
+		assertFalse(aggregator.add(alert("4", "alert", "d"), 0));
+		// Keys already held are still counted
+		assertTrue(aggregator.add(alert("1", "alert", "e"), 0));
+
+		assertEquals(2, aggregator.takeOverflow());
+		assertEquals(0, aggregator.takeOverflow());
+
+		List<JSONObject> released = aggregator.advance(1000);
+		assertEquals(2L, released.get(0).get("count"));
+
+		// The table is free again in the next window
+		for (int i = 0; i < 2; i++)
+			assertTrue(aggregator.add(alert("host" + i, "alert", "f"), 1000));
+		assertEquals(2, aggregator.size());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject alert(String host, String type, String title) {
+		JSONObject alert = new JSONObject();
+		if (host != null)
+			alert.put("designated_host", host);
+		alert.put("type", type);
+		alert.put("title", title);
+		return alert;
+	}
+}
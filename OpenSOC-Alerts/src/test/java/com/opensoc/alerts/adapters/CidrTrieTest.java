@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.alerts.adapters;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+/**
+ * <ul>
+ * <li>Title: CidrTrieTest</li>
+ * <li>Description: Tests for CidrTrie</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class CidrTrieTest extends TestCase {
+
+	private CidrTrie trie = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void setUp() throws Exception {
+		trie = CidrTrie.build(Arrays.asList("10.0.0.0/8", "10.1.0.0/16",
+				"192.168.1.7", "0.0.0.0/0x", "2001:db8::/32",
+				"::ffff:172.16.0.0/108", "fe80::1", "not an ip", "1.2.3.4/33"));
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void tearDown() throws Exception {
+		trie = null;
+	}
+
+	public void testInvalidEntriesSkipped() {
+		assertEquals(6, trie.size());
+	}
+
+	public void testLongestPrefix() {
+		assertEquals(8, trie.match("10.2.3.4"));
+		assertEquals(16, trie.match("10.1.3.4"));
+		assertEquals(32, trie.match("192.168.1.7"));
+		assertEquals(-1, trie.match("192.168.1.8"));
+		assertEquals(-1, trie.match("11.0.0.1"));
+
+		assertTrue(trie.contains("10.255.255.255"));
+		assertFalse(trie.contains("9.255.255.255"));
+	}
+
+	public void testIPv6() {
+		assertEquals(32, trie.match("2001:db8:1:2::abcd"));
+		assertEquals(32, trie.match("2001:DB8::"));
+		assertEquals(-1, trie.match("2001:db9::1"));
+		assertEquals(128, trie.match("fe80:0:0:0:0:0:0:1"));
+		assertEquals(-1, trie.match("fe80::2"));
+		assertEquals(108, trie.match("::ffff:172.16.3.4"));
+		assertEquals(-1, trie.match("::ffff:172.32.0.1"));
+
+		// IPv4 and IPv6 networks are separate
+		assertEquals(-1, trie.match("::a00:1"));
+	}
+
+	public void testInvalidAddresses() {
+		assertEquals(-1, trie.match(null));
+		assertEquals(-1, trie.match(""));
+		assertEquals(-1, trie.match("10.0.0"));
+		assertEquals(-1, trie.match("10.0.0.256"));
+		assertEquals(-1, trie.match("10.0.0.1.2"));
+		assertEquals(-1, trie.match("2001:db8::1::2"));
+		assertEquals(-1, trie.match("2001:db8:"));
+		assertEquals(-1, trie.match("2001:db8:0:0:0:0:0:0:1"));
+		assertEquals(-1, trie.match("2001:db8g::"));
+	}
+
+	public void testEmptyAndDefaultRoute() {
+		CidrTrie empty = CidrTrie.build(Collections.<String> emptyList());
+		assertFalse(empty.contains("10.0.0.1"));
+
+		CidrTrie all = CidrTrie.build(Arrays.asList("0.0.0.0/0", "::/0"));
+		assertEquals(0, all.match("10.0.0.1"));
+		assertEquals(0, all.match("::1"));
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.alerts.adapters;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONObject;
+
+import com.opensoc.alerts.interfaces.AlertsAdapter;
+
+/**
+ * <ul>
+ * <li>Title: NetworkListsTest</li>
+ * <li>Description: Tests that scheduled refreshes swap in new lists, keep
+ * the previous lists when a load fails, and stop once cancelled</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class NetworkListsTest extends TestCase {
+
+	private RefreshingAdapter adapter;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		adapter = new RefreshingAdapter();
+		adapter.initialize();
+	}
+
+	protected void tearDown() throws Exception {
+		adapter.close();
+		super.tearDown();
+	}
+
+	public void testRefreshSwapsInNewLists() throws Exception {
+		assertFalse(adapter.lists.getWhitelist().contains("10.0.0.1"));
+
+		adapter.next = NetworkLists.of(Arrays.asList("10.0.0.0/8"),
+				Arrays.asList("192.168.1.1"));
+		waitForLoads(adapter.loads.get() + 2);
+
+		assertTrue(adapter.lists.getWhitelist().contains("10.0.0.1"));
+		assertTrue(adapter.lists.getBlacklist().contains("192.168.1.1"));
+	}
+
+	public void testFailedLoadKeepsPreviousLists() throws Exception {
+		NetworkLists first = NetworkLists.of(Arrays.asList("10.0.0.0/8"),
+				Collections.<String> emptyList());
+		adapter.next = first;
+		waitForLoads(adapter.loads.get() + 2);
+		assertSame(first, adapter.lists);
+
+		adapter.failing = true;
+		waitForLoads(adapter.loads.get() + 2);
+		assertSame(first, adapter.lists);
+
+		// The failures do not stop later refreshes
+		NetworkLists second = NetworkLists.of(Arrays.asList("172.16.0.0/12"),
+				Collections.<String> emptyList());
+		adapter.next = second;
+		adapter.failing = false;
+		waitForLoads(adapter.loads.get() + 2);
+		assertSame(second, adapter.lists);
+	}
+
+	public void testCloseStopsRefresh() throws Exception {
+		waitForLoads(1);
+		ScheduledFuture<?> refresher = adapter.refresher;
+
+		adapter.close();
+		assertTrue(refresher.isCancelled());
+
+		// A refresh that was already running may still finish
+		Thread.sleep(50);
+		int loads = adapter.loads.get();
+		Thread.sleep(100);
+		assertEquals(loads, adapter.loads.get());
+	}
+
+	private void waitForLoads(int loads) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (adapter.loads.get() < loads
+				&& System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		assertTrue(adapter.loads.get() >= loads);
+	}
+
+	/**
+	 * Refreshes like the HBase adapters, from a load that returns
+	 * {@link #next} or fails
+	 */
+	private static class RefreshingAdapter implements AlertsAdapter {
+
+		volatile NetworkLists lists = NetworkLists.EMPTY;
+		volatile NetworkLists next = NetworkLists.EMPTY;
+		volatile boolean failing;
+		final AtomicInteger loads = new AtomicInteger();
+		ScheduledFuture<?> refresher;
+
+		public boolean initialize() {
+			refresher = NetworkLists.scheduleRefresh(this, 10,
+					TimeUnit.MILLISECONDS);
+			return true;
+		}
+
+		public boolean refresh() throws Exception {
+			try {
+				lists = load();
+			} finally {
+				loads.incrementAndGet();
+			}
+			return true;
+		}
+
+		private NetworkLists load() throws IOException {
+			if (failing)
+				throw new IOException("Whitelist table doesn't exist");
+			return next;
+		}
+
+		public Map<String, JSONObject> alert(JSONObject raw_message) {
+			return null;
+		}
+
+		public boolean containsAlertId(String alert) {
+			return false;
+		}
+
+		public void close() {
+			if (refresher != null) {
+				refresher.cancel(false);
+				refresher = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.alerts.rules;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+/**
+ * <ul>
+ * <li>Title: RuleSetTest</li>
+ * <li>Description: Tests for RuleSet</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class RuleSetTest extends TestCase {
+
+	private static final String RULES = "<rule-definitions>"
+			+ "<rule><name>internal tcp</name>"
+			+ "<field name=\"message.ip_src_addr\" cidr=\"10.0.0.0/8, 192.168.0.0/16\"/>"
+			+ "<field name=\"message.protocol\" in=\"TCP\"/>"
+			+ "<alert>{\"type\":\"alert\",\"priority\":5,\"title\":\"Internal\"}</alert></rule>"
+			+ "<rule><name>big transfer</name>"
+			+ "<field name=\"message.bytes\" above=\"1000\"/>"
+			+ "<field name=\"message.protocol\" in=\"TCP\"/>"
+			+ "<alert>{\"type\":\"warning\",\"priority\":10}</alert></rule>"
+			+ "<rule><name>cif hit</name><tag name=\"cif\"/>"
+			+ "<field name=\"enrichment.geo.country\" matches=\"US\" negate=\"true\"/>"
+			+ "<alert>{\"type\":\"alert\",\"priority\":1}</alert></rule>"
+			+ "<rule><name>legacy</name><pattern>.*geo.*</pattern>"
+			+ "<field name=\"message.user\" exists=\"false\"/>"
+			+ "<alert>{\"type\":\"error\",\"priority\":1}</alert></rule>"
+			+ "</rule-definitions>";
+
+	private RuleSet rules = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void setUp() throws Exception {
+		rules = compile(RULES);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void tearDown() throws Exception {
+		rules = null;
+	}
+
+	public void testCompile() {
+		assertEquals(4, rules.size());
+		// message.protocol in TCP is shared by the first two rules
+		assertEquals(7, rules.predicateCount());
+	}
+
+	public void testMatch() throws Exception {
+		JSONObject message = parse("{\"message\":{\"ip_src_addr\":\"10.1.2.3\","
+				+ "\"protocol\":\"TCP\",\"bytes\":5000},"
+				+ "\"enrichment\":{\"geo\":{\"country\":\"DE\"},\"cif\":{\"x\":1}}}");
+
+		List<RuleSet.Rule> fired = rules.match(message, null);
+
+		assertEquals(4, fired.size());
+		assertEquals("internal tcp", fired.get(0).getName());
+		assertEquals("legacy", fired.get(3).getName());
+		assertEquals(3, fired.get(3).getId());
+	}
+
+	public void testNoMatch() throws Exception {
+		JSONObject message = parse("{\"message\":{\"ip_src_addr\":\"11.1.2.3\","
+				+ "\"protocol\":\"UDP\",\"bytes\":\"5000\",\"user\":\"bob\"},"
+				+ "\"enrichment\":{\"geo\":{\"country\":\"US\"},\"cif\":{}}}");
+
+		assertTrue(rules.match(message, null).isEmpty());
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testAlertTemplateIsCopied() throws Exception {
+		JSONObject message = parse("{\"message\":{\"ip_src_addr\":\"10.1.2.3\","
+				+ "\"protocol\":\"TCP\",\"bytes\":10}}");
+
+		RuleSet.Rule rule = rules.match(message, null).get(0);
+		JSONObject alert = rule.newAlert();
+		alert.put("title", "changed");
+
+		assertEquals("Internal", rule.newAlert().get("title"));
+		assertEquals(5L, rule.newAlert().get("priority"));
+	}
+
+	public void testInvalidRules() {
+		assertInvalid("<r><rule><alert>{}</alert></rule></r>");
+		assertInvalid("<r><rule><field name=\"a\"/><alert>{}</alert></rule></r>");
+		assertInvalid("<r><rule><field name=\"a\" above=\"x\"/><alert>{}</alert></rule></r>");
+		assertInvalid("<r><rule><field name=\"a\" cidr=\"10.0.0.0/40\"/><alert>{}</alert></rule></r>");
+		assertInvalid("<r><rule><field name=\"a\" list=\"greylist\"/><alert>{}</alert></rule></r>");
+		assertInvalid("<r><rule><tag name=\"cif\"/><alert>{oops</alert></rule></r>");
+	}
+
+	private void assertInvalid(String xml) {
+		try {
+			compile(xml);
+			fail("Expected a ConfigurationException for " + xml);
+		} catch (ConfigurationException e) {
+		}
+	}
+
+	private static RuleSet compile(String xml) throws ConfigurationException {
+		XMLConfiguration config = new XMLConfiguration();
+		config.setDelimiterParsingDisabled(true);
+		config.load(new StringReader(xml));
+		return RuleSet.compile(config);
+	}
+
+	private static JSONObject parse(String json) throws Exception {
+		return (JSONObject) new JSONParser().parse(json);
+	}
+}
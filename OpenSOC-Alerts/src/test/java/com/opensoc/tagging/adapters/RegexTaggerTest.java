@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.tagging.adapters;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+/**
+ * <ul>
+ * <li>Title: RegexTaggerTest</li>
+ * <li>Description: Tests for RegexTagger and its literal prefilter</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class RegexTaggerTest extends TestCase {
+
+	private static final String[] RULES = { ".*host\\\"\\:\\{\"ip_dst_addr\\\"\\:\\{\\},\\\"ip_src_addr\\\"\\:\\{\\}.*",
+			".*whois\\\"\\:\\{\\\"tld\\\"\\:\\{\\}.*",
+			"^((?!country\\\"\\:\\\"US\\\").)*$", ".*geo.*",
+			".*evil\\.com.*", ".*(?i)MALWARE.*", ".*bad(host|site)\\.net.*",
+			".*10\\.0\\.0\\.[0-9]+.*", ".*xy?z+abc.*" };
+
+	private static final String[] MESSAGES = {
+			"{\"message\":{\"ip_src_addr\":\"10.0.0.5\",\"url\":\"http://evil.com/a\"},\"enrichment\":{\"geo\":{\"country\":\"US\"}}}",
+			"{\"message\":{\"url\":\"http://badsite.net\"},\"enrichment\":{\"host\":{\"ip_dst_addr\":{},\"ip_src_addr\":{}},\"whois\":{\"tld\":{}}}}",
+			"{\"message\":{\"note\":\"malware xzzabc\"}}",
+			"{\"message\":{\"note\":\"clean\"}}" };
+
+	public void testRequiredLiteral() {
+		assertEquals("evil.com", LiteralAutomaton.requiredLiteral(".*evil\\.com.*"));
+		assertEquals("whois\":{\"tld\":{}",
+				LiteralAutomaton.requiredLiteral(RULES[1]));
+		assertEquals(".net", LiteralAutomaton.requiredLiteral(RULES[6]));
+		assertEquals("10.0.0.", LiteralAutomaton.requiredLiteral(RULES[7]));
+		assertEquals("abc", LiteralAutomaton.requiredLiteral(RULES[8]));
+		assertEquals("abc", LiteralAutomaton.requiredLiteral("abcd?e"));
+		assertEquals("abcd", LiteralAutomaton.requiredLiteral("abcd+e"));
+		assertEquals("abcde", LiteralAutomaton.requiredLiteral("\\x41abcde\\p{Alpha}"));
+		assertEquals("bcd", LiteralAutomaton.requiredLiteral("[]a]bcd"));
+
+		assertNull(LiteralAutomaton.requiredLiteral(RULES[2]));
+		assertEquals("geo", LiteralAutomaton.requiredLiteral(RULES[3]));
+		assertNull(LiteralAutomaton.requiredLiteral(RULES[5]));
+		assertNull(LiteralAutomaton.requiredLiteral("evil|good"));
+		assertNull(LiteralAutomaton.requiredLiteral("\\Qa.b\\E"));
+	}
+
+	public void testAutomaton() {
+		LiteralAutomaton automaton = new LiteralAutomaton(Arrays.asList(
+				"he", "she", "his", "hers"));
+
+		assertTrue(Arrays.equals(new boolean[] { true, true, false, true },
+				automaton.find("ushers")));
+		assertTrue(Arrays.equals(new boolean[] { false, false, true, false },
+				automaton.find("this")));
+		assertTrue(Arrays.equals(new boolean[4], automaton.find("")));
+	}
+
+	/**
+	 * Tags must be the same as matching every rule against the message
+	 * string, as the tagger used to.
+	 */
+	@SuppressWarnings("unchecked")
+	public void testSameAsFullScan() throws Exception {
+		Map<String, JSONObject> rules = new LinkedHashMap<String, JSONObject>();
+		for (int i = 0; i < RULES.length; i++)
+			rules.put(RULES[i], alert(i));
+
+		RegexTagger tagger = new RegexTagger(rules);
+
+		for (String json : MESSAGES) {
+			JSONObject message = (JSONObject) new JSONParser().parse(json);
+			String message_as_string = message.toString();
+
+			JSONArray expected = new JSONArray();
+			for (String rule : rules.keySet())
+				if (message_as_string.matches(rule))
+					expected.add(rules.get(rule));
+
+			assertEquals(json, expected, tagger.tag(message));
+		}
+	}
+
+	public void testFields() throws Exception {
+		Map<String, JSONObject> rules = new LinkedHashMap<String, JSONObject>();
+		rules.put(".*evil\\.com.*", alert(0));
+		rules.put("10\\.0\\.0\\.[0-9]+", alert(1));
+		rules.put(".*geo.*", alert(2));
+
+		RegexTagger tagger = new RegexTagger(rules).withFields("message.url",
+				"message.ip_src_addr", "message.missing.field");
+		JSONObject message = (JSONObject) new JSONParser().parse(MESSAGES[0]);
+
+		JSONArray tags = tagger.tag(message);
+
+		assertEquals(2, tags.size());
+		assertEquals(alert(0), tags.get(0));
+		assertEquals(alert(1), tags.get(1));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject alert(int i) {
+		JSONObject alert = new JSONObject();
+		alert.put("title", "rule " + i);
+		return alert;
+	}
+}
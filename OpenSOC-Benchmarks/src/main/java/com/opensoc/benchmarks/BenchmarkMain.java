@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Takes the usual JMH command line, but runs
+ * the GC profiler unless other profilers are requested, so every result
+ * reports bytes allocated per operation (gc.alloc.rate.norm) next to ops/s.
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cli = new CommandLineOptions(args);
+
+		if (cli.shouldHelp() || cli.shouldList() || cli.shouldListWithParams()
+				|| cli.shouldListProfilers() || cli.shouldListResultFormats()
+				|| !cli.getProfilers().isEmpty()) {
+			Main.main(args);
+			return;
+		}
+
+		Options options = new OptionsBuilder().parent(cli)
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the sample telemetry shipped in OpenSOC-Topologies/SampleInput. The
+ * benchmark module copies that directory onto its classpath at build time.
+ */
+public final class SampleInput {
+
+	private SampleInput() {
+	}
+
+	/**
+	 * @param name
+	 *            File name inside SampleInput, e.g. SourcefireExampleOutput
+	 * @return Every non-empty line of the file as UTF-8 bytes
+	 */
+	public static byte[][] load(String name) throws IOException {
+		InputStream stream = SampleInput.class.getClassLoader()
+				.getResourceAsStream("SampleInput/" + name);
+		if (stream == null)
+			throw new IOException("Sample input not found: " + name);
+
+		List<byte[]> lines = new ArrayList<byte[]>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(stream,
+				"UTF-8"));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (!line.trim().isEmpty())
+					lines.add(line.getBytes("UTF-8"));
+			}
+		} finally {
+			br.close();
+		}
+
+		if (lines.isEmpty())
+			throw new IOException("Sample input is empty: " + name);
+		return lines.toArray(new byte[lines.size()][]);
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.benchmarks.enrichment;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import backtype.storm.task.IOutputCollector;
+import backtype.storm.task.OutputCollector;
+import backtype.storm.tuple.Tuple;
+
+import com.opensoc.benchmarks.SampleInput;
+import com.opensoc.benchmarks.enrichment.baseline.LegacyGenericEnrichmentBolt;
+import com.opensoc.enrichment.common.GenericEnrichmentBolt;
+import com.opensoc.enrichment.interfaces.EnrichmentAdapter;
+import com.opensoc.parsing.parsers.BasicBroParser;
+
+/**
+ * Per tuple cost of GenericEnrichmentBolt against the version that rebuilt
+ * the enrichment object for every key and built its trace messages even with
+ * trace logging off. Each operation enriches the first SampleInput Bro
+ * message (an HTTP log) on 2, 4 or 8 of its fields. Every value is cached, so
+ * the adapter is not part of the measurement; emitted tuples go to a
+ * collector that drops them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnrichmentBoltBenchmark {
+
+	private static final List<String> FIELDS = Arrays.asList("ip_src_addr",
+			"ip_dst_addr", "host", "tld", "ip_src_port", "ip_dst_port", "uid",
+			"method");
+
+	@Param({ "2", "4", "8" })
+	public int keys;
+
+	private JSONObject message;
+	private TupleInput input;
+
+	private GenericEnrichmentBolt current;
+	private GenericEnrichmentBolt legacy;
+
+	@Setup
+	public void setUp() throws Exception {
+		message = new BasicBroParser().parse(SampleInput
+				.load("BroExampleOutput")[0]);
+		input = new TupleInput();
+
+		current = prepare(new GenericEnrichmentBolt());
+		legacy = prepare(new LegacyGenericEnrichmentBolt());
+	}
+
+	@Benchmark
+	public JSONObject current() {
+		return enrich(current);
+	}
+
+	@Benchmark
+	public JSONObject legacy() {
+		return enrich(legacy);
+	}
+
+	@SuppressWarnings("unchecked")
+	private JSONObject enrich(GenericEnrichmentBolt bolt) {
+		// The bolt adds to the tuple's JSON, so every tuple gets its own
+		JSONObject in_json = new JSONObject();
+		in_json.put("message", message);
+		input.in_json = in_json;
+
+		bolt.execute(input.tuple);
+		return in_json;
+	}
+
+	private GenericEnrichmentBolt prepare(GenericEnrichmentBolt bolt) {
+		BaseConfiguration config = new BaseConfiguration();
+		config.setProperty("com.opensoc.metrics.reporter.jmx", "false");
+		config.setProperty("com.opensoc.metrics.reporter.console", "false");
+		config.setProperty("com.opensoc.metrics.reporter.graphite", "false");
+
+		bolt.withAdapter(new FixedAdapter()).withEnrichmentTag("benchmark")
+				.withOutputFieldName("bro").withMaxCacheSize(10000)
+				.withMaxTimeRetain(10)
+				.withCacheName(bolt.getClass().getName() + ":" + keys)
+				.withKeys(FIELDS.subList(0, keys))
+				.withMetricConfiguration(config);
+
+		bolt.prepare(null, null, new OutputCollector(new DroppingCollector()));
+		return bolt;
+	}
+
+	/**
+	 * Answers the two fields the bolt reads with the current tuple's values
+	 */
+	private static final class TupleInput implements InvocationHandler {
+
+		final Tuple tuple = (Tuple) Proxy.newProxyInstance(
+				Tuple.class.getClassLoader(), new Class<?>[] { Tuple.class },
+				this);
+
+		JSONObject in_json;
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+
+			if (name.equals("getStringByField") && "key".equals(args[0]))
+				return "benchmark";
+			if (name.equals("getValueByField") && "message".equals(args[0]))
+				return in_json;
+			if (name.equals("getSourceComponent")
+					|| name.equals("getSourceStreamId"))
+				return "default";
+			throw new UnsupportedOperationException(name);
+		}
+	}
+
+	private static final class DroppingCollector implements IOutputCollector {
+
+		public List<Integer> emit(String streamId, Collection<Tuple> anchors,
+				List<Object> tuple) {
+			return null;
+		}
+
+		public void emitDirect(int taskId, String streamId,
+				Collection<Tuple> anchors, List<Object> tuple) {
+		}
+
+		public void ack(Tuple input) {
+		}
+
+		public void fail(Tuple input) {
+		}
+
+		public void reportError(Throwable error) {
+		}
+	}
+
+	private static final class FixedAdapter implements EnrichmentAdapter {
+
+		@SuppressWarnings("unchecked")
+		public JSONObject enrich(String metadata) {
+			JSONObject enrichment = new JSONObject();
+			enrichment.put("value", metadata);
+			return enrichment;
+		}
+
+		public boolean initializeAdapter() {
+			return true;
+		}
+	}
+}
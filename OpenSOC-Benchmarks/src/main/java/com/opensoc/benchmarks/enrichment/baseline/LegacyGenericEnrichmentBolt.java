@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.benchmarks.enrichment.baseline;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+
+import com.opensoc.enrichment.common.GenericEnrichmentBolt;
+import com.opensoc.helpers.topology.ErrorGenerator;
+
+/**
+ * GenericEnrichmentBolt.execute as it was before the enrichment object was
+ * looked up once per tuple and the log statements were guarded, kept as the
+ * baseline for EnrichmentBoltBenchmark. Only the unbatched path is kept.
+ */
+@SuppressWarnings("serial")
+public class LegacyGenericEnrichmentBolt extends GenericEnrichmentBolt {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(LegacyGenericEnrichmentBolt.class);
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void execute(Tuple tuple) {
+
+		LOG.trace("[OpenSOC] Starting enrichment");
+
+		JSONObject in_json = null;
+		String key = null;
+		
+		try {
+
+			key = tuple.getStringByField("key");
+			in_json = (JSONObject) tuple.getValueByField("message");
+
+			if (in_json == null || in_json.isEmpty())
+				throw new Exception("Could not parse binary stream to JSON");
+			
+			if(key == null)
+				throw new Exception("Key is not valid");
+
+			LOG.trace("[OpenSOC] Received tuple: " + in_json);
+
+			JSONObject message = (JSONObject) in_json.get("message");
+
+			if (message == null || message.isEmpty())
+				throw new Exception("Could not extract message from JSON: "
+						+ in_json);
+
+			LOG.trace("[OpenSOC] Extracted message: " + message);
+
+			for (String jsonkey : _jsonKeys) {
+				LOG.trace("[OpenSOC] Processing:" + jsonkey + " within:"
+						+ message);
+
+				String jsonvalue = (String) message.get(jsonkey);
+				LOG.trace("[OpenSOC] Processing: " + jsonkey + " -> "
+						+ jsonvalue);
+
+				if (null == jsonvalue) {
+					LOG.trace("[OpenSOC] Key " + jsonkey
+							+ "not present in message " + message);
+					continue;
+				}
+
+				JSONObject enrichment = cache.getUnchecked(jsonvalue);
+				LOG.trace("[OpenSOC] Enriched: " + jsonkey + " -> "
+						+ enrichment);
+
+				if (enrichment == null)
+					throw new Exception("[OpenSOC] Could not enrich string: "
+							+ jsonvalue);
+
+				if (!in_json.containsKey("enrichment")) {
+					in_json.put("enrichment", new JSONObject());
+					LOG.trace("[OpenSOC] Starting a string of enrichments");
+				}
+
+				JSONObject enr1 = (JSONObject) in_json.get("enrichment");
+
+				if (enr1 == null)
+					throw new Exception("Internal enrichment is empty");
+
+				if (!enr1.containsKey(_enrichment_tag)) {
+					enr1.put(_enrichment_tag, new JSONObject());
+					LOG.trace("[OpenSOC] Starting a new enrichment");
+				}
+
+				LOG.trace("[OpenSOC] ENR1 is: " + enr1);
+
+				JSONObject enr2 = (JSONObject) enr1.get(_enrichment_tag);
+				enr2.put(jsonkey, enrichment);
+
+				LOG.trace("[OpenSOC] ENR2 is: " + enr2);
+
+				enr1.put(_enrichment_tag, enr2);
+				in_json.put("enrichment", enr1);
+			}
+
+			LOG.debug("[OpenSOC] Generated combined enrichment: " + in_json);
+
+			_collector.emit("message", new Values(key, in_json));
+			_collector.ack(tuple);
+
+			if (_reporter != null) {
+				emitCounter.inc();
+				ackCounter.inc();
+			}
+		} catch (Exception e) {
+			
+			LOG.error("[OpenSOC] Unable to enrich message: " + in_json);
+			_collector.fail(tuple);
+
+			if (_reporter != null) {
+				failCounter.inc();
+			}
+			
+			JSONObject error = ErrorGenerator.generateErrorMessage("Enrichment problem: " + in_json, e.toString());
+			_collector.emit("error", new Values(error));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.benchmarks.parsers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opensoc.benchmarks.SampleInput;
+import com.opensoc.parsing.parsers.BasicBroParser;
+import com.opensoc.parsing.parsers.StreamingBroParser;
+
+/**
+ * BasicBroParser and StreamingBroParser on the SampleInput Bro lines, which
+ * mix the common log types. Each operation parses one line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroParserBenchmark {
+
+	private byte[][] lines;
+	private int next;
+
+	private BasicBroParser basic;
+	private StreamingBroParser streaming;
+
+	@Setup
+	public void setUp() throws Exception {
+		lines = SampleInput.load("BroExampleOutput");
+		basic = new BasicBroParser();
+		streaming = new StreamingBroParser();
+	}
+
+	@Benchmark
+	public JSONObject basic() {
+		return basic.parse(nextLine());
+	}
+
+	@Benchmark
+	public JSONObject streaming() {
+		return streaming.parse(nextLine());
+	}
+
+	private byte[] nextLine() {
+		byte[] line = lines[next];
+		next = (next + 1) % lines.length;
+		return line;
+	}
+}
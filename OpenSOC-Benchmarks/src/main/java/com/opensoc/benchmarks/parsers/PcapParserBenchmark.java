@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.benchmarks.parsers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.opensoc.pcap.PacketInfo;
+import com.opensoc.parsing.parsers.PcapParser;
+
+/**
+ * PcapParser on single packet captures, the unit the pcap topology reads
+ * from Kafka. SampleInput/PCAPExampleOutput is empty, so the captures are
+ * built here: Ethernet, IPv4 and an even mix of TCP and UDP with payloads of
+ * up to a kilobyte. parse() measures the decoding alone, indexDoc() adds the
+ * JSON document PcapParserBolt builds for every packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcapParserBenchmark {
+
+	private static final int CAPTURES = 64;
+
+	private byte[][] captures;
+	private int next;
+
+	@Setup
+	public void setUp() throws Exception {
+		Random random = new Random(42);
+		captures = new byte[CAPTURES][];
+		for (int i = 0; i < CAPTURES; i++)
+			captures[i] = capture(random, i % 2 == 0);
+	}
+
+	@Benchmark
+	public List<PacketInfo> parse() throws IOException {
+		return PcapParser.parse(nextCapture());
+	}
+
+	@Benchmark
+	public void indexDoc(Blackhole blackhole) throws IOException {
+		for (PacketInfo packetInfo : PcapParser.parse(nextCapture()))
+			blackhole.consume(packetInfo.getJsonIndexDoc());
+	}
+
+	private byte[] nextCapture() {
+		byte[] capture = captures[next];
+		next = (next + 1) % captures.length;
+		return capture;
+	}
+
+	/**
+	 * Builds a big endian capture holding one Ethernet frame
+	 */
+	private static byte[] capture(Random random, boolean tcp)
+			throws IOException {
+		byte[] payload = new byte[random.nextInt(1024)];
+		random.nextBytes(payload);
+
+		int transportLength = (tcp ? 20 : 8) + payload.length;
+		int ipLength = 20 + transportLength;
+		int frameLength = 14 + ipLength;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		// Global header
+		out.writeInt(0xA1B2C3D4);
+		out.writeShort(2);
+		out.writeShort(4);
+		out.writeInt(0);
+		out.writeInt(0);
+		out.writeInt(65535);
+		out.writeInt(1);
+
+		// Packet header
+		out.writeInt(1402308259);
+		out.writeInt(random.nextInt(1000000));
+		out.writeInt(frameLength);
+		out.writeInt(frameLength);
+
+		// Ethernet
+		out.write(new byte[] { 0x00, 0x50, 0x56, (byte) 0xa2, 0x1c, 0x3f });
+		out.write(new byte[] { 0x00, 0x0c, 0x29, 0x4b, 0x11, 0x02 });
+		out.writeShort(0x0800);
+
+		// IPv4 without options
+		out.writeByte(0x45);
+		out.writeByte(0);
+		out.writeShort(ipLength);
+		out.writeShort(random.nextInt(65536));
+		out.writeShort(0x4000);
+		out.writeByte(64);
+		out.writeByte(tcp ? 6 : 17);
+		out.writeShort(0);
+		out.writeInt(0x0A7AC400 | random.nextInt(256));
+		out.writeInt(0x48A304A1);
+
+		int sourcePort = 1024 + random.nextInt(60000);
+		int destinationPort = tcp ? 443 : 53;
+
+		if (tcp) {
+			out.writeShort(sourcePort);
+			out.writeShort(destinationPort);
+			out.writeInt(random.nextInt());
+			out.writeInt(random.nextInt());
+			out.writeByte(5 << 4);
+			out.writeByte(0x18);
+			out.writeShort(29200);
+			out.writeShort(0);
+			out.writeShort(0);
+		} else {
+			out.writeShort(sourcePort);
+			out.writeShort(destinationPort);
+			out.writeShort(transportLength);
+			out.writeShort(0);
+		}
+		out.write(payload);
+
+		out.close();
+		return bytes.toByteArray();
+	}
+}
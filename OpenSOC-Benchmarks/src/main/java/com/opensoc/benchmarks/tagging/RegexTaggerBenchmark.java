@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.benchmarks.tagging;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opensoc.benchmarks.SampleInput;
+import com.opensoc.benchmarks.tagging.baseline.LegacyRegexTagger;
+import com.opensoc.parsing.parsers.BasicBroParser;
+import com.opensoc.tagging.adapters.RegexTagger;
+
+/**
+ * Per message cost of RegexTagger against the version that compiled and ran
+ * every rule on the whole message string, for 10, 100 and 500 IOC style
+ * rules (".*bad-host-N\.example\.com.*") on the first SampleInput Bro
+ * message. One rule matches its host field. The fields variant only matches
+ * the rules against message.host.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegexTaggerBenchmark {
+
+	@Param({ "10", "100", "500" })
+	public int rules;
+
+	private JSONObject message;
+
+	private RegexTagger current;
+	private RegexTagger fields;
+	private LegacyRegexTagger legacy;
+
+	@SuppressWarnings("unchecked")
+	@Setup
+	public void setUp() throws Exception {
+		JSONObject parsed = new BasicBroParser().parse(SampleInput
+				.load("BroExampleOutput")[0]);
+		message = new JSONObject();
+		message.put("message", parsed);
+
+		Map<String, JSONObject> rule_map = new LinkedHashMap<String, JSONObject>();
+		for (int i = 0; i < rules - 1; i++)
+			rule_map.put(".*bad-host-" + i + "\\.example\\.com.*", alert(i));
+
+		String host = String.valueOf(parsed.get("host"));
+		rule_map.put(".*" + host.replace(".", "\\.") + ".*", alert(rules));
+
+		current = new RegexTagger(rule_map);
+		fields = new RegexTagger(rule_map).withFields("message.host");
+		legacy = new LegacyRegexTagger(rule_map);
+
+		if (current.tag(message).size() != 1
+				|| !legacy.tag(message).equals(current.tag(message)))
+			throw new IllegalStateException("Taggers disagree on " + message);
+	}
+
+	@Benchmark
+	public JSONArray current() {
+		return current.tag(message);
+	}
+
+	@Benchmark
+	public JSONArray fields() {
+		return fields.tag(message);
+	}
+
+	@Benchmark
+	public JSONArray legacy() {
+		return legacy.tag(message);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject alert(int i) {
+		JSONObject alert = new JSONObject();
+		alert.put("type", "alert");
+		alert.put("title", "IOC " + i);
+		return alert;
+	}
+}
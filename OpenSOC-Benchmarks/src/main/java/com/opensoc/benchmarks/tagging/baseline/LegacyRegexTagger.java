@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.benchmarks.tagging.baseline;
+
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import com.opensoc.alerts.interfaces.TaggerAdapter;
+
+/**
+ * RegexTagger.tag as it was before the rules were precompiled and
+ * prefiltered, kept as the baseline for RegexTaggerBenchmark. Every rule is
+ * compiled and matched against the whole message string on every call.
+ */
+public class LegacyRegexTagger implements TaggerAdapter {
+
+	private final Map<String, JSONObject> _rules;
+
+	public LegacyRegexTagger(Map<String, JSONObject> rules) {
+		_rules = rules;
+	}
+
+	@SuppressWarnings("unchecked")
+	public JSONArray tag(JSONObject raw_message) {
+
+		JSONArray ja = new JSONArray();
+		String message_as_string = raw_message.toString();
+
+		for (String rule : _rules.keySet()) {
+			if (message_as_string.matches(rule)) {
+				ja.add(_rules.get(rule));
+			}
+		}
+
+		return ja;
+	}
+}
@@ -13,4 +13,9 @@ public interface AlertsAdapter {
 	Map<String, JSONObject> alert(JSONObject raw_message);
 
 	boolean containsAlertId(String alert);
+
+	/**
+	 * Stops any background refresh started by initialize()
+	 */
+	void close();
 }
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.interfaces;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Optional extension of EnrichmentAdapter for adapters that can look up
+ * several values in one round trip, e.g. with an HBase multi-get.
+ * GenericEnrichmentBolt uses it to resolve the cache misses of a whole batch
+ * of tuples at once.
+ */
+public interface BatchEnrichmentAdapter extends EnrichmentAdapter
+{
+	/**
+	 * @param metadata
+	 *            Distinct values to enrich
+	 * @return The enrichment of every value, as enrich would return it
+	 */
+	Map<String, JSONObject> enrichBatch(Collection<String> metadata);
+}
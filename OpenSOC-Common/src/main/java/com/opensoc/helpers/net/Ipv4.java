@@ -0,0 +1,84 @@
+package com.opensoc.helpers.net;
+
+/**
+ * Allocation free parsing of dotted IPv4 addresses and CIDR blocks into
+ * unsigned 32 bit values held in a long.
+ */
+public final class Ipv4 {
+
+	/**
+	 * Returned by {@link #parse(CharSequence)} for anything that is not a
+	 * dotted IPv4 address
+	 */
+	public static final long INVALID = -1L;
+
+	private Ipv4() {
+	}
+
+	/**
+	 * @param ip
+	 *            Dotted quad such as 10.1.2.3
+	 * @return The address as an unsigned 32 bit value, or {@link #INVALID}
+	 */
+	public static long parse(CharSequence ip) {
+		return parse(ip, 0, ip.length());
+	}
+
+	/**
+	 * Parses the characters between start and end
+	 */
+	public static long parse(CharSequence ip, int start, int end) {
+		long address = 0;
+		int octets = 0;
+		int value = -1;
+
+		for (int i = start; i < end; i++) {
+			char c = ip.charAt(i);
+			if (c >= '0' && c <= '9') {
+				value = (value < 0 ? 0 : value * 10) + c - '0';
+				if (value > 255)
+					return INVALID;
+			} else if (c == '.' && value >= 0 && octets < 3) {
+				address = address << 8 | value;
+				octets++;
+				value = -1;
+			} else {
+				return INVALID;
+			}
+		}
+
+		if (octets != 3 || value < 0)
+			return INVALID;
+		return address << 8 | value;
+	}
+
+	/**
+	 * @param cidr
+	 *            Block such as 10.0.0.0/8. A plain address is a /32
+	 * @return Two values: the first and the last address of the block
+	 * @throws IllegalArgumentException
+	 *             If cidr is not an IPv4 block
+	 */
+	public static long[] parseCidr(String cidr) {
+		String block = cidr.trim();
+		int slash = block.indexOf('/');
+		long address = parse(block, 0, slash < 0 ? block.length() : slash);
+		int bits = 32;
+
+		if (slash >= 0) {
+			try {
+				bits = Integer.parseInt(block.substring(slash + 1));
+			} catch (NumberFormatException e) {
+				bits = -1;
+			}
+		}
+
+		if (address == INVALID || bits < 0 || bits > 32)
+			throw new IllegalArgumentException("Not an IPv4 CIDR block: "
+					+ cidr);
+
+		long size = 1L << (32 - bits);
+		long first = address & ~(size - 1) & 0xffffffffL;
+		return new long[] { first, first + size - 1 };
+	}
+}
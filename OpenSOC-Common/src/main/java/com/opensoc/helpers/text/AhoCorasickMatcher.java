@@ -0,0 +1,147 @@
+package com.opensoc.helpers.text;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches a fixed set of byte patterns against a byte array in a single pass.
+ * The patterns are compiled into an Aho-Corasick automaton with a full 256
+ * entry transition table per state, so a search costs one array lookup per
+ * input byte regardless of how many patterns there are.
+ * <p>
+ * The same automaton answers both "does the input start with one of the
+ * patterns" and "does the input contain one of the patterns". Instances are
+ * immutable and can be shared between threads.
+ */
+public final class AhoCorasickMatcher implements Serializable {
+
+	private static final long serialVersionUID = -4180317528573154907L;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final int[] trie;
+	private final boolean[] terminal;
+	private final int[] automaton;
+	private final boolean[] accepting;
+	private final int patternCount;
+
+	/**
+	 * @param patterns
+	 *            Literals to look for, encoded as UTF-8. Empty strings are
+	 *            ignored
+	 */
+	public AhoCorasickMatcher(List<String> patterns) {
+		List<byte[]> encoded = new ArrayList<byte[]>();
+		for (String pattern : patterns) {
+			if (!pattern.isEmpty())
+				encoded.add(pattern.getBytes(UTF_8));
+		}
+		patternCount = encoded.size();
+
+		int maxStates = 1;
+		for (byte[] pattern : encoded)
+			maxStates += pattern.length;
+
+		// Goto function of the keyword trie, -1 for a missing edge
+		int[] edges = new int[maxStates * 256];
+		Arrays.fill(edges, -1);
+		boolean[] ends = new boolean[maxStates];
+		int states = 1;
+
+		for (byte[] pattern : encoded) {
+			int state = 0;
+			for (byte b : pattern) {
+				int slot = state * 256 + (b & 0xff);
+				if (edges[slot] < 0)
+					edges[slot] = states++;
+				state = edges[slot];
+			}
+			ends[state] = true;
+		}
+
+		trie = Arrays.copyOf(edges, states * 256);
+		terminal = Arrays.copyOf(ends, states);
+		accepting = Arrays.copyOf(ends, states);
+		automaton = new int[states * 256];
+
+		// Breadth first over the trie: a missing edge follows the failure
+		// link, and a state accepts if its failure state does
+		int[] failure = new int[states];
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+
+		for (int c = 0; c < 256; c++) {
+			int next = trie[c];
+			if (next > 0) {
+				automaton[c] = next;
+				failure[next] = 0;
+				queue[tail++] = next;
+			} else {
+				automaton[c] = 0;
+			}
+		}
+
+		while (head < tail) {
+			int state = queue[head++];
+			accepting[state] |= accepting[failure[state]];
+
+			for (int c = 0; c < 256; c++) {
+				int next = trie[state * 256 + c];
+				if (next > 0) {
+					automaton[state * 256 + c] = next;
+					failure[next] = automaton[failure[state] * 256 + c];
+					queue[tail++] = next;
+				} else {
+					automaton[state * 256 + c] = automaton[failure[state]
+							* 256 + c];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return True if no patterns were configured, in which case nothing
+	 *         matches
+	 */
+	public boolean isEmpty() {
+		return patternCount == 0;
+	}
+
+	/**
+	 * @return True if the input starts with one of the patterns
+	 */
+	public boolean matchesPrefix(byte[] input) {
+		if (patternCount == 0)
+			return false;
+
+		int state = 0;
+		for (int i = 0; i < input.length; i++) {
+			state = trie[state * 256 + (input[i] & 0xff)];
+			if (state < 0)
+				return false;
+			if (terminal[state])
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return True if one of the patterns occurs anywhere in the input
+	 */
+	public boolean matchesAnywhere(byte[] input) {
+		if (patternCount == 0)
+			return false;
+
+		int state = 0;
+		for (int i = 0; i < input.length; i++) {
+			state = automaton[state * 256 + (input[i] & 0xff)];
+			if (accepting[state])
+				return true;
+		}
+		return false;
+	}
+}
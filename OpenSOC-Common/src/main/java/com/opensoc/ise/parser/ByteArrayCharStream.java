@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.ise.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A {@link JavaCharStream} that decodes UTF-8 straight from a byte array into
+ * the stream's character buffer, instead of going through a String and a
+ * StringReader. A fixed prefix can be fed ahead of the bytes, which is how the
+ * ISE grammar's "header=" key is supplied.
+ * <p>
+ * The stream is meant to be reset and reused for every message so the
+ * character and position buffers are only allocated once.
+ */
+class ByteArrayCharStream extends JavaCharStream {
+
+	private static final int NEXT_CHAR_BUF_SIZE = 4096;
+
+	private final char[] prefix;
+	private final CharsetDecoder decoder = Charset.forName("UTF-8")
+			.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	private ByteBuffer input;
+	private int prefixPos;
+
+	ByteArrayCharStream(String prefix) {
+		super((java.io.Reader) null);
+		this.prefix = prefix.toCharArray();
+	}
+
+	/**
+	 * Points the stream at a new message and rewinds all of its state.
+	 */
+	void reset(byte[] bytes, int offset, int length) {
+		super.ReInit((java.io.Reader) null, 1, 1, NEXT_CHAR_BUF_SIZE);
+		input = ByteBuffer.wrap(bytes, offset, length);
+		prefixPos = 0;
+		decoder.reset();
+	}
+
+	@Override
+	protected void FillBuff() throws java.io.IOException {
+		// Wrap one char early so a surrogate pair always fits
+		if (maxNextCharInd >= NEXT_CHAR_BUF_SIZE - 1)
+			maxNextCharInd = nextCharInd = 0;
+
+		int start = maxNextCharInd;
+
+		while (prefixPos < prefix.length
+				&& maxNextCharInd < NEXT_CHAR_BUF_SIZE)
+			nextCharBuf[maxNextCharInd++] = prefix[prefixPos++];
+
+		if (maxNextCharInd < NEXT_CHAR_BUF_SIZE && input.hasRemaining()) {
+			CharBuffer out = CharBuffer.wrap(nextCharBuf, maxNextCharInd,
+					NEXT_CHAR_BUF_SIZE - maxNextCharInd);
+			decoder.decode(input, out, true);
+			if (!input.hasRemaining())
+				decoder.flush(out);
+			maxNextCharInd = out.position();
+		}
+
+		if (maxNextCharInd == start) {
+			if (bufpos != 0) {
+				--bufpos;
+				backup(0);
+			} else {
+				bufline[bufpos] = line;
+				bufcolumn[bufpos] = column;
+			}
+			throw new java.io.IOException();
+		}
+	}
+}
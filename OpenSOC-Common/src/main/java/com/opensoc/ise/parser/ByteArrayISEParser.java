@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.ise.parser;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Reusable wrapper around the generated {@link ISEParser} that parses raw
+ * message bytes directly. The char stream, token manager and parser are built
+ * once and re-initialized for every message, so their buffers are reused.
+ * <p>
+ * Instances are not thread-safe. Keep one per thread, e.g. in a ThreadLocal.
+ */
+public class ByteArrayISEParser {
+
+	private final ByteArrayCharStream stream;
+	private final ISEParserTokenManager tokenManager;
+	private ISEParser parser;
+
+	/**
+	 * @param prefix
+	 *            Characters fed to the grammar ahead of every message, e.g.
+	 *            "header="
+	 */
+	public ByteArrayISEParser(String prefix) {
+		stream = new ByteArrayCharStream(prefix);
+		tokenManager = new ISEParserTokenManager(stream);
+	}
+
+	/**
+	 * Parses a message after trimming leading and trailing whitespace and
+	 * control characters, as String.trim() would. Lexical errors are reported
+	 * as a {@link ParseException} as well.
+	 */
+	public JSONObject parse(byte[] msg) throws ParseException {
+		int from = 0;
+		int to = msg.length;
+
+		while (from < to && (msg[from] & 0xff) <= ' ')
+			from++;
+		while (to > from && (msg[to - 1] & 0xff) <= ' ')
+			to--;
+
+		stream.reset(msg, from, to - from);
+		tokenManager.ReInit(stream);
+
+		try {
+			if (parser == null)
+				parser = new ISEParser(tokenManager);
+			else
+				parser.ReInit(tokenManager);
+
+			return parser.parseObject();
+		} catch (TokenMgrError e) {
+			throw new ParseException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package com.opensoc.parser.interfaces;
+
+/**
+ * Cheap check on the raw message bytes, run by the parser bolt before the
+ * message is handed to its MessageParser. Messages rejected here are acked
+ * and dropped without being parsed.
+ */
+public interface RawMessageFilter {
+
+	/**
+	 * @param raw_message
+	 *            Message bytes as read from Kafka. Must not be modified
+	 * @return False if message is filtered and True if message is not filtered
+	 */
+	public boolean emitTuple(byte[] raw_message);
+
+}
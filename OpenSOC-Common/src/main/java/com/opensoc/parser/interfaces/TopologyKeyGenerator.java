@@ -0,0 +1,19 @@
+package com.opensoc.parser.interfaces;
+
+/**
+ * Builds the "key" field a parser bolt emits with every message. Downstream
+ * enrichment and alert bolts are subscribed with a fields grouping on that
+ * key, so the generator decides how messages are spread over their tasks.
+ */
+public interface TopologyKeyGenerator {
+
+	/**
+	 * @param src_ip
+	 *            Value of ip_src_addr, or null if the message has none
+	 * @param dst_ip
+	 *            Value of ip_dst_addr, or null if the message has none
+	 * @return Routing key for the message, never null
+	 */
+	public String generateKey(String src_ip, String dst_ip);
+
+}
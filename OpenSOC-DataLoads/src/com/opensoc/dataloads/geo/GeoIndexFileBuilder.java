@@ -0,0 +1,89 @@
+package com.opensoc.dataloads.geo;
+
+import java.io.File;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.log4j.Logger;
+
+import com.opensoc.enrichment.adapters.geo.CsvGeoIndexSource;
+import com.opensoc.enrichment.adapters.geo.GeoIndexFile;
+import com.opensoc.enrichment.adapters.geo.GeoRangeIndex;
+import com.opensoc.enrichment.adapters.geo.MysqlGeoIndexSource;
+
+/**
+ * Builds the memory-mapped geo index file read by MappedGeoIndexSource, from
+ * either the GeoLite City CSV files or the MySQL geo tables.
+ */
+public class GeoIndexFileBuilder {
+
+	private static final Logger LOG = Logger
+			.getLogger(GeoIndexFileBuilder.class);
+
+	public static void main(String[] args) {
+
+		CommandLineParser parser = new BasicParser();
+		Options options = new Options();
+
+		options.addOption("blocks", true, "GeoLiteCity-Blocks.csv path");
+		options.addOption("locations", true, "GeoLiteCity-Location.csv path");
+		options.addOption("host", true, "MySQL host");
+		options.addOption("port", true, "MySQL port");
+		options.addOption("user", true, "MySQL user");
+		options.addOption("password", true, "MySQL password");
+		options.addOption("db", true, "MySQL database, default GEO");
+		options.addOption("table", true, "MySQL blocks table, default blocks");
+		options.addOption("o", true, "Output file");
+
+		try {
+			CommandLine cmd = parser.parse(options, args);
+
+			if (!cmd.hasOption("o")) {
+				LOG.info("Missing output file");
+				printUsage();
+				System.exit(-1);
+			}
+
+			GeoRangeIndex index;
+
+			if (cmd.hasOption("blocks") && cmd.hasOption("locations")) {
+				LOG.info("Reading " + cmd.getOptionValue("blocks") + " and "
+						+ cmd.getOptionValue("locations"));
+				index = new CsvGeoIndexSource(cmd.getOptionValue("blocks"),
+						cmd.getOptionValue("locations")).load();
+			} else if (cmd.hasOption("host")) {
+				LOG.info("Reading MySQL host " + cmd.getOptionValue("host"));
+				index = new MysqlGeoIndexSource(cmd.getOptionValue("host"),
+						Integer.parseInt(cmd.getOptionValue("port", "0")),
+						cmd.getOptionValue("user"),
+						cmd.getOptionValue("password"), cmd.getOptionValue(
+								"db", "GEO")).withBlocksTable(
+						cmd.getOptionValue("table", "blocks")).load();
+			} else {
+				LOG.info("Missing CSV files or MySQL host");
+				printUsage();
+				System.exit(-1);
+				return;
+			}
+
+			File output = new File(cmd.getOptionValue("o"));
+			GeoIndexFile.write(index, output);
+			LOG.info("Wrote " + index.size() + " ranges to " + output);
+
+		} catch (org.apache.commons.cli.ParseException e) {
+			LOG.error("Failed to parse comand line properties", e);
+			printUsage();
+			System.exit(-1);
+		} catch (Exception e) {
+			LOG.error("Failed to build geo index file", e);
+			System.exit(-1);
+		}
+	}
+
+	private static void printUsage() {
+		System.out
+				.println("Usage: java -cp JarFile com.opensoc.dataloads.geo.GeoIndexFileBuilder (-blocks <csv> -locations <csv> | -host <mysql host> [-port <port>] -user <user> -password <password> [-db <database>] [-table <blocks table>]) -o <output file>");
+	}
+}
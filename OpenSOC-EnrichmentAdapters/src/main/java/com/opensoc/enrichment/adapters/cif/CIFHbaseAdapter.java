@@ -18,8 +18,15 @@
 package com.opensoc.enrichment.adapters.cif;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.json.simple.JSONObject;
 import org.apache.hadoop.conf.Configuration;
@@ -32,15 +39,48 @@ import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.log4j.Logger;
 
+import com.codahale.metrics.Counter;
+import com.opensoc.enrichment.interfaces.BatchEnrichmentAdapter;
+import com.opensoc.enrichment.interfaces.ThreadSafeEnrichmentAdapter;
+import com.opensoc.json.serialization.JSONEncoderHelper;
+import com.opensoc.metrics.MetricReporter;
+
+/**
+ * Looks up IPs, domains and emails in the CIF table. Almost all lookups miss,
+ * so the adapter can keep a Bloom filter of the table's row keys (see
+ * {@link #withRowKeyFilter(double, long)}) and skip the HBase call for keys
+ * the filter rules out. The filter is rebuilt by scanning the table
+ * periodically; keys added to the table in between are only found after the
+ * next rebuild. The first adapter of a worker to be initialized builds the
+ * filter of its table, and all adapters of the worker that read the same
+ * table share it, so a worker scans the table once per rebuild however many
+ * CIF tasks it runs.
+ * <p>
+ * With a metric configuration the adapter reports hits, misses and filter
+ * false positives (keys the filter let through that the table does not have).
+ * <p>
+ * Every lookup takes its own table instance from the shared HConnection, so
+ * the adapter can be called from several threads at once.
+ */
 @SuppressWarnings("unchecked")
-public class CIFHbaseAdapter extends AbstractCIFAdapter {
+public class CIFHbaseAdapter extends AbstractCIFAdapter implements
+		BatchEnrichmentAdapter, ThreadSafeEnrichmentAdapter {
 
 	private static final long serialVersionUID = 1L;
 	private String _tableName;
-	private HTableInterface table;
 	private String _quorum;
 	private String _port;
 
+	private double _falsePositiveRate;
+	private long _filterRefreshMinutes;
+	private JSONObject _metricConfiguration;
+
+	private static final Map<String, SharedFilter> FILTERS = new HashMap<String, SharedFilter>();
+
+	private transient HConnection connection;
+	private transient SharedFilter sharedFilter;
+	private transient Counter hitCounter, missCounter, falsePositiveCounter;
+
 	public CIFHbaseAdapter(String quorum, String port, String tableName) {
 		_quorum = quorum;
 		_port = port;
@@ -51,6 +91,35 @@ public class CIFHbaseAdapter extends AbstractCIFAdapter {
 	private static final Logger LOGGER = Logger
 			.getLogger(CIFHbaseAdapter.class);
 
+	/**
+	 * @param falsePositiveRate
+	 *            Expected share of absent keys that still go to HBase, e.g.
+	 *            0.01
+	 * @param refreshMinutes
+	 *            Minutes between rebuilds of the filter, 0 to build it only
+	 *            once
+	 * @return Instance of this class
+	 */
+	public CIFHbaseAdapter withRowKeyFilter(double falsePositiveRate,
+			long refreshMinutes) {
+		_falsePositiveRate = falsePositiveRate;
+		_filterRefreshMinutes = refreshMinutes;
+		return this;
+	}
+
+	/**
+	 * @param config
+	 *            Configuration holding the com.opensoc.metrics reporter
+	 *            settings
+	 * @return Instance of this class
+	 */
+	public CIFHbaseAdapter withMetricConfiguration(
+			org.apache.commons.configuration.Configuration config) {
+		_metricConfiguration = JSONEncoderHelper.getJSON(config
+				.subset("com.opensoc.metrics"));
+		return this;
+	}
+
 	public JSONObject enrich(String metadata) {
 
 		JSONObject output = new JSONObject();
@@ -60,25 +129,97 @@ public class CIFHbaseAdapter extends AbstractCIFAdapter {
 		return output;
 	}
 
-	@SuppressWarnings({ "rawtypes", "deprecation" })
-	protected Map getCIFObject(String key) {
+	/**
+	 * Looks up all values with a single multi-get instead of one get per
+	 * value
+	 */
+	public Map<String, JSONObject> enrichBatch(Collection<String> metadata) {
 
-		LOGGER.debug("=======Pinging HBase For:" + key);
+		RowKeyFilter filter = rowKeyFilter();
+		List<String> keys = new ArrayList<String>(metadata.size());
+		List<Get> gets = new ArrayList<Get>(metadata.size());
+		Map<String, JSONObject> output = new HashMap<String, JSONObject>();
 
-		Get get = new Get(key.getBytes());
-		Result rs;
-		Map output = new HashMap();
+		for (String key : metadata) {
+			byte[] row = key.getBytes();
+
+			if (filter != null && !filter.mightContain(row)) {
+				count(missCounter);
+				output.put(key, new JSONObject());
+				continue;
+			}
+			keys.add(key);
+			gets.add(new Get(row));
+		}
+
+		if (keys.isEmpty())
+			return output;
+
+		LOGGER.debug("=======Pinging HBase For " + keys.size() + " keys");
+
+		Result[] rs = null;
 
 		try {
-			rs = table.get(get);
+			HTableInterface table = connection.getTable(_tableName);
+			try {
+				rs = table.get(gets);
+			} finally {
+				table.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 
-			for (KeyValue kv : rs.raw())
-				output.put(new String(kv.getQualifier()), "Y");
+		for (int i = 0; i < keys.size(); i++) {
+			JSONObject enrichment = new JSONObject();
+			if (rs != null && rs[i] != null) {
+				enrichment.putAll(toCIFObject(rs[i]));
+				countLookup(filter, !enrichment.isEmpty());
+			}
+			output.put(keys.get(i), enrichment);
+		}
 
+		return output;
+	}
+
+	@SuppressWarnings("rawtypes")
+	protected Map getCIFObject(String key) {
+
+		byte[] row = key.getBytes();
+		RowKeyFilter filter = rowKeyFilter();
+
+		if (filter != null && !filter.mightContain(row)) {
+			count(missCounter);
+			return new HashMap();
+		}
+
+		LOGGER.debug("=======Pinging HBase For:" + key);
+
+		Get get = new Get(row);
+
+		try {
+			HTableInterface table = connection.getTable(_tableName);
+			try {
+				Map output = toCIFObject(table.get(get));
+				countLookup(filter, !output.isEmpty());
+				return output;
+			} finally {
+				table.close();
+			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+		return new HashMap();
+	}
+
+	@SuppressWarnings({ "rawtypes", "deprecation" })
+	private static Map toCIFObject(Result rs) {
+		Map output = new HashMap();
+
+		for (KeyValue kv : rs.raw())
+			output.put(new String(kv.getQualifier()), "Y");
+
 		return output;
 	}
 
@@ -95,16 +236,140 @@ public class CIFHbaseAdapter extends AbstractCIFAdapter {
 			LOGGER.debug("=======Connecting to HBASE===========");
 			LOGGER.debug("=======ZOOKEEPER = "
 					+ conf.get("hbase.zookeeper.quorum"));
-			HConnection connection = HConnectionManager.createConnection(conf);
-			table = connection.getTable(_tableName);
-			return true;
+			connection = HConnectionManager.createConnection(conf);
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			LOGGER.debug("=======Unable to Connect to HBASE===========");
 			e.printStackTrace();
+			return false;
+		}
+
+		if (_metricConfiguration != null) {
+			try {
+				MetricReporter reporter = new MetricReporter();
+				reporter.initialize(_metricConfiguration, CIFHbaseAdapter.class);
+				hitCounter = reporter.registerCounter("hit");
+				missCounter = reporter.registerCounter("miss");
+				falsePositiveCounter = reporter
+						.registerCounter("falsePositive");
+			} catch (Exception e) {
+				LOGGER.info("Unable to initialize metrics reporting");
+			}
+		}
+
+		if (_falsePositiveRate > 0) {
+			String key = _quorum + ":" + _port + "/" + _tableName;
+
+			synchronized (FILTERS) {
+				sharedFilter = FILTERS.get(key);
+
+				if (sharedFilter == null) {
+					sharedFilter = new SharedFilter(connection, _tableName,
+							_falsePositiveRate);
+					sharedFilter.refresh();
+					sharedFilter.schedule(_filterRefreshMinutes);
+					FILTERS.put(key, sharedFilter);
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Rescans the table into the worker's row key filter.
+	 * 
+	 * @return False if there is no filter or the scan failed, in which case
+	 *         the previous filter is kept
+	 */
+	public boolean refreshRowKeyFilter() {
+		return sharedFilter != null && sharedFilter.refresh();
+	}
+
+	private RowKeyFilter rowKeyFilter() {
+		return sharedFilter == null ? null : sharedFilter.filter;
+	}
+
+	private void countLookup(RowKeyFilter filter, boolean found) {
+		if (found) {
+			count(hitCounter);
+		} else {
+			count(missCounter);
+			if (filter != null)
+				count(falsePositiveCounter);
 		}
+	}
+
+	private static void count(Counter counter) {
+		if (counter != null)
+			counter.inc();
+	}
+
+	/**
+	 * The row key filter of one CIF table and the thread that rebuilds it,
+	 * shared by all adapters of a worker that read the table
+	 */
+	private static final class SharedFilter {
+
+		private final HConnection connection;
+		private final String tableName;
+		private final double falsePositiveRate;
+
+		private volatile RowKeyFilter filter;
+		private ScheduledExecutorService refresher;
 
-		return false;
+		SharedFilter(HConnection connection, String tableName,
+				double falsePositiveRate) {
+			this.connection = connection;
+			this.tableName = tableName;
+			this.falsePositiveRate = falsePositiveRate;
+		}
+
+		/**
+		 * Scans the table into a new filter and swaps it in. Like the
+		 * lookups, the scan uses its own table instance.
+		 */
+		boolean refresh() {
+			try {
+				long start = System.currentTimeMillis();
+				HTableInterface scanTable = connection.getTable(tableName);
+
+				try {
+					RowKeyFilter scanned = RowKeyFilter.scan(scanTable,
+							falsePositiveRate);
+					filter = scanned;
+
+					LOGGER.info("Loaded " + scanned.size() + " CIF row keys in "
+							+ (System.currentTimeMillis() - start) + " ms");
+				} finally {
+					scanTable.close();
+				}
+				return true;
+			} catch (IOException e) {
+				LOGGER.error("Unable to scan CIF row keys, keeping the previous filter", e);
+				return false;
+			}
+		}
+
+		void schedule(long refreshMinutes) {
+			if (refreshMinutes <= 0)
+				return;
+
+			refresher = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable,
+									"cif-filter-refresh");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			refresher.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					refresh();
+				}
+			}, refreshMinutes, refreshMinutes, TimeUnit.MINUTES);
+		}
 	}
 
 	@Override
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.enrichment.adapters.cif;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Bloom filter over the row keys of an HBase table. A key the filter does not
+ * contain is certainly not in the table, so the lookup can be skipped; a key
+ * it contains is in the table with a probability of 1 - falsePositiveRate.
+ * <p>
+ * Row keys are reduced to 64 bit hashes while the table is scanned, so
+ * building the filter only needs 8 bytes per key on top of the filter itself.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class RowKeyFilter {
+
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final BloomFilter<Long> filter;
+	private final int size;
+
+	private RowKeyFilter(BloomFilter<Long> filter, int size) {
+		this.filter = filter;
+		this.size = size;
+	}
+
+	/**
+	 * @return Number of row keys the filter was built from
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param row
+	 *            Row key
+	 * @return False if the row is certainly not in the table
+	 */
+	public boolean mightContain(byte[] row) {
+		return filter.mightContain(hash(row));
+	}
+
+	private static long hash(byte[] row) {
+		return HASH.hashBytes(row).asLong();
+	}
+
+	/**
+	 * Builds a filter from all row keys of a table. Only the first key of
+	 * every row is transferred, without its value.
+	 * 
+	 * @param table
+	 *            Table to scan
+	 * @param falsePositiveRate
+	 *            Expected rate of keys reported as present that are not
+	 * @return Filter over the row keys
+	 * @throws IOException
+	 *             If the scan fails
+	 */
+	public static RowKeyFilter scan(HTableInterface table,
+			double falsePositiveRate) throws IOException {
+		Scan scan = new Scan();
+		scan.setFilter(new FilterList(new FirstKeyOnlyFilter(),
+				new KeyOnlyFilter()));
+		scan.setCaching(1000);
+		scan.setCacheBlocks(false);
+
+		Builder builder = new Builder();
+		ResultScanner scanner = table.getScanner(scan);
+
+		try {
+			for (Result result : scanner)
+				builder.add(result.getRow());
+		} finally {
+			scanner.close();
+		}
+
+		return builder.build(falsePositiveRate);
+	}
+
+	/**
+	 * Collects row key hashes until the number of keys, and so the size of
+	 * the filter, is known
+	 */
+	public static final class Builder {
+
+		private long[] hashes = new long[1024];
+		private int size;
+
+		public Builder add(byte[] row) {
+			if (size == hashes.length)
+				hashes = Arrays.copyOf(hashes, size * 2);
+			hashes[size++] = hash(row);
+			return this;
+		}
+
+		public RowKeyFilter build(double falsePositiveRate) {
+			BloomFilter<Long> filter = BloomFilter.create(
+					Funnels.longFunnel(), Math.max(size, 1000),
+					falsePositiveRate);
+
+			for (int i = 0; i < size; i++)
+				filter.put(hashes[i]);
+
+			return new RowKeyFilter(filter, size);
+		}
+	}
+}
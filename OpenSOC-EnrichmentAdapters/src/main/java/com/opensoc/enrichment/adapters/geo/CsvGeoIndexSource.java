@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.enrichment.adapters.geo;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the index from the GeoLite City CSV files as published by MaxMind:
+ * GeoLiteCity-Blocks.csv (startIpNum, endIpNum, locId) and
+ * GeoLiteCity-Location.csv (locId, country, region, city, postalCode,
+ * latitude, longitude, metroCode, areaCode). The copyright and column header
+ * lines are skipped, and metroCode is reported as dmaCode like the MySQL
+ * location table does.
+ */
+@SuppressWarnings("serial")
+public class CsvGeoIndexSource implements GeoIndexSource {
+
+	private final String blocksPath;
+	private final String locationsPath;
+
+	/**
+	 * @param blocksPath
+	 *            Path of GeoLiteCity-Blocks.csv on the worker
+	 * @param locationsPath
+	 *            Path of GeoLiteCity-Location.csv on the worker
+	 */
+	public CsvGeoIndexSource(String blocksPath, String locationsPath) {
+		this.blocksPath = blocksPath;
+		this.locationsPath = locationsPath;
+	}
+
+	public GeoRangeIndex load() throws IOException {
+		Reader blocks = open(blocksPath);
+		try {
+			Reader locations = open(locationsPath);
+			try {
+				return read(blocks, locations);
+			} finally {
+				locations.close();
+			}
+		} finally {
+			blocks.close();
+		}
+	}
+
+	private static Reader open(String path) throws IOException {
+		return new InputStreamReader(new FileInputStream(path), "ISO-8859-1");
+	}
+
+	/**
+	 * Builds an index from the two CSV streams
+	 */
+	static GeoRangeIndex read(Reader blocks, Reader locations)
+			throws IOException {
+		GeoRangeIndex.Builder builder = new GeoRangeIndex.Builder();
+		List<String> fields = new ArrayList<String>(9);
+
+		BufferedReader lines = new BufferedReader(locations);
+		String line;
+		while ((line = lines.readLine()) != null) {
+			if (!split(line, fields) || fields.size() < 8)
+				continue;
+			builder.addLocation(fields.get(0), fields.get(1), fields.get(3),
+					fields.get(4), fields.get(5), fields.get(6), fields.get(7));
+		}
+
+		lines = new BufferedReader(blocks);
+		while ((line = lines.readLine()) != null) {
+			if (!split(line, fields) || fields.size() < 3)
+				continue;
+			builder.addBlock(Long.parseLong(fields.get(0)),
+					Long.parseLong(fields.get(1)), fields.get(2));
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Splits a CSV line, removing the quotes around fields
+	 * 
+	 * @return False for lines that are not data rows, i.e. whose first field
+	 *         is not a number
+	 */
+	static boolean split(String line, List<String> fields) {
+		fields.clear();
+
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+
+		String first = fields.get(0);
+		if (first.isEmpty())
+			return false;
+		for (int i = 0; i < first.length(); i++) {
+			if (!Character.isDigit(first.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+}
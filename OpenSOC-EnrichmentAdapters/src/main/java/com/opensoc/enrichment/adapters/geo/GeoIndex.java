@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.enrichment.adapters.geo;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Read-only IPv4 range to location lookup used by GeoIndexAdapter.
+ * Implementations are immutable and safe to share between threads.
+ */
+public interface GeoIndex {
+
+	/**
+	 * @return Number of address ranges in the index
+	 */
+	public int size();
+
+	/**
+	 * @param address
+	 *            Unsigned 32 bit IPv4 address
+	 * @return Geo enrichment with the same fields GeoMysqlAdapter returns, or
+	 *         null if the address is not covered
+	 */
+	public JSONObject lookup(long address);
+
+}
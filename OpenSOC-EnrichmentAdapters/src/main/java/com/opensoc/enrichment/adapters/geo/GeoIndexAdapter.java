@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.enrichment.adapters.geo;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+
+import com.opensoc.enrichment.interfaces.ThreadSafeEnrichmentAdapter;
+import com.opensoc.helpers.net.Ipv4;
+
+/**
+ * Geo adapter that answers lookups from a GeoIndex held in memory
+ * instead of querying MySQL for every IP. The index is loaded from a
+ * GeoIndexSource when the adapter is initialized and, if a reload interval is
+ * set, rebuilt on a background thread and swapped in atomically; lookups keep
+ * using the previous index until the new one is complete, and a failed
+ * reload keeps the previous index.
+ * <p>
+ * The enrichment has the same fields as GeoMysqlAdapter's, and local,
+ * loopback, multicast and non IPv4 addresses get an empty enrichment as
+ * before. Lookups only read the current index, so enrich is safe to call from
+ * several threads.
+ */
+@SuppressWarnings("serial")
+public class GeoIndexAdapter extends AbstractGeoAdapter implements
+		ThreadSafeEnrichmentAdapter {
+
+	private final GeoIndexSource _source;
+	private final long _reloadMinutes;
+
+	private transient volatile GeoIndex index;
+	private transient ScheduledExecutorService reloader;
+
+	/**
+	 * @param source
+	 *            Where to read the blocks and location tables from
+	 * @param reloadMinutes
+	 *            Minutes between background reloads, 0 to load only once
+	 */
+	public GeoIndexAdapter(GeoIndexSource source, long reloadMinutes) {
+		_source = source;
+		_reloadMinutes = reloadMinutes;
+	}
+
+	@Override
+	public JSONObject enrich(String metadata) {
+
+		_LOG.trace("[OpenSOC] Received metadata: " + metadata);
+
+		long address = Ipv4.parse(metadata);
+
+		if (!isRemote(address)) {
+			_LOG.trace("[OpenSOC] Not a remote IP: " + metadata);
+			return new JSONObject();
+		}
+
+		GeoIndex current = index;
+		if (current == null) {
+			_LOG.debug("[OpenSOC] No geo index loaded, skipping: " + metadata);
+			return new JSONObject();
+		}
+
+		JSONObject jo = current.lookup(address);
+
+		if (jo == null) {
+			_LOG.debug("[OpenSOC] No geo location for: " + metadata);
+			return new JSONObject();
+		}
+
+		_LOG.debug("Returning enrichment: " + jo);
+		return jo;
+	}
+
+	@Override
+	public boolean initializeAdapter() {
+
+		_LOG.info("[OpenSOC] Initializing GeoIndexAdapter....");
+
+		if (!reload())
+			return false;
+
+		if (_reloadMinutes > 0) {
+			reloader = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable,
+									"geo-index-reload");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			reloader.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					reload();
+				}
+			}, _reloadMinutes, _reloadMinutes, TimeUnit.MINUTES);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Loads a new index from the source and swaps it in
+	 * 
+	 * @return False if the load failed and the previous index is kept
+	 */
+	public boolean reload() {
+		try {
+			long start = System.currentTimeMillis();
+			GeoIndex loaded = _source.load();
+			index = loaded;
+
+			_LOG.info("[OpenSOC] Loaded " + loaded.size()
+					+ " geo ranges in " + (System.currentTimeMillis() - start)
+					+ " ms");
+			return true;
+		} catch (Exception e) {
+			_LOG.error("[OpenSOC] Unable to load geo index", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Same checks GeoMysqlAdapter makes with InetAddress: no any-local,
+	 * loopback, site local (RFC 1918) or multicast addresses
+	 */
+	static boolean isRemote(long address) {
+		if (address == Ipv4.INVALID || address == 0)
+			return false;
+
+		int first = (int) (address >>> 24);
+		int second = (int) (address >>> 16) & 0xff;
+
+		return first != 127 && first != 10
+				&& !(first == 172 && second >= 16 && second <= 31)
+				&& !(first == 192 && second == 168) && (first & 0xf0) != 0xe0;
+	}
+}
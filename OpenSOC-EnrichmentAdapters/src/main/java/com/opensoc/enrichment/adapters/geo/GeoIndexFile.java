@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.enrichment.adapters.geo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of a GeoRangeIndex that workers map read-only instead of
+ * building the index on their own heap. All tasks on a host then share one
+ * copy of the data through the page cache.
+ * <p>
+ * The file is big-endian and laid out as:
+ * 
+ * <pre>
+ * int    magic, version, rangeCount, locationCount, stringCount, 0
+ * int[]  starts[rangeCount]        sorted, sign bit flipped
+ * int[]  ends[rangeCount]          sign bit flipped
+ * int[]  locationOf[rangeCount]
+ * int[]  locations[locationCount * 7]   string ids, -1 for null
+ * int[]  stringOffsets[stringCount + 1] relative to the string data
+ * byte[] string data               UTF-8
+ * </pre>
+ * 
+ * Every distinct string is stored once, so repeated country codes, cities and
+ * coordinates only cost an int per location.
+ */
+public final class GeoIndexFile {
+
+	static final int MAGIC = 0x4F53474F; // "OSGO"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 24;
+	static final int FIELDS = 7;
+
+	private GeoIndexFile() {
+	}
+
+	/**
+	 * Writes the index to a temporary file next to the target and moves it
+	 * into place atomically, so workers re-mapping the file never see a
+	 * partial write or a missing file.
+	 * 
+	 * @param index
+	 *            Index to write
+	 * @param file
+	 *            Target file
+	 * @throws IOException
+	 *             If the file cannot be written or the index does not fit in
+	 *             a single mapping
+	 */
+	public static void write(GeoRangeIndex index, File file)
+			throws IOException {
+		List<byte[]> strings = new ArrayList<byte[]>();
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		int[] fields = new int[index.locations.length * FIELDS];
+		long stringBytes = 0;
+
+		for (int i = 0; i < index.locations.length; i++) {
+			String[] values = index.locations[i].fields();
+			for (int f = 0; f < FIELDS; f++) {
+				String value = values[f];
+				if (value == null) {
+					fields[i * FIELDS + f] = -1;
+					continue;
+				}
+				Integer id = ids.get(value);
+				if (id == null) {
+					id = strings.size();
+					ids.put(value, id);
+					byte[] bytes = value.getBytes("UTF-8");
+					strings.add(bytes);
+					stringBytes += bytes.length;
+				}
+				fields[i * FIELDS + f] = id;
+			}
+		}
+
+		int ranges = index.size();
+		long total = HEADER_SIZE + 4L * ranges * 3 + 4L * fields.length + 4L
+				* (strings.size() + 1) + stringBytes;
+		if (total > Integer.MAX_VALUE)
+			throw new IOException("Geo index too large for a single file: "
+					+ total + " bytes");
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(file.getName(), ".tmp", parent);
+
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp), 65536));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(ranges);
+				out.writeInt(index.locations.length);
+				out.writeInt(strings.size());
+				out.writeInt(0);
+
+				writeInts(out, index.starts);
+				writeInts(out, index.ends);
+				writeInts(out, index.locationOf);
+				writeInts(out, fields);
+
+				int offset = 0;
+				out.writeInt(offset);
+				for (byte[] bytes : strings) {
+					offset += bytes.length;
+					out.writeInt(offset);
+				}
+				for (byte[] bytes : strings)
+					out.write(bytes);
+			} finally {
+				out.close();
+			}
+
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			if (temp.exists())
+				temp.delete();
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values)
+			throws IOException {
+		for (int value : values)
+			out.writeInt(value);
+	}
+
+	/**
+	 * Maps a file written by {@link #write(GeoRangeIndex, File)}. The file
+	 * can be closed and replaced afterwards; the mapping stays valid until the
+	 * returned index is garbage collected.
+	 * 
+	 * @param file
+	 *            Geo index file
+	 * @return Index reading straight from the mapping
+	 * @throws IOException
+	 *             If the file cannot be read or is not a geo index file
+	 */
+	public static MappedGeoIndex map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(file + " is too large");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			raf.close();
+		}
+
+		return new MappedGeoIndex(check(buffer, file));
+	}
+
+	private static ByteBuffer check(ByteBuffer buffer, File file)
+			throws IOException {
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException(file + " is not a geo index file");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException(file + " has unsupported version "
+					+ buffer.getInt(4));
+
+		long ranges = buffer.getInt(8);
+		long locations = buffer.getInt(12);
+		long strings = buffer.getInt(16);
+		long minimum = HEADER_SIZE + 4 * (ranges * 3 + locations * FIELDS
+				+ strings + 1);
+
+		if (ranges < 0 || locations < 0 || strings < 0
+				|| buffer.capacity() < minimum)
+			throw new IOException(file + " is truncated");
+
+		// Lookups follow these references without checking them again
+		int locationOfAt = (int) (HEADER_SIZE + 8 * ranges);
+		for (int i = 0; i < ranges; i++) {
+			int location = buffer.getInt(locationOfAt + 4 * i);
+			if (location < 0 || location >= locations)
+				throw new IOException(file + " is corrupt: range " + i
+						+ " has location " + location);
+		}
+
+		int locationsAt = locationOfAt + (int) (4 * ranges);
+		for (int i = 0; i < locations * FIELDS; i++) {
+			int id = buffer.getInt(locationsAt + 4 * i);
+			if (id < -1 || id >= strings)
+				throw new IOException(file + " is corrupt: location "
+						+ i / FIELDS + " has string " + id);
+		}
+
+		int offsetsAt = locationsAt + (int) (4 * locations * FIELDS);
+		long stringBytes = buffer.capacity() - minimum;
+		int previous = 0;
+		for (int i = 0; i <= strings; i++) {
+			int offset = buffer.getInt(offsetsAt + 4 * i);
+			if (offset < previous || (i == 0 && offset != 0))
+				throw new IOException(file + " is corrupt: string " + i
+						+ " has offset " + offset);
+			if (offset > stringBytes)
+				throw new IOException(file + " is truncated");
+			previous = offset;
+		}
+		return buffer;
+	}
+}
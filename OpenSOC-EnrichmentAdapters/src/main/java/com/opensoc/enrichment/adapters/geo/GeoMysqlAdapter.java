@@ -21,16 +21,25 @@ import java.net.InetAddress;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 
 import org.apache.commons.validator.routines.InetAddressValidator;
 import org.json.simple.JSONObject;
 
+import com.opensoc.enrichment.interfaces.ThreadSafeEnrichmentAdapter;
+
+/**
+ * Looks up IPs with the IPTOLOCID function of the geo MySQL database. Every
+ * lookup runs on its own statement, so the adapter can be called from several
+ * threads at once; the JDBC driver still runs the queries of the shared
+ * connection one at a time.
+ */
 @SuppressWarnings("serial")
-public class GeoMysqlAdapter extends AbstractGeoAdapter {
+public class GeoMysqlAdapter extends AbstractGeoAdapter implements
+		ThreadSafeEnrichmentAdapter {
 
-	private Connection connection = null;
-	private Statement statement = null;
+	private transient Connection connection = null;
 	private String _ip;
 	private String _username;
 	private String _password;
@@ -64,6 +73,7 @@ public class GeoMysqlAdapter extends AbstractGeoAdapter {
 	public JSONObject enrich(String metadata) {
 
 		ResultSet resultSet = null;
+		Statement statement = null;
 
 		try {
 
@@ -152,6 +162,15 @@ public class GeoMysqlAdapter extends AbstractGeoAdapter {
 			e.printStackTrace();
 			_LOG.error("Enrichment failure: " + e);
 			return new JSONObject();
+		} finally {
+			// Also closes the result sets of the statement
+			if (statement != null) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					_LOG.warn("Unable to close statement: " + e);
+				}
+			}
 		}
 	}
 
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.enrichment.adapters.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Immutable in-memory copy of the GeoLite blocks and location tables. IPv4
+ * ranges are held in sorted primitive arrays and looked up with a binary
+ * search, so a lookup does no I/O and allocates only the returned JSON.
+ * <p>
+ * Like the IPTOLOCID function of the MySQL schema, a lookup picks the block
+ * with the greatest start address not above the IP and matches if the IP is
+ * not past that block's end.
+ */
+public final class GeoRangeIndex implements GeoIndex {
+
+	/**
+	 * Unsigned addresses are stored with the sign bit flipped, so plain int
+	 * comparisons order them correctly
+	 */
+	static final int BIAS = Integer.MIN_VALUE;
+
+	// Package visible for GeoIndexFile
+	final int[] starts;
+	final int[] ends;
+	final int[] locationOf;
+	final Location[] locations;
+
+	private GeoRangeIndex(int[] starts, int[] ends, int[] locationOf,
+			Location[] locations) {
+		this.starts = starts;
+		this.ends = ends;
+		this.locationOf = locationOf;
+		this.locations = locations;
+	}
+
+	public int size() {
+		return starts.length;
+	}
+
+	/**
+	 * @param address
+	 *            Unsigned 32 bit IPv4 address
+	 * @return Position of the location in the index, or -1 if no range
+	 *         contains the address
+	 */
+	public int find(long address) {
+		if (address < 0 || address > 0xFFFFFFFFL)
+			return -1;
+
+		int key = (int) address ^ BIAS;
+		int low = 0;
+		int high = starts.length - 1;
+
+		// Last range starting at or below the address
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= key)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+
+		if (high < 0 || key > ends[high])
+			return -1;
+		return locationOf[high];
+	}
+
+	public JSONObject lookup(long address) {
+		int location = find(address);
+		return location < 0 ? null : locations[location].toJSON();
+	}
+
+	/**
+	 * Row of the location table
+	 */
+	static final class Location {
+
+		final String locID;
+		final String country;
+		final String city;
+		final String postalCode;
+		final String latitude;
+		final String longitude;
+		final String dmaCode;
+
+		Location(String locID, String country, String city,
+				String postalCode, String latitude, String longitude,
+				String dmaCode) {
+			this.locID = locID;
+			this.country = country;
+			this.city = city;
+			this.postalCode = postalCode;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.dmaCode = dmaCode;
+		}
+
+		String[] fields() {
+			return new String[] { locID, country, city, postalCode,
+					latitude, longitude, dmaCode };
+		}
+
+		JSONObject toJSON() {
+			return GeoRangeIndex.toJSON(locID, country, city, postalCode,
+					latitude, longitude, dmaCode);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static JSONObject toJSON(String locID, String country, String city,
+			String postalCode, String latitude, String longitude,
+			String dmaCode) {
+		JSONObject jo = new JSONObject();
+		jo.put("locID", locID);
+		jo.put("country", country);
+		jo.put("city", city);
+		jo.put("postalCode", postalCode);
+		jo.put("latitude", latitude);
+		jo.put("longitude", longitude);
+		jo.put("dmaCode", dmaCode);
+		jo.put("location_point", longitude + "," + latitude);
+		return jo;
+	}
+
+	/**
+	 * Collects locations and blocks in any order. Blocks whose location is
+	 * never added are dropped, as the MySQL lookup finds no row for them.
+	 */
+	public static final class Builder {
+
+		private final Map<String, Integer> locationIds = new HashMap<String, Integer>();
+		private final List<Location> locations = new ArrayList<Location>();
+
+		private long[] blocks = new long[1024];
+		private String[] blockLocations = new String[512];
+		private int blockCount;
+
+		/**
+		 * Adds a row of the location table. A later row with the same locID
+		 * replaces the earlier one
+		 */
+		public Builder addLocation(String locID, String country, String city,
+				String postalCode, String latitude, String longitude,
+				String dmaCode) {
+			Location location = new Location(locID, country, city,
+					postalCode, latitude, longitude, dmaCode);
+			Integer existing = locationIds.get(locID);
+			if (existing != null) {
+				locations.set(existing, location);
+			} else {
+				locationIds.put(locID, locations.size());
+				locations.add(location);
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a row of the blocks table
+		 * 
+		 * @param start
+		 *            First address of the range as an unsigned 32 bit value
+		 * @param end
+		 *            Last address of the range, inclusive
+		 * @param locID
+		 *            Location of the range
+		 */
+		public Builder addBlock(long start, long end, String locID) {
+			if (start < 0 || end > 0xFFFFFFFFL || start > end)
+				throw new IllegalArgumentException("Invalid range " + start
+						+ "-" + end + " for location " + locID);
+
+			if (blockCount == blockLocations.length) {
+				blocks = Arrays.copyOf(blocks, blocks.length * 2);
+				blockLocations = Arrays.copyOf(blockLocations,
+						blockLocations.length * 2);
+			}
+			blocks[blockCount * 2] = start;
+			blocks[blockCount * 2 + 1] = end;
+			blockLocations[blockCount] = locID;
+			blockCount++;
+			return this;
+		}
+
+		public GeoRangeIndex build() {
+			// Sort block positions by start address; ranges are at most 2^32
+			// so start and position pack into one long
+			long[] order = new long[blockCount];
+			int kept = 0;
+			for (int i = 0; i < blockCount; i++) {
+				if (locationIds.containsKey(blockLocations[i]))
+					order[kept++] = blocks[i * 2] << 31 | i;
+			}
+			order = Arrays.copyOf(order, kept);
+			Arrays.sort(order);
+
+			int[] starts = new int[kept];
+			int[] ends = new int[kept];
+			int[] locationOf = new int[kept];
+
+			for (int i = 0; i < kept; i++) {
+				int block = (int) (order[i] & 0x7FFFFFFFL);
+				starts[i] = (int) blocks[block * 2] ^ BIAS;
+				ends[i] = (int) blocks[block * 2 + 1] ^ BIAS;
+				locationOf[i] = locationIds.get(blockLocations[block]);
+			}
+
+			return new GeoRangeIndex(starts, ends, locationOf,
+					locations.toArray(new Location[locations.size()]));
+		}
+	}
+}
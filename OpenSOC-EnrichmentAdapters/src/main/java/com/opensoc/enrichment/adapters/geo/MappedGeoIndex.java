@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.enrichment.adapters.geo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.json.simple.JSONObject;
+
+/**
+ * GeoIndex over a read-only buffer in the GeoIndexFile format. The binary
+ * search runs directly on the mapped ranges and only the strings of the
+ * matching location are decoded. All reads use absolute positions, so one
+ * instance can be shared by any number of threads.
+ */
+public final class MappedGeoIndex implements GeoIndex {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buffer;
+	private final int ranges;
+	private final int startsAt;
+	private final int endsAt;
+	private final int locationOfAt;
+	private final int locationsAt;
+	private final int offsetsAt;
+	private final int stringsAt;
+
+	MappedGeoIndex(ByteBuffer buffer) {
+		this.buffer = buffer;
+
+		ranges = buffer.getInt(8);
+		int locations = buffer.getInt(12);
+		int strings = buffer.getInt(16);
+
+		startsAt = GeoIndexFile.HEADER_SIZE;
+		endsAt = startsAt + 4 * ranges;
+		locationOfAt = endsAt + 4 * ranges;
+		locationsAt = locationOfAt + 4 * ranges;
+		offsetsAt = locationsAt + 4 * locations * GeoIndexFile.FIELDS;
+		stringsAt = offsetsAt + 4 * (strings + 1);
+	}
+
+	public int size() {
+		return ranges;
+	}
+
+	/**
+	 * @param address
+	 *            Unsigned 32 bit IPv4 address
+	 * @return Position of the location in the index, or -1 if no range
+	 *         contains the address
+	 */
+	public int find(long address) {
+		if (address < 0 || address > 0xFFFFFFFFL)
+			return -1;
+
+		int key = (int) address ^ GeoRangeIndex.BIAS;
+		int low = 0;
+		int high = ranges - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (buffer.getInt(startsAt + 4 * mid) <= key)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+
+		if (high < 0 || key > buffer.getInt(endsAt + 4 * high))
+			return -1;
+		return buffer.getInt(locationOfAt + 4 * high);
+	}
+
+	public JSONObject lookup(long address) {
+		int location = find(address);
+		if (location < 0)
+			return null;
+
+		int at = locationsAt + 4 * location * GeoIndexFile.FIELDS;
+		return GeoRangeIndex.toJSON(string(at), string(at + 4),
+				string(at + 8), string(at + 12), string(at + 16),
+				string(at + 20), string(at + 24));
+	}
+
+	private String string(int fieldAt) {
+		int id = buffer.getInt(fieldAt);
+		if (id < 0)
+			return null;
+
+		int from = buffer.getInt(offsetsAt + 4 * id);
+		int to = buffer.getInt(offsetsAt + 4 * id + 4);
+		byte[] bytes = new byte[to - from];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(stringsAt + from + i);
+		return new String(bytes, UTF8);
+	}
+}
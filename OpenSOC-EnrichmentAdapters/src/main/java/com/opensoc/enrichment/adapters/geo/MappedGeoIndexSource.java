@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.enrichment.adapters.geo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opens a file written by GeoIndexFile, e.g. with the GeoIndexFileBuilder
+ * tool in OpenSOC-DataLoads. Adapters in the same worker that point at the
+ * same file share one mapping. A reload maps the file again only once it has
+ * been replaced, so the shared index follows the file on disk.
+ */
+@SuppressWarnings("serial")
+public class MappedGeoIndexSource implements GeoIndexSource {
+
+	private static final Map<String, Mapping> MAPPINGS = new HashMap<String, Mapping>();
+
+	private final String path;
+
+	/**
+	 * @param path
+	 *            Path of the geo index file on the worker
+	 */
+	public MappedGeoIndexSource(String path) {
+		this.path = path;
+	}
+
+	public MappedGeoIndex load() throws IOException {
+		File file = new File(path);
+		String key = file.getCanonicalPath();
+
+		synchronized (MAPPINGS) {
+			Mapping mapping = MAPPINGS.get(key);
+
+			if (mapping == null || mapping.modified != file.lastModified()
+					|| mapping.length != file.length()) {
+				mapping = new Mapping(file.lastModified(), file.length(),
+						GeoIndexFile.map(file));
+				MAPPINGS.put(key, mapping);
+			}
+			return mapping.index;
+		}
+	}
+
+	private static final class Mapping {
+
+		final long modified;
+		final long length;
+		final MappedGeoIndex index;
+
+		Mapping(long modified, long length, MappedGeoIndex index) {
+			this.modified = modified;
+			this.length = length;
+			this.index = index;
+		}
+	}
+}
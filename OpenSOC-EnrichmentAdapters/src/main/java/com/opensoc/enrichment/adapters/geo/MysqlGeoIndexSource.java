@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.enrichment.adapters.geo;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Loads the index from the MySQL database GeoMysqlAdapter queries, reading the
+ * blocks and location tables once with streaming result sets.
+ */
+@SuppressWarnings("serial")
+public class MysqlGeoIndexSource implements GeoIndexSource {
+
+	private final String _ip;
+	private final int _port;
+	private final String _username;
+	private final String _password;
+	private final String _tablename;
+	private String _blocksTable = "blocks";
+
+	/**
+	 * @param tablename
+	 *            Name of the geo database, as for GeoMysqlAdapter
+	 */
+	public MysqlGeoIndexSource(String ip, int port, String username,
+			String password, String tablename) {
+		_ip = ip;
+		_port = port;
+		_username = username;
+		_password = password;
+		_tablename = tablename;
+	}
+
+	/**
+	 * @param blocksTable
+	 *            Table with the startIpNum, endIpNum and locId columns.
+	 *            Defaults to blocks
+	 * @return Instance of this class
+	 */
+	public MysqlGeoIndexSource withBlocksTable(String blocksTable) {
+		_blocksTable = blocksTable;
+		return this;
+	}
+
+	public GeoRangeIndex load() throws Exception {
+		Class.forName("com.mysql.jdbc.Driver");
+
+		String host = _port > 0 ? _ip + ":" + _port : _ip;
+		Connection connection = DriverManager.getConnection("jdbc:mysql://"
+				+ host + "/" + _tablename + "?user=" + _username
+				+ "&password=" + _password);
+
+		try {
+			connection.setReadOnly(true);
+			GeoRangeIndex.Builder builder = new GeoRangeIndex.Builder();
+
+			Statement statement = stream(connection);
+			ResultSet resultSet = null;
+			try {
+				resultSet = statement
+						.executeQuery("select locID, country, city, postalCode, latitude, longitude, dmaCode from location");
+				while (resultSet.next()) {
+					builder.addLocation(resultSet.getString("locID"),
+							resultSet.getString("country"),
+							resultSet.getString("city"),
+							resultSet.getString("postalCode"),
+							resultSet.getString("latitude"),
+							resultSet.getString("longitude"),
+							resultSet.getString("dmaCode"));
+				}
+			} finally {
+				close(resultSet, statement);
+			}
+
+			statement = stream(connection);
+			resultSet = null;
+			try {
+				resultSet = statement
+						.executeQuery("select startIpNum, endIpNum, locId from "
+								+ _blocksTable);
+				while (resultSet.next()) {
+					builder.addBlock(resultSet.getLong(1),
+							resultSet.getLong(2), resultSet.getString(3));
+				}
+			} finally {
+				close(resultSet, statement);
+			}
+
+			return builder.build();
+		} finally {
+			connection.close();
+		}
+	}
+
+	private static void close(ResultSet resultSet, Statement statement)
+			throws SQLException {
+		try {
+			if (resultSet != null)
+				resultSet.close();
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Connector/J only streams rows instead of buffering the whole table with
+	 * a forward only statement and this fetch size
+	 */
+	private static Statement stream(Connection connection) throws Exception {
+		Statement statement = connection.createStatement(
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try {
+			statement.setFetchSize(Integer.MIN_VALUE);
+		} catch (SQLException e) {
+			statement.close();
+			throw e;
+		}
+		return statement;
+	}
+}
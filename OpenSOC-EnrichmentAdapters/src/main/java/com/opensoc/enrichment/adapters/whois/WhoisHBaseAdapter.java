@@ -18,6 +18,11 @@
 package com.opensoc.enrichment.adapters.whois;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
@@ -29,13 +34,22 @@ import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
 import org.json.simple.JSONObject;
 
-public class WhoisHBaseAdapter extends AbstractWhoisAdapter {
+import com.opensoc.enrichment.interfaces.BatchEnrichmentAdapter;
+import com.opensoc.enrichment.interfaces.ThreadSafeEnrichmentAdapter;
+
+/**
+ * Looks up domains in the whois HBase table. Every lookup takes its own table
+ * instance from the shared HConnection, so the adapter can be called from
+ * several threads at once.
+ */
+public class WhoisHBaseAdapter extends AbstractWhoisAdapter implements
+		BatchEnrichmentAdapter, ThreadSafeEnrichmentAdapter {
 
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 3371873619030870389L;
-	private HTableInterface table;
+	private transient HConnection connection;
 	private String _table_name;
 	private String _quorum;
 	private String _port;
@@ -64,14 +78,10 @@ public class WhoisHBaseAdapter extends AbstractWhoisAdapter {
 
 			LOG.trace("[OpenSOC] CONNECTING TO HBASE WITH: " + conf);
 
-			HConnection connection = HConnectionManager.createConnection(conf);
+			connection = HConnectionManager.createConnection(conf);
 
 			LOG.trace("[OpenSOC] CONNECTED TO HBASE");
 
-			table = connection.getTable(_table_name);
-
-			LOG.trace("--------CONNECTED TO TABLE: " + table);
-
 			JSONObject tester = enrich("cisco.com");
 
 			if (tester.keySet().size() == 0)
@@ -87,33 +97,80 @@ public class WhoisHBaseAdapter extends AbstractWhoisAdapter {
 
 	}
 
-	@SuppressWarnings({ "unchecked", "deprecation" })
+	@SuppressWarnings("unchecked")
 	public JSONObject enrich(String metadata) {
 
 		LOG.trace("[OpenSOC] Pinging HBase For:" + metadata);
 
-
-		JSONObject output = new JSONObject();
-		JSONObject payload = new JSONObject();
-
 		Get get = new Get(metadata.getBytes());
-		Result rs;
 
 		try {
-			rs = table.get(get);
+			HTableInterface table = connection.getTable(_table_name);
+			try {
+				return toWhoisObject(metadata, table.get(get));
+			} finally {
+				table.close();
+			}
 
-			for (KeyValue kv : rs.raw())
-				payload.put(metadata, new String(kv.getValue()));
+		} catch (IOException e) {
+			JSONObject output = new JSONObject();
+			output.put(metadata, "{}");
+			e.printStackTrace();
+			return output;
+		}
 
-			output.put("whois", payload);
+	}
+
+	/**
+	 * Looks up all domains with a single multi-get instead of one get per
+	 * domain
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, JSONObject> enrichBatch(Collection<String> metadata) {
+
+		List<String> keys = new ArrayList<String>(metadata);
+		List<Get> gets = new ArrayList<Get>(keys.size());
+		Map<String, JSONObject> output = new HashMap<String, JSONObject>();
+
+		for (String key : keys)
+			gets.add(new Get(key.getBytes()));
+
+		LOG.trace("[OpenSOC] Pinging HBase For " + keys.size() + " keys");
+
+		try {
+			Result[] rs;
+			HTableInterface table = connection.getTable(_table_name);
+			try {
+				rs = table.get(gets);
+			} finally {
+				table.close();
+			}
+
+			for (int i = 0; i < keys.size(); i++)
+				output.put(keys.get(i), toWhoisObject(keys.get(i), rs[i]));
 
 		} catch (IOException e) {
-			output.put(metadata, "{}");
+			for (String key : keys) {
+				JSONObject failed = new JSONObject();
+				failed.put(key, "{}");
+				output.put(key, failed);
+			}
 			e.printStackTrace();
 		}
 
 		return output;
+	}
 
+	@SuppressWarnings({ "unchecked", "deprecation" })
+	private static JSONObject toWhoisObject(String metadata, Result rs) {
+		JSONObject output = new JSONObject();
+		JSONObject payload = new JSONObject();
+
+		for (KeyValue kv : rs.raw())
+			payload.put(metadata, new String(kv.getValue()));
+
+		output.put("whois", payload);
+		return output;
 	}
 
 }
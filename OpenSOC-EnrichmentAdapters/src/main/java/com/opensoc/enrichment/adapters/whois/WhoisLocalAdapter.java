@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.adapters.whois;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HConnectionManager;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.json.simple.JSONObject;
+
+import com.opensoc.enrichment.interfaces.BatchEnrichmentAdapter;
+import com.opensoc.enrichment.interfaces.ThreadSafeEnrichmentAdapter;
+
+/**
+ * Whois adapter that serves lookups from a local copy of the whois table
+ * instead of one HBase get per domain. When the first adapter of a worker is
+ * initialized the table is scanned into a WhoisStore file in a local
+ * directory; all adapters of the worker then read that file. Rows written to
+ * the table afterwards are picked up by a periodic scan of the recently
+ * changed rows, kept in memory on top of the file. Once those changes reach a
+ * tenth of the snapshot, or on the next worker start, the table is copied
+ * again, which also drops deleted rows.
+ * <p>
+ * Lookups therefore keep working while HBase is unavailable, with the data of
+ * the last successful scan. If HBase cannot be reached when the worker starts,
+ * the file left by an earlier run is used. Output is the same as WhoisHBaseAdapter's.
+ * The local copy is shared by all adapters of the worker, so enrich is safe to
+ * call from several threads.
+ */
+public class WhoisLocalAdapter extends AbstractWhoisAdapter implements
+		BatchEnrichmentAdapter, ThreadSafeEnrichmentAdapter {
+
+	private static final long serialVersionUID = -2938462043758125312L;
+
+	private static final Map<String, LocalTable> TABLES = new HashMap<String, LocalTable>();
+
+	private String _table_name;
+	private String _quorum;
+	private String _port;
+	private String _directory;
+	private long _deltaMinutes = 15;
+
+	private transient LocalTable local;
+
+	/**
+	 * @param directory
+	 *            Local directory on the worker that holds the copy of the
+	 *            table
+	 */
+	public WhoisLocalAdapter(String table_name, String quorum, String port,
+			String directory) {
+		_table_name = table_name;
+		_quorum = quorum;
+		_port = port;
+		_directory = directory;
+	}
+
+	/**
+	 * @param deltaMinutes
+	 *            Minutes between scans for rows changed in HBase, 0 to only
+	 *            copy the table once
+	 * @return Instance of this class
+	 */
+	public WhoisLocalAdapter withDeltaRefresh(long deltaMinutes) {
+		_deltaMinutes = deltaMinutes;
+		return this;
+	}
+
+	public boolean initializeAdapter() {
+		File file = new File(_directory, _table_name + ".whois");
+
+		try {
+			String key = file.getCanonicalPath();
+
+			synchronized (TABLES) {
+				local = TABLES.get(key);
+
+				if (local == null) {
+					LocalTable table = new LocalTable(file, _table_name,
+							_quorum, _port);
+					try {
+						table.snapshot();
+					} catch (IOException e) {
+						if (!file.exists())
+							throw e;
+						LOG.warn("[OpenSOC] Unable to copy " + _table_name
+								+ ", using the previous copy " + file + ": " + e);
+						table.open();
+					}
+					table.schedule(_deltaMinutes);
+					TABLES.put(key, table);
+					local = table;
+				}
+			}
+
+			if (local.size() == 0)
+				throw new IOException(
+						"Either HBASE is misconfigured or whois table is missing");
+
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	public JSONObject enrich(String metadata) {
+
+		LOG.trace("[OpenSOC] Looking up locally:" + metadata);
+
+		try {
+			JSONObject output = new JSONObject();
+			JSONObject payload = new JSONObject();
+			String value = local.get(metadata);
+
+			if (value != null)
+				payload.put(metadata, value);
+
+			output.put("whois", payload);
+			return output;
+
+		} catch (IOException e) {
+			JSONObject output = new JSONObject();
+			output.put(metadata, "{}");
+			e.printStackTrace();
+			return output;
+		}
+	}
+
+	/**
+	 * Local lookups are cheap, so a batch is simply looked up one domain at a
+	 * time
+	 */
+	public Map<String, JSONObject> enrichBatch(Collection<String> metadata) {
+		Map<String, JSONObject> output = new HashMap<String, JSONObject>();
+
+		for (String key : metadata)
+			output.put(key, enrich(key));
+
+		return output;
+	}
+
+	/**
+	 * The worker's copy of one whois table: the store file, the rows changed
+	 * since it was written and the thread that keeps both current.
+	 */
+	private static final class LocalTable {
+
+		// Rows written just before a scan starts may not be visible to it yet
+		private static final long SKEW_MILLIS = 60000;
+
+		private final File file;
+		private final String tableName;
+		private final Configuration conf;
+
+		private volatile WhoisStore store;
+		private final Map<String, String> changes = new ConcurrentHashMap<String, String>();
+		private long since;
+
+		private HConnection connection;
+		private ScheduledExecutorService refresher;
+
+		LocalTable(File file, String tableName, String quorum, String port) {
+			this.file = file;
+			this.tableName = tableName;
+
+			conf = HBaseConfiguration.create();
+			conf.set("hbase.zookeeper.quorum", quorum);
+			conf.set("hbase.zookeeper.property.clientPort", port);
+		}
+
+		int size() {
+			return store.size() + changes.size();
+		}
+
+		String get(String domain) throws IOException {
+			String value = changes.get(domain);
+			if (value != null)
+				return value;
+
+			byte[] bytes = store.get(domain.getBytes("UTF-8"));
+			return bytes == null ? null : new String(bytes, "UTF-8");
+		}
+
+		/**
+		 * Copies the whole table into a new store file and switches to it
+		 */
+		void snapshot() throws IOException {
+			long start = System.currentTimeMillis();
+			file.getAbsoluteFile().getParentFile().mkdirs();
+
+			WhoisStore.Writer writer = WhoisStore.create(file);
+			HTableInterface table = connection().getTable(tableName);
+
+			try {
+				ResultScanner scanner = table.getScanner(newScan());
+				try {
+					for (Result rs : scanner) {
+						byte[] value = value(rs);
+						if (value != null)
+							writer.add(rs.getRow(), value);
+					}
+				} finally {
+					scanner.close();
+				}
+				writer.close();
+			} catch (IOException e) {
+				writer.abort();
+				throw e;
+			} catch (RuntimeException e) {
+				writer.abort();
+				throw e;
+			} finally {
+				table.close();
+			}
+
+			final WhoisStore previous = store;
+			store = WhoisStore.open(file);
+			changes.clear();
+			since = start - SKEW_MILLIS;
+
+			if (previous != null) {
+				// Give lookups still reading the old file time to finish
+				refresher.schedule(new Runnable() {
+					public void run() {
+						try {
+							previous.close();
+						} catch (IOException e) {
+						}
+					}
+				}, 1, TimeUnit.MINUTES);
+			}
+
+			LOG.info("[OpenSOC] Copied " + store.size() + " rows of "
+					+ tableName + " to " + file + " in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+
+		/**
+		 * Uses the store file left by an earlier snapshot
+		 */
+		void open() throws IOException {
+			store = WhoisStore.open(file);
+			since = file.lastModified() - SKEW_MILLIS;
+		}
+
+		/**
+		 * Reads the rows written since the last scan
+		 */
+		void applyChanges() throws IOException {
+			long start = System.currentTimeMillis();
+			Scan scan = newScan();
+			scan.setTimeRange(since, Long.MAX_VALUE);
+
+			HTableInterface table = connection().getTable(tableName);
+			int count = 0;
+
+			try {
+				ResultScanner scanner = table.getScanner(scan);
+				try {
+					for (Result rs : scanner) {
+						byte[] value = value(rs);
+						if (value != null) {
+							changes.put(new String(rs.getRow(), "UTF-8"),
+									new String(value, "UTF-8"));
+							count++;
+						}
+					}
+				} finally {
+					scanner.close();
+				}
+			} finally {
+				table.close();
+			}
+
+			since = start - SKEW_MILLIS;
+			LOG.debug("[OpenSOC] Applied " + count + " changed rows of "
+					+ tableName);
+		}
+
+		void schedule(long deltaMinutes) {
+			refresher = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable,
+									"whois-local-refresh");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+
+			if (deltaMinutes <= 0)
+				return;
+
+			refresher.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						if (changes.size() > store.size() / 10)
+							snapshot();
+						else
+							applyChanges();
+					} catch (Exception e) {
+						LOG.error("[OpenSOC] Unable to refresh the local copy of "
+								+ tableName + ", keeping the current one: " + e);
+					}
+				}
+			}, deltaMinutes, deltaMinutes, TimeUnit.MINUTES);
+		}
+
+		private HConnection connection() throws IOException {
+			if (connection == null)
+				connection = HConnectionManager.createConnection(conf);
+			return connection;
+		}
+
+		private static Scan newScan() {
+			Scan scan = new Scan();
+			scan.setCaching(1000);
+			scan.setCacheBlocks(false);
+			return scan;
+		}
+
+		/**
+		 * Same choice of cell as WhoisHBaseAdapter: the last one of the row
+		 */
+		@SuppressWarnings("deprecation")
+		private static byte[] value(Result rs) {
+			byte[] value = null;
+			for (KeyValue kv : rs.raw())
+				value = kv.getValue();
+			return value;
+		}
+	}
+}
@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.adapters.whois;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * Local, read-only copy of a key-value table, kept in a sorted file of
+ * deflate-compressed blocks. Only the first key and position of every block
+ * is held in memory; a lookup binary searches that index, then reads and
+ * inflates a single block. The last few inflated blocks are kept, and a
+ * lookup binary searches the inflated bytes in place, so only the value it
+ * returns is copied out of them.
+ * <p>
+ * The file is big-endian and laid out as:
+ * 
+ * <pre>
+ * block[]   deflated runs of (int keyLength, key, int valueLength, value)
+ * index[]   (int keyLength, first key, long offset, int length) per block
+ * long      index offset
+ * int       block count, entry count, magic
+ * </pre>
+ * 
+ * Keys are sorted as unsigned bytes, the order HBase returns rows in. A store
+ * is safe to use from several threads.
+ */
+public final class WhoisStore {
+
+	static final int MAGIC = 0x4F535757; // "OSWW"
+	static final int TRAILER_SIZE = 20;
+	static final int BLOCK_SIZE = 64 * 1024;
+	static final int CACHED_BLOCKS = 16;
+
+	private static final Comparator<byte[]> ORDER = UnsignedBytes
+			.lexicographicalComparator();
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final byte[][] firstKeys;
+	private final long[] offsets;
+	private final int[] lengths;
+	private final int size;
+
+	private final Cache<Integer, Block> blocks = CacheBuilder.newBuilder()
+			.concurrencyLevel(1).maximumSize(CACHED_BLOCKS).build();
+
+	private WhoisStore(RandomAccessFile file, byte[][] firstKeys,
+			long[] offsets, int[] lengths, int size) {
+		this.file = file;
+		this.channel = file.getChannel();
+		this.firstKeys = firstKeys;
+		this.offsets = offsets;
+		this.lengths = lengths;
+		this.size = size;
+	}
+
+	/**
+	 * Starts a new store file. Entries are written to a temporary file next
+	 * to the target that is moved into place atomically when the writer is
+	 * closed.
+	 */
+	public static Writer create(File file) throws IOException {
+		return new Writer(file);
+	}
+
+	public static WhoisStore open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try {
+			if (raf.length() < TRAILER_SIZE)
+				throw new IOException("Not a whois store: " + file);
+
+			raf.seek(raf.length() - TRAILER_SIZE);
+			long indexOffset = raf.readLong();
+			int blocks = raf.readInt();
+			int entries = raf.readInt();
+			if (raf.readInt() != MAGIC)
+				throw new IOException("Not a whois store: " + file);
+
+			byte[] index = new byte[(int) (raf.length() - TRAILER_SIZE - indexOffset)];
+			raf.seek(indexOffset);
+			raf.readFully(index);
+
+			DataInputStream in = new DataInputStream(
+					new ByteArrayInputStream(index));
+			byte[][] firstKeys = new byte[blocks][];
+			long[] offsets = new long[blocks];
+			int[] lengths = new int[blocks];
+
+			for (int i = 0; i < blocks; i++) {
+				firstKeys[i] = new byte[in.readInt()];
+				in.readFully(firstKeys[i]);
+				offsets[i] = in.readLong();
+				lengths[i] = in.readInt();
+			}
+
+			return new WhoisStore(raf, firstKeys, offsets, lengths, entries);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The value stored for the key, or null
+	 */
+	public byte[] get(byte[] key) throws IOException {
+		int block = Arrays.binarySearch(firstKeys, key, ORDER);
+		if (block < 0)
+			block = -block - 2;
+		if (block < 0)
+			return null;
+
+		Block cached = blocks.getIfPresent(block);
+		if (cached == null) {
+			// Threads missing the same block at once may both inflate it
+			cached = read(block);
+			blocks.put(block, cached);
+		}
+		return cached.get(key);
+	}
+
+	/**
+	 * @return Number of entries in the store
+	 */
+	public int size() {
+		return size;
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private Block read(int block) throws IOException {
+		ByteBuffer compressed = ByteBuffer.allocate(lengths[block]);
+		long position = offsets[block];
+
+		while (compressed.hasRemaining()) {
+			int read = channel.read(compressed, position
+					+ compressed.position());
+			if (read < 0)
+				throw new EOFException("Truncated whois store block " + block);
+		}
+
+		Inflater inflater = new Inflater();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(BLOCK_SIZE + 1024);
+		byte[] buffer = new byte[8192];
+
+		try {
+			inflater.setInput(compressed.array());
+			while (!inflater.finished()) {
+				int count = inflater.inflate(buffer);
+				if (count == 0 && inflater.needsInput())
+					throw new EOFException("Truncated whois store block "
+							+ block);
+				out.write(buffer, 0, count);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt whois store block " + block, e);
+		} finally {
+			inflater.end();
+		}
+
+		byte[] data = out.toByteArray();
+		int[] entries = new int[256];
+		int count = 0;
+
+		// Positions of the entries, checked once so lookups can trust them
+		for (int entry = 0; entry < data.length; count++) {
+			if (count == entries.length)
+				entries = Arrays.copyOf(entries, count * 2);
+			entries[count] = entry;
+
+			entry = skip(data, entry, block);
+			entry = skip(data, entry, block);
+		}
+
+		return new Block(data, Arrays.copyOf(entries, count));
+	}
+
+	/**
+	 * @return Position after the length-prefixed field at position
+	 */
+	private static int skip(byte[] data, int position, int block)
+			throws IOException {
+		if (data.length - position < 4)
+			throw new IOException("Corrupt whois store block " + block);
+
+		int length = readInt(data, position);
+		if (length < 0 || length > data.length - position - 4)
+			throw new IOException("Corrupt whois store block " + block);
+		return position + 4 + length;
+	}
+
+	private static int readInt(byte[] data, int position) {
+		return (data[position] & 0xff) << 24
+				| (data[position + 1] & 0xff) << 16
+				| (data[position + 2] & 0xff) << 8 | (data[position + 3] & 0xff);
+	}
+
+	/**
+	 * One inflated block, as written, with the position of every entry
+	 */
+	private static final class Block {
+
+		final byte[] data;
+		final int[] entries;
+
+		Block(byte[] data, int[] entries) {
+			this.data = data;
+			this.entries = entries;
+		}
+
+		byte[] get(byte[] key) {
+			int low = 0;
+			int high = entries.length - 1;
+
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int position = entries[mid];
+				int keyLength = readInt(data, position);
+				int cmp = compare(position + 4, keyLength, key);
+
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					position += 4 + keyLength;
+					int valueLength = readInt(data, position);
+					return Arrays.copyOfRange(data, position + 4, position + 4
+							+ valueLength);
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Compares the key at position with another key, as unsigned bytes
+		 */
+		private int compare(int position, int length, byte[] key) {
+			int common = Math.min(length, key.length);
+
+			for (int i = 0; i < common; i++) {
+				int cmp = UnsignedBytes.compare(data[position + i], key[i]);
+				if (cmp != 0)
+					return cmp;
+			}
+			return length - key.length;
+		}
+	}
+
+	/**
+	 * Appends entries in ascending key order
+	 */
+	public static final class Writer {
+
+		private final File file;
+		private final File temp;
+		private final DataOutputStream out;
+		private final ByteArrayOutputStream block = new ByteArrayOutputStream(
+				BLOCK_SIZE + 1024);
+		private final DataOutputStream blockOut = new DataOutputStream(block);
+		private final Deflater deflater = new Deflater();
+		private final byte[] buffer = new byte[8192];
+
+		private final List<byte[]> firstKeys = new ArrayList<byte[]>();
+		private final List<Long> offsets = new ArrayList<Long>();
+		private final List<Integer> lengths = new ArrayList<Integer>();
+
+		private byte[] blockFirstKey;
+		private byte[] lastKey;
+		private long position;
+		private int entries;
+
+		private Writer(File file) throws IOException {
+			this.file = file;
+			this.temp = File.createTempFile(file.getName(), ".tmp", file
+					.getAbsoluteFile().getParentFile());
+			this.out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temp), 65536));
+		}
+
+		/**
+		 * @throws IllegalArgumentException
+		 *             If the key does not sort after the previous one
+		 */
+		public void add(byte[] key, byte[] value) throws IOException {
+			if (lastKey != null && ORDER.compare(lastKey, key) >= 0)
+				throw new IllegalArgumentException(
+						"Keys must be added in ascending order");
+			lastKey = key;
+
+			if (blockFirstKey == null)
+				blockFirstKey = key;
+
+			blockOut.writeInt(key.length);
+			blockOut.write(key);
+			blockOut.writeInt(value.length);
+			blockOut.write(value);
+			entries++;
+
+			if (block.size() >= BLOCK_SIZE)
+				flushBlock();
+		}
+
+		/**
+		 * Finishes the file and moves it into place
+		 */
+		public void close() throws IOException {
+			boolean written = false;
+
+			try {
+				flushBlock();
+
+				long indexOffset = position;
+				for (int i = 0; i < firstKeys.size(); i++) {
+					out.writeInt(firstKeys.get(i).length);
+					out.write(firstKeys.get(i));
+					out.writeLong(offsets.get(i));
+					out.writeInt(lengths.get(i));
+				}
+
+				out.writeLong(indexOffset);
+				out.writeInt(firstKeys.size());
+				out.writeInt(entries);
+				out.writeInt(MAGIC);
+				written = true;
+			} finally {
+				deflater.end();
+				out.close();
+				if (!written)
+					temp.delete();
+			}
+
+			try {
+				// Readers opening the file see either the old or the new one
+				Files.move(temp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				if (temp.exists())
+					temp.delete();
+			}
+		}
+
+		/**
+		 * Discards the temporary file
+		 */
+		public void abort() {
+			try {
+				out.close();
+			} catch (IOException e) {
+			}
+			deflater.end();
+			temp.delete();
+		}
+
+		private void flushBlock() throws IOException {
+			if (blockFirstKey == null)
+				return;
+
+			deflater.reset();
+			deflater.setInput(block.toByteArray());
+			deflater.finish();
+
+			int length = 0;
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				out.write(buffer, 0, count);
+				length += count;
+			}
+
+			firstKeys.add(blockFirstKey);
+			offsets.add(position);
+			lengths.add(length);
+			position += length;
+
+			block.reset();
+			blockFirstKey = null;
+		}
+	}
+}
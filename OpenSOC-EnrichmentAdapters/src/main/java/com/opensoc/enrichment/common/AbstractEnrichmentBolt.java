@@ -17,7 +17,13 @@
  */
 package com.opensoc.enrichment.common;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -31,9 +37,10 @@ import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.base.BaseRichBolt;
 
 import com.codahale.metrics.Counter;
-import com.google.common.cache.CacheBuilder;
+import com.codahale.metrics.Gauge;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.opensoc.enrichment.interfaces.BatchEnrichmentAdapter;
 import com.opensoc.enrichment.interfaces.EnrichmentAdapter;
 import com.opensoc.metrics.MetricReporter;
 
@@ -53,6 +60,10 @@ public abstract class AbstractEnrichmentBolt extends BaseRichBolt {
 	protected String _enrichment_tag;
 	protected Long _MAX_CACHE_SIZE;
 	protected Long _MAX_TIME_RETAIN;
+	protected String _cacheName;
+	protected long _maxCacheWeight;
+	protected long _cacheRefreshMinutes;
+	protected String _hotKeyFile;
 
 	// JSON Keys to be enriched
 	protected List<String> _jsonKeys;
@@ -76,6 +87,26 @@ public abstract class AbstractEnrichmentBolt extends BaseRichBolt {
 		emitCounter = _reporter.registerCounter(emitString);
 		failCounter = _reporter.registerCounter(failString);
 
+		String cacheString = _adapter.getClass().getSimpleName() + ".cache";
+
+		_reporter.registerGauge(cacheString + ".hitRatio", new Gauge<Double>() {
+			public Double getValue() {
+				return cache.stats().hitRate();
+			}
+		});
+		_reporter.registerGauge(cacheString + ".loadLatency",
+				new Gauge<Double>() {
+					public Double getValue() {
+						// Average load time in ms
+						return cache.stats().averageLoadPenalty() / 1000000;
+					}
+				});
+		_reporter.registerGauge(cacheString + ".evictions", new Gauge<Long>() {
+			public Long getValue() {
+				return cache.stats().evictionCount();
+			}
+		});
+
 	}
 
 	public final void prepare(Map conf, TopologyContext topologyContext,
@@ -96,15 +127,41 @@ public abstract class AbstractEnrichmentBolt extends BaseRichBolt {
 			throw new IllegalStateException(
 					"JSON Keys to be enriched, must be specified");
 
-		loader = new CacheLoader<String, JSONObject>() {
-			public JSONObject load(String key) throws Exception {
-				return _adapter.enrich(key);
-			}
-		};
+		if (_adapter instanceof BatchEnrichmentAdapter) {
+			final BatchEnrichmentAdapter batchAdapter = (BatchEnrichmentAdapter) _adapter;
+
+			// Lets cache.getAll resolve all of its misses in one call
+			loader = new CacheLoader<String, JSONObject>() {
+				public JSONObject load(String key) throws Exception {
+					return _adapter.enrich(key);
+				}
+
+				public Map<String, JSONObject> loadAll(
+						Iterable<? extends String> keys) throws Exception {
+					List<String> misses = new ArrayList<String>();
+					for (String key : keys)
+						misses.add(key);
+
+					Map<String, JSONObject> loaded = new HashMap<String, JSONObject>(
+							batchAdapter.enrichBatch(misses));
+					loaded.values().removeAll(Collections.singleton(null));
+					return loaded;
+				}
+			};
+		} else {
+			loader = new CacheLoader<String, JSONObject>() {
+				public JSONObject load(String key) throws Exception {
+					return _adapter.enrich(key);
+				}
+			};
+		}
+
+		if (_cacheName == null)
+			_cacheName = _adapter.getClass().getName() + ":" + _enrichment_tag;
 
-		cache = CacheBuilder.newBuilder().maximumSize(_MAX_CACHE_SIZE)
-				.expireAfterWrite(_MAX_TIME_RETAIN, TimeUnit.MINUTES)
-				.build(loader);
+		cache = new SharedEnrichmentCache(EnrichmentCacheRegistry.getCache(
+				_cacheName, _MAX_CACHE_SIZE, _maxCacheWeight, _MAX_TIME_RETAIN),
+				loader, TimeUnit.MINUTES.toMillis(_cacheRefreshMinutes));
 
 		boolean success = _adapter.initializeAdapter();
 
@@ -113,6 +170,9 @@ public abstract class AbstractEnrichmentBolt extends BaseRichBolt {
 			throw new IllegalStateException("Could not initialize adapter...");
 		}
 
+		if (_hotKeyFile != null)
+			prewarm(_hotKeyFile);
+
 		try {
 			doPrepare(conf, topologyContext, collector);
 		} catch (IOException e) {
@@ -122,6 +182,37 @@ public abstract class AbstractEnrichmentBolt extends BaseRichBolt {
 
 	}
 
+	/**
+	 * Loads the keys listed in a file, one per line, into the cache. Blank
+	 * lines and lines starting with # are skipped. Failures are logged and do
+	 * not stop the bolt.
+	 */
+	void prewarm(String hotKeyFile) {
+		List<String> keys = new ArrayList<String>();
+
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(hotKeyFile), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (!line.isEmpty() && !line.startsWith("#"))
+						keys.add(line);
+				}
+			} finally {
+				reader.close();
+			}
+
+			cache.getAll(keys);
+			LOG.info("[OpenSOC] Pre-warmed cache " + _cacheName + " with "
+					+ keys.size() + " keys from " + hotKeyFile);
+		} catch (Exception e) {
+			LOG.warn("[OpenSOC] Unable to pre-warm cache " + _cacheName
+					+ " from " + hotKeyFile + ": " + e);
+		}
+	}
+
 	abstract void doPrepare(Map conf, TopologyContext topologyContext,
 			OutputCollector collector) throws IOException;
 
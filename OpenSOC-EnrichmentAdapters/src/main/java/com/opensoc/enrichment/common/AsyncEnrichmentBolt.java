@@ -0,0 +1,395 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.common;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.Config;
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Tuple;
+
+import com.opensoc.enrichment.interfaces.ThreadSafeEnrichmentAdapter;
+
+/**
+ * Variant of GenericEnrichmentBolt that never blocks its executor thread on
+ * an adapter lookup. Values found in the cache are used right away; cache
+ * misses are handed to a fixed pool of lookup threads, and the tuple is held
+ * until all of its values are resolved.
+ * <p>
+ * Lookup threads only call the adapter and put their results on a completion
+ * queue. The queue is drained on the executor thread in every execute call
+ * and on tick tuples, so tuples are still emitted and acked from the thread
+ * that owns the OutputCollector. Concurrent misses for the same value share
+ * one lookup.
+ * <p>
+ * At most maxInFlight tuples wait for lookups at a time; execute blocks on
+ * the completion queue when the limit is reached. A tuple whose lookups take
+ * longer than the lookup timeout is emitted with an empty enrichment for the
+ * values still missing instead of being failed. Values of timed out or
+ * failed lookups are not cached. Batch settings inherited from
+ * GenericEnrichmentBolt are ignored.
+ * <p>
+ * The adapter is called from several lookup threads at once, so it must
+ * implement ThreadSafeEnrichmentAdapter; prepare fails for any other
+ * adapter.
+ **/
+
+@SuppressWarnings({ "rawtypes", "serial" })
+public class AsyncEnrichmentBolt extends GenericEnrichmentBolt {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(AsyncEnrichmentBolt.class);
+
+	private int maxInFlight = 1000;
+	private long lookupTimeout = 2000;
+	private int lookupPoolSize = 8;
+
+	private transient ExecutorService lookupPool;
+	private transient LinkedBlockingQueue<Lookup> completed;
+	private transient Map<String, Lookup> lookups;
+	private transient ArrayDeque<PendingTuple> inFlight;
+
+	/**
+	 * @param maxInFlight
+	 *            Maximum number of tuples waiting for lookups before execute
+	 *            blocks
+	 * @return Instance of this class
+	 */
+
+	public AsyncEnrichmentBolt withMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	/**
+	 * @param lookupTimeout
+	 *            Time in milliseconds after which a tuple is emitted with an
+	 *            empty enrichment for the values that are still being looked
+	 *            up
+	 * @return Instance of this class
+	 */
+
+	public AsyncEnrichmentBolt withLookupTimeout(long lookupTimeout) {
+		this.lookupTimeout = lookupTimeout;
+		return this;
+	}
+
+	/**
+	 * @param lookupPoolSize
+	 *            Number of threads calling the adapter
+	 * @return Instance of this class
+	 */
+
+	public AsyncEnrichmentBolt withLookupPoolSize(int lookupPoolSize) {
+		this.lookupPoolSize = lookupPoolSize;
+		return this;
+	}
+
+	@Override
+	void doPrepare(Map conf, TopologyContext topologyContext,
+			OutputCollector collector) throws IOException {
+		if (!(_adapter instanceof ThreadSafeEnrichmentAdapter))
+			throw new IllegalStateException(_adapter.getClass().getName()
+					+ " is not a ThreadSafeEnrichmentAdapter and cannot be called"
+					+ " from several lookup threads");
+
+		super.doPrepare(conf, topologyContext, collector);
+
+		completed = new LinkedBlockingQueue<Lookup>();
+		lookups = new HashMap<String, Lookup>();
+		inFlight = new ArrayDeque<PendingTuple>();
+
+		lookupPool = Executors.newFixedThreadPool(Math.max(1, lookupPoolSize),
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"enrichment-lookup");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		LOG.info("[OpenSOC] Enriching asynchronously with " + lookupPoolSize
+				+ " lookup threads, " + maxInFlight + " tuples in flight and a "
+				+ lookupTimeout + " ms timeout");
+	}
+
+	@Override
+	public void execute(Tuple tuple) {
+
+		drain();
+		expire();
+
+		if (isTickTuple(tuple))
+			return;
+
+		while (inFlight.size() >= maxInFlight) {
+			try {
+				Lookup lookup = completed.poll(nextDeadline()
+						- System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+				if (lookup != null)
+					complete(lookup);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			drain();
+			expire();
+		}
+
+		start(tuple);
+	}
+
+	/**
+	 * Fills in cached values and starts lookups for the rest
+	 */
+	private void start(Tuple tuple) {
+
+		JSONObject in_json = null;
+
+		try {
+			String key = tuple.getStringByField("key");
+			in_json = (JSONObject) tuple.getValueByField("message");
+
+			JSONObject message = extractMessage(key, in_json);
+			PendingTuple pending = new PendingTuple(tuple, key, in_json);
+
+			for (String jsonkey : _jsonKeys) {
+				String jsonvalue = (String) message.get(jsonkey);
+				if (null == jsonvalue)
+					continue;
+
+				JSONObject enrichment = cache.getIfPresent(jsonvalue);
+				if (enrichment != null) {
+					addEnrichment(in_json, jsonkey, enrichment);
+					continue;
+				}
+
+				Lookup lookup = lookups.get(jsonvalue);
+				if (lookup == null) {
+					lookup = new Lookup(jsonvalue);
+					lookups.put(jsonvalue, lookup);
+					lookup.future = lookupPool.submit(lookup);
+				}
+				if (!pending.missing.containsValue(jsonvalue))
+					lookup.waiting.add(pending);
+				pending.missing.put(jsonkey, jsonvalue);
+			}
+
+			if (pending.missing.isEmpty()) {
+				emitEnriched(tuple, key, in_json);
+			} else {
+				pending.deadline = System.currentTimeMillis() + lookupTimeout;
+				inFlight.add(pending);
+			}
+		} catch (Exception e) {
+			failEnrichment(tuple, in_json, e);
+		}
+	}
+
+	private void drain() {
+		Lookup lookup;
+		while ((lookup = completed.poll()) != null)
+			complete(lookup);
+	}
+
+	private void complete(Lookup lookup) {
+
+		// Every tuple waiting for an abandoned lookup has been emitted, and
+		// its result may be a partial one from an interrupted call
+		if (lookup.abandoned)
+			return;
+
+		if (lookups.get(lookup.value) == lookup)
+			lookups.remove(lookup.value);
+
+		if (lookup.error == null && lookup.enrichment != null)
+			cache.put(lookup.value, lookup.enrichment);
+
+		for (PendingTuple pending : lookup.waiting) {
+			if (pending.done)
+				continue;
+
+			try {
+				if (lookup.enrichment == null)
+					throw new Exception("[OpenSOC] Could not enrich string: "
+							+ lookup.value, lookup.error);
+
+				for (String jsonkey : pending.keysFor(lookup.value)) {
+					addEnrichment(pending.in_json, jsonkey, lookup.enrichment);
+					pending.missing.remove(jsonkey);
+				}
+
+				if (pending.missing.isEmpty()) {
+					pending.done = true;
+					emitEnriched(pending.tuple, pending.key, pending.in_json);
+				}
+			} catch (Exception e) {
+				pending.done = true;
+				failEnrichment(pending.tuple, pending.in_json, e);
+			}
+		}
+
+		// Tuples are done in roughly arrival order, so this stays cheap
+		while (!inFlight.isEmpty() && inFlight.peek().done)
+			inFlight.poll();
+	}
+
+	/**
+	 * Emits tuples whose deadline has passed with empty enrichments for the
+	 * values still missing
+	 */
+	private void expire() {
+		long now = System.currentTimeMillis();
+
+		while (!inFlight.isEmpty()
+				&& (inFlight.peek().done || inFlight.peek().deadline <= now)) {
+			PendingTuple pending = inFlight.poll();
+			if (pending.done)
+				continue;
+
+			pending.done = true;
+
+			try {
+				for (Map.Entry<String, String> missing : pending.missing
+						.entrySet()) {
+					LOG.warn("[OpenSOC] Lookup timed out for: "
+							+ missing.getValue());
+					addEnrichment(pending.in_json, missing.getKey(),
+							new JSONObject());
+					abandon(missing.getValue());
+				}
+				emitEnriched(pending.tuple, pending.key, pending.in_json);
+			} catch (Exception e) {
+				failEnrichment(pending.tuple, pending.in_json, e);
+			}
+		}
+	}
+
+	/**
+	 * Cancels a lookup once no tuple is waiting for it anymore
+	 */
+	private void abandon(String value) {
+		Lookup lookup = lookups.get(value);
+		if (lookup == null)
+			return;
+
+		for (PendingTuple pending : lookup.waiting) {
+			if (!pending.done)
+				return;
+		}
+
+		lookups.remove(value);
+		lookup.abandoned = true;
+		lookup.future.cancel(true);
+	}
+
+	private long nextDeadline() {
+		return inFlight.isEmpty() ? System.currentTimeMillis() : inFlight
+				.peek().deadline;
+	}
+
+	/**
+	 * Requests tick tuples every second so completed lookups and timeouts are
+	 * handled even when no new tuples arrive.
+	 */
+	@Override
+	public Map<String, Object> getComponentConfiguration() {
+		Map<String, Object> conf = new HashMap<String, Object>();
+		conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, 1);
+		return conf;
+	}
+
+	@Override
+	public void cleanup() {
+		if (lookupPool != null)
+			lookupPool.shutdownNow();
+	}
+
+	/**
+	 * One adapter call, shared by all tuples waiting for the same value. Only
+	 * the lookup thread writes the result, and the executor thread reads it
+	 * after taking the lookup off the completion queue. Only the executor
+	 * thread reads and writes abandoned.
+	 */
+	private class Lookup implements Runnable {
+
+		final String value;
+		final List<PendingTuple> waiting = new ArrayList<PendingTuple>(2);
+		Future<?> future;
+		boolean abandoned;
+
+		JSONObject enrichment;
+		Exception error;
+
+		Lookup(String value) {
+			this.value = value;
+		}
+
+		public void run() {
+			try {
+				enrichment = _adapter.enrich(value);
+			} catch (Exception e) {
+				error = e;
+			}
+
+			if (!Thread.currentThread().isInterrupted())
+				completed.add(this);
+		}
+	}
+
+	private static class PendingTuple {
+
+		final Tuple tuple;
+		final String key;
+		final JSONObject in_json;
+		final Map<String, String> missing = new HashMap<String, String>();
+		long deadline;
+		boolean done;
+
+		PendingTuple(Tuple tuple, String key, JSONObject in_json) {
+			this.tuple = tuple;
+			this.key = key;
+			this.in_json = in_json;
+		}
+
+		List<String> keysFor(String value) {
+			List<String> keys = new ArrayList<String>(1);
+			for (Map.Entry<String, String> missing : this.missing.entrySet()) {
+				if (missing.getValue().equals(value))
+					keys.add(missing.getKey());
+			}
+			return keys;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.enrichment.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.Configuration;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseRichBolt;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+
+import com.codahale.metrics.Counter;
+import com.opensoc.helpers.topology.ErrorGenerator;
+import com.opensoc.json.serialization.JSONEncoderHelper;
+import com.opensoc.metrics.MetricReporter;
+
+/**
+ * Runs several enrichments, e.g. geo, host, whois and CIF, one after the
+ * other in a single executor. Chained enrichment bolts each receive, and so
+ * deserialize and serialize, every message; fused into this bolt a message
+ * crosses executors once for all of them.
+ * <p>
+ * Every enrichment is configured as a GenericEnrichmentBolt and added in order
+ * with {@link #withEnrichment(GenericEnrichmentBolt)}. Each keeps its own
+ * adapter, keys, tag and cache; their batching and asynchronous lookup
+ * settings are not used, the stages look up their values as the tuple
+ * arrives. A tuple is emitted and acked once all stages have enriched it, and
+ * failed if any of them fails.
+ */
+@SuppressWarnings({ "rawtypes", "serial" })
+public class CompositeEnrichmentBolt extends BaseRichBolt {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(CompositeEnrichmentBolt.class);
+
+	private final List<GenericEnrichmentBolt> stages = new ArrayList<GenericEnrichmentBolt>();
+	private JSONObject metricConfiguration;
+
+	private transient OutputCollector collector;
+	private transient MetricReporter reporter;
+	private transient Counter ackCounter, emitCounter, failCounter;
+
+	/**
+	 * @param enrichment
+	 *            Configured enrichment bolt to run after the ones added so far
+	 * @return Instance of this class
+	 */
+
+	public CompositeEnrichmentBolt withEnrichment(
+			GenericEnrichmentBolt enrichment) {
+		stages.add(enrichment);
+		return this;
+	}
+
+	/**
+	 * @param config
+	 *            A class for generating custom metrics into graphite
+	 * @return Instance of this class
+	 */
+
+	public CompositeEnrichmentBolt withMetricConfiguration(Configuration config) {
+		this.metricConfiguration = JSONEncoderHelper.getJSON(config
+				.subset("com.opensoc.metrics"));
+		return this;
+	}
+
+	/**
+	 * @return Number of enrichments added
+	 */
+	public int size() {
+		return stages.size();
+	}
+
+	public void prepare(Map conf, TopologyContext topologyContext,
+			OutputCollector collector) {
+		this.collector = collector;
+
+		if (stages.isEmpty())
+			throw new IllegalStateException(
+					"At least one enrichment must be specified");
+
+		for (GenericEnrichmentBolt stage : stages)
+			stage.prepare(conf, topologyContext, collector);
+
+		try {
+			reporter = new MetricReporter();
+			reporter.initialize(metricConfiguration,
+					CompositeEnrichmentBolt.class);
+			ackCounter = reporter.registerCounter("ack");
+			emitCounter = reporter.registerCounter("emit");
+			failCounter = reporter.registerCounter("fail");
+		} catch (Exception e) {
+			reporter = null;
+			LOG.info("[OpenSOC] Unable to initialize metrics reporting");
+		}
+
+		LOG.info("[OpenSOC] Composite enrichment bolt initialized with "
+				+ stages.size() + " enrichments");
+	}
+
+	public void execute(Tuple tuple) {
+
+		JSONObject in_json = null;
+
+		try {
+			String key = tuple.getStringByField("key");
+			in_json = (JSONObject) tuple.getValueByField("message");
+
+			JSONObject message = stages.get(0).extractMessage(key, in_json);
+
+			for (GenericEnrichmentBolt stage : stages)
+				stage.enrichMessage(in_json, message);
+
+			if (LOG.isDebugEnabled())
+				LOG.debug("[OpenSOC] Generated combined enrichment: " + in_json);
+
+			collector.emit("message", new Values(key, in_json));
+			collector.ack(tuple);
+
+			if (reporter != null) {
+				emitCounter.inc();
+				ackCounter.inc();
+			}
+		} catch (Exception e) {
+			LOG.error("[OpenSOC] Unable to enrich message: " + in_json);
+			collector.fail(tuple);
+
+			if (reporter != null)
+				failCounter.inc();
+
+			JSONObject error = ErrorGenerator.generateErrorMessage(
+					"Enrichment problem: " + in_json, e.toString());
+			collector.emit("error", new Values(error));
+		}
+	}
+
+	public void cleanup() {
+		for (GenericEnrichmentBolt stage : stages)
+			stage.cleanup();
+	}
+
+	public void declareOutputFields(OutputFieldsDeclarer declearer) {
+		declearer.declareStream("message", new Fields("key", "message"));
+		declearer.declareStream("error", new Fields("message"));
+	}
+}
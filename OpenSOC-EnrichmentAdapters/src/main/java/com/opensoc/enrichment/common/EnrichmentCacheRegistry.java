@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Enrichment caches shared by all bolt tasks in a worker. Storm runs every
+ * task of a topology on a worker in the same JVM, so tasks that enrich from
+ * the same source can share one cache instead of looking up and storing the
+ * same values once per task.
+ * <p>
+ * Caches are identified by name, normally the adapter type and the table it
+ * reads. The first task to ask for a name decides the cache size and
+ * retention; later tasks get the existing cache. A cache is bounded either by
+ * its number of entries or, if a maximum weight is given, by the estimated
+ * heap bytes of its keys and enrichments.
+ */
+public final class EnrichmentCacheRegistry {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(EnrichmentCacheRegistry.class);
+
+	private static final Map<String, Cache<String, CachedEnrichment>> CACHES = new HashMap<String, Cache<String, CachedEnrichment>>();
+
+	private EnrichmentCacheRegistry() {
+	}
+
+	/**
+	 * @param name
+	 *            Name of the cache, e.g. "CIFHbaseAdapter:cif_table"
+	 * @param maxSize
+	 *            Maximum number of entries, used if maxWeightBytes is 0
+	 * @param maxWeightBytes
+	 *            Maximum estimated heap bytes of all entries, 0 to bound the
+	 *            cache by maxSize
+	 * @param retainMinutes
+	 *            Minutes after which an entry expires
+	 * @return The worker's cache with that name
+	 */
+	static synchronized Cache<String, CachedEnrichment> getCache(String name,
+			long maxSize, long maxWeightBytes, long retainMinutes) {
+		Cache<String, CachedEnrichment> cache = CACHES.get(name);
+
+		if (cache == null) {
+			CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+					.expireAfterWrite(retainMinutes, TimeUnit.MINUTES)
+					.recordStats();
+
+			if (maxWeightBytes > 0)
+				cache = builder.maximumWeight(maxWeightBytes)
+						.weigher(new JsonWeigher()).build();
+			else
+				cache = builder.maximumSize(maxSize).build();
+
+			CACHES.put(name, cache);
+
+			LOG.info("[OpenSOC] Created shared enrichment cache " + name
+					+ " with "
+					+ (maxWeightBytes > 0 ? maxWeightBytes + " bytes" : maxSize
+							+ " entries") + " and " + retainMinutes
+					+ " minutes retention");
+		}
+		return cache;
+	}
+
+	/**
+	 * Drops all caches, so the next tasks start with empty ones
+	 */
+	public static synchronized void clear() {
+		for (Cache<String, CachedEnrichment> cache : CACHES.values())
+			cache.invalidateAll();
+		CACHES.clear();
+	}
+}
@@ -18,14 +18,21 @@
 package com.opensoc.enrichment.common;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.configuration.Configuration;
 import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import backtype.storm.Config;
+import backtype.storm.Constants;
 import backtype.storm.task.OutputCollector;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.OutputFieldsDeclarer;
@@ -55,6 +62,15 @@ import com.opensoc.metrics.MetricReporter;
  * <p>
  * <p>
  * Enrichments are optional
+ * <p>
+ * All tasks in a worker that use the same cache name share one cache, see
+ * EnrichmentCacheRegistry.
+ * <p>
+ * When a batch size greater than 1 is configured the bolt collects tuples
+ * until the batch is full or the batch time limit has passed. The values of
+ * the whole batch that are not cached yet are then looked up together, in a
+ * single call if the adapter is a BatchEnrichmentAdapter, before the tuples
+ * are enriched and emitted in the order they arrived.
  **/
 
 @SuppressWarnings({ "rawtypes", "serial" })
@@ -64,6 +80,12 @@ public class GenericEnrichmentBolt extends AbstractEnrichmentBolt {
 			.getLogger(GenericEnrichmentBolt.class);
 	private JSONObject metricConfiguration;
 
+	private int batchSize = 1;
+	private long batchTimeLimit = 1000;
+
+	private transient List<Tuple> pending;
+	private transient long batchStart;
+
 	/**
 	 * @param adapter
 	 *            Adapter for doing the enrichment
@@ -120,6 +142,56 @@ public class GenericEnrichmentBolt extends AbstractEnrichmentBolt {
 		return this;
 	}
 
+	/**
+	 * @param cacheName
+	 *            Name of the worker-wide cache this bolt shares with other
+	 *            tasks, e.g. the adapter type and table. Defaults to the
+	 *            adapter class and enrichment tag
+	 * @return Instance of this class
+	 */
+
+	public GenericEnrichmentBolt withCacheName(String cacheName) {
+		_cacheName = cacheName;
+		return this;
+	}
+
+	/**
+	 * @param maxCacheWeight
+	 *            Maximum estimated heap bytes of the cached enrichments. When
+	 *            set, it bounds the cache instead of MAX_CACHE_SIZE
+	 * @return Instance of this class
+	 */
+
+	public GenericEnrichmentBolt withMaxCacheWeight(long maxCacheWeight) {
+		_maxCacheWeight = maxCacheWeight;
+		return this;
+	}
+
+	/**
+	 * @param refreshMinutes
+	 *            Age in minutes after which a cached enrichment is reloaded in
+	 *            the background while the old one is still served. Should be
+	 *            less than MAX_TIME_RETAIN
+	 * @return Instance of this class
+	 */
+
+	public GenericEnrichmentBolt withCacheRefresh(long refreshMinutes) {
+		_cacheRefreshMinutes = refreshMinutes;
+		return this;
+	}
+
+	/**
+	 * @param hotKeyFile
+	 *            Local file with one key per line that is loaded into the cache
+	 *            when the bolt starts
+	 * @return Instance of this class
+	 */
+
+	public GenericEnrichmentBolt withHotKeyFile(String hotKeyFile) {
+		_hotKeyFile = hotKeyFile;
+		return this;
+	}
+
 	/**
 	 * @param jsonKeys
 	 *            Keys in the telemetry message that are to be enriched by this
@@ -144,107 +216,272 @@ public class GenericEnrichmentBolt extends AbstractEnrichmentBolt {
 		return this;
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * @param batchSize
+	 *            Number of tuples whose cache misses are looked up together. A
+	 *            value of 1 or less enriches every tuple as it arrives
+	 * @return Instance of this class
+	 */
+
+	public GenericEnrichmentBolt withBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * @param batchTimeLimit
+	 *            Maximum time in milliseconds a tuple can wait for its batch
+	 *            to fill up before the batch is enriched anyway
+	 * @return Instance of this class
+	 */
+
+	public GenericEnrichmentBolt withBatchTimeLimit(long batchTimeLimit) {
+		this.batchTimeLimit = batchTimeLimit;
+		return this;
+	}
+
 	public void execute(Tuple tuple) {
 
-		LOG.trace("[OpenSOC] Starting enrichment");
+		if (!isBatching()) {
+			enrich(tuple);
+			return;
+		}
+
+		if (isTickTuple(tuple)) {
+			if (!pending.isEmpty()
+					&& System.currentTimeMillis() - batchStart >= batchTimeLimit)
+				flush();
+			return;
+		}
+
+		if (pending.isEmpty())
+			batchStart = System.currentTimeMillis();
+
+		pending.add(tuple);
+
+		if (pending.size() >= batchSize
+				|| System.currentTimeMillis() - batchStart >= batchTimeLimit)
+			flush();
+	}
+
+	/**
+	 * Loads every value of the pending tuples that is not cached with one
+	 * cache.getAll, then enriches the tuples from its result, so each value
+	 * is looked up in the cache once per batch.
+	 */
+	private void flush() {
+
+		Set<String> values = new HashSet<String>();
+		for (Tuple tuple : pending)
+			collectValues(tuple, values);
+
+		Map<String, JSONObject> resolved = Collections.emptyMap();
+		try {
+			resolved = cache.getAll(values);
+		} catch (Exception e) {
+			LOG.warn("[OpenSOC] Batch lookup failed, enriching one value at a time: "
+					+ e);
+		}
+
+		for (Tuple tuple : pending)
+			enrich(tuple, resolved);
+
+		pending.clear();
+	}
+
+	private void collectValues(Tuple tuple, Set<String> values) {
+		Object in_json = tuple.getValueByField("message");
+		if (!(in_json instanceof JSONObject))
+			return;
+
+		Object message = ((JSONObject) in_json).get("message");
+		if (!(message instanceof JSONObject))
+			return;
+
+		for (String jsonkey : _jsonKeys) {
+			Object jsonvalue = ((JSONObject) message).get(jsonkey);
+			if (jsonvalue instanceof String)
+				values.add((String) jsonvalue);
+		}
+	}
+
+	private void enrich(Tuple tuple) {
+		enrich(tuple, Collections.<String, JSONObject> emptyMap());
+	}
+
+	private void enrich(Tuple tuple, Map<String, JSONObject> resolved) {
 
 		JSONObject in_json = null;
 		String key = null;
-		
+
 		try {
 
 			key = tuple.getStringByField("key");
 			in_json = (JSONObject) tuple.getValueByField("message");
 
-			if (in_json == null || in_json.isEmpty())
-				throw new Exception("Could not parse binary stream to JSON");
-			
-			if(key == null)
-				throw new Exception("Key is not valid");
+			enrichMessage(in_json, extractMessage(key, in_json), resolved);
+			emitEnriched(tuple, key, in_json);
+		} catch (Exception e) {
+			failEnrichment(tuple, in_json, e);
+		}
+	}
 
-			LOG.trace("[OpenSOC] Received tuple: " + in_json);
+	/**
+	 * Adds the enrichments of all configured keys of the message to in_json.
+	 * Also used by CompositeEnrichmentBolt to run this bolt as one of its
+	 * stages.
+	 */
+	void enrichMessage(JSONObject in_json, JSONObject message)
+			throws Exception {
+		enrichMessage(in_json, message,
+				Collections.<String, JSONObject> emptyMap());
+	}
 
-			JSONObject message = (JSONObject) in_json.get("message");
+	/**
+	 * @param resolved
+	 *            Enrichments already looked up for this batch, used before
+	 *            the cache
+	 */
+	@SuppressWarnings("unchecked")
+	private void enrichMessage(JSONObject in_json, JSONObject message,
+			Map<String, JSONObject> resolved) throws Exception {
 
-			if (message == null || message.isEmpty())
-				throw new Exception("Could not extract message from JSON: "
-						+ in_json);
+		// enrichment.<tag>, looked up once the first key is enriched
+		JSONObject enrichments = null;
 
-			LOG.trace("[OpenSOC] Extracted message: " + message);
+		for (String jsonkey : _jsonKeys) {
+			String jsonvalue = (String) message.get(jsonkey);
+
+			if (null == jsonvalue) {
+				if (LOG.isTraceEnabled())
+					LOG.trace("[OpenSOC] Key " + jsonkey
+							+ " not present in message " + message);
+				continue;
+			}
 
-			for (String jsonkey : _jsonKeys) {
-				LOG.trace("[OpenSOC] Processing:" + jsonkey + " within:"
-						+ message);
+			JSONObject enrichment = resolved.get(jsonvalue);
+			if (enrichment == null)
+				enrichment = cache.getUnchecked(jsonvalue);
 
-				String jsonvalue = (String) message.get(jsonkey);
-				LOG.trace("[OpenSOC] Processing: " + jsonkey + " -> "
+			if (enrichment == null)
+				throw new Exception("[OpenSOC] Could not enrich string: "
 						+ jsonvalue);
 
-				if (null == jsonvalue) {
-					LOG.trace("[OpenSOC] Key " + jsonkey
-							+ "not present in message " + message);
-					continue;
-				}
-
-				JSONObject enrichment = cache.getUnchecked(jsonvalue);
+			if (LOG.isTraceEnabled())
 				LOG.trace("[OpenSOC] Enriched: " + jsonkey + " -> "
 						+ enrichment);
 
-				if (enrichment == null)
-					throw new Exception("[OpenSOC] Could not enrich string: "
-							+ jsonvalue);
+			if (enrichments == null)
+				enrichments = tagEnrichments(in_json);
+			enrichments.put(jsonkey, enrichment);
+		}
+	}
 
-				if (!in_json.containsKey("enrichment")) {
-					in_json.put("enrichment", new JSONObject());
-					LOG.trace("[OpenSOC] Starting a string of enrichments");
-				}
+	/**
+	 * Checks the tuple contents and returns the message to enrich
+	 */
+	JSONObject extractMessage(String key, JSONObject in_json)
+			throws Exception {
 
-				JSONObject enr1 = (JSONObject) in_json.get("enrichment");
+		if (in_json == null || in_json.isEmpty())
+			throw new Exception("Could not parse binary stream to JSON");
+		
+		if(key == null)
+			throw new Exception("Key is not valid");
 
-				if (enr1 == null)
-					throw new Exception("Internal enrichment is empty");
+		JSONObject message = (JSONObject) in_json.get("message");
 
-				if (!enr1.containsKey(_enrichment_tag)) {
-					enr1.put(_enrichment_tag, new JSONObject());
-					LOG.trace("[OpenSOC] Starting a new enrichment");
-				}
+		if (message == null || message.isEmpty())
+			throw new Exception("Could not extract message from JSON: "
+					+ in_json);
 
-				LOG.trace("[OpenSOC] ENR1 is: " + enr1);
+		if (LOG.isTraceEnabled())
+			LOG.trace("[OpenSOC] Extracted message: " + message);
+		return message;
+	}
 
-				JSONObject enr2 = (JSONObject) enr1.get(_enrichment_tag);
-				enr2.put(jsonkey, enrichment);
+	/**
+	 * Returns enrichment.&lt;tag&gt; of the tuple, adding the missing levels.
+	 * The enrichments of the individual keys are put straight into it.
+	 */
+	@SuppressWarnings("unchecked")
+	JSONObject tagEnrichments(JSONObject in_json) {
 
-				LOG.trace("[OpenSOC] ENR2 is: " + enr2);
+		JSONObject enrichment = (JSONObject) in_json.get("enrichment");
 
-				enr1.put(_enrichment_tag, enr2);
-				in_json.put("enrichment", enr1);
-			}
+		if (enrichment == null) {
+			enrichment = new JSONObject();
+			in_json.put("enrichment", enrichment);
+		}
+
+		JSONObject tagged = (JSONObject) enrichment.get(_enrichment_tag);
+
+		if (tagged == null) {
+			tagged = new JSONObject();
+			enrichment.put(_enrichment_tag, tagged);
+		}
+		return tagged;
+	}
 
+	/**
+	 * Adds the enrichment of one key under enrichment.&lt;tag&gt;.&lt;key&gt;
+	 */
+	@SuppressWarnings("unchecked")
+	void addEnrichment(JSONObject in_json, String jsonkey,
+			JSONObject enrichment) {
+		tagEnrichments(in_json).put(jsonkey, enrichment);
+	}
+
+	void emitEnriched(Tuple tuple, String key, JSONObject in_json) {
+
+		if (LOG.isDebugEnabled())
 			LOG.debug("[OpenSOC] Generated combined enrichment: " + in_json);
 
-			_collector.emit("message", new Values(key, in_json));
-			_collector.ack(tuple);
+		_collector.emit("message", new Values(key, in_json));
+		_collector.ack(tuple);
 
-			if (_reporter != null) {
-				emitCounter.inc();
-				ackCounter.inc();
-			}
-		} catch (Exception e) {
-			
-			LOG.error("[OpenSOC] Unable to enrich message: " + in_json);
-			_collector.fail(tuple);
+		if (_reporter != null) {
+			emitCounter.inc();
+			ackCounter.inc();
+		}
+	}
 
-			if (_reporter != null) {
-				failCounter.inc();
-			}
-			
-			JSONObject error = ErrorGenerator.generateErrorMessage("Enrichment problem: " + in_json, e.toString());
-			_collector.emit("error", new Values(error));
+	void failEnrichment(Tuple tuple, JSONObject in_json, Exception e) {
+
+		LOG.error("[OpenSOC] Unable to enrich message: " + in_json);
+		_collector.fail(tuple);
+
+		if (_reporter != null) {
+			failCounter.inc();
 		}
 		
-		
+		JSONObject error = ErrorGenerator.generateErrorMessage("Enrichment problem: " + in_json, e.toString());
+		_collector.emit("error", new Values(error));
+	}
+
+	private boolean isBatching() {
+		return batchSize > 1;
+	}
+
+	static boolean isTickTuple(Tuple tuple) {
+		return Constants.SYSTEM_COMPONENT_ID.equals(tuple.getSourceComponent())
+				&& Constants.SYSTEM_TICK_STREAM_ID.equals(tuple
+						.getSourceStreamId());
+	}
 
+	/**
+	 * Requests tick tuples in batching mode so a partially filled batch is
+	 * enriched even when no new tuples arrive.
+	 */
+	@Override
+	public Map<String, Object> getComponentConfiguration() {
+		if (!isBatching())
+			return null;
+
+		Map<String, Object> conf = new HashMap<String, Object>();
+		conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS,
+				Math.max(1, (int) ((batchTimeLimit + 999) / 1000)));
+		return conf;
 	}
 
 	public void declareOutputFields(OutputFieldsDeclarer declearer) {
@@ -265,9 +502,17 @@ public class GenericEnrichmentBolt extends AbstractEnrichmentBolt {
 					GenericEnrichmentBolt.class);
 			this.registerCounters();
 		} catch (Exception e) {
+			// Counters are only used while a reporter is set
+			_reporter = null;
 			LOG.info("[OpenSOC] Unable to initialize metrics reporting");
 		}
 
+		if (isBatching()) {
+			pending = new ArrayList<Tuple>(batchSize);
+			LOG.info("[OpenSOC] Enriching in batches of " + batchSize
+					+ " tuples or " + batchTimeLimit + " ms");
+		}
+
 		LOG.info("[OpenSOC] Enrichment bolt initialized...");
 	}
 
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.common;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.cache.Weigher;
+
+/**
+ * Weighs cache entries by the approximate number of heap bytes of the key and
+ * the enrichment, so a cache can be bounded by memory instead of by entry
+ * count. The estimate assumes a 64 bit JVM with compressed references.
+ */
+final class JsonWeigher implements Weigher<String, CachedEnrichment> {
+
+	private static final int OBJECT = 16;
+	private static final int STRING = 40;
+	private static final int MAP_ENTRY = 48;
+	private static final int BOXED = 16;
+
+	public int weigh(String key, CachedEnrichment entry) {
+		long weight = OBJECT + estimate(key) + estimate(entry.value);
+		return (int) Math.min(Integer.MAX_VALUE, weight);
+	}
+
+	/**
+	 * @return Estimated heap bytes of a json-simple value
+	 */
+	static long estimate(Object value) {
+		if (value == null)
+			return 0;
+
+		if (value instanceof String)
+			return STRING + 2L * ((String) value).length();
+
+		if (value instanceof Map) {
+			long bytes = OBJECT + 64;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+				bytes += MAP_ENTRY + estimate(entry.getKey())
+						+ estimate(entry.getValue());
+			return bytes;
+		}
+
+		if (value instanceof List) {
+			long bytes = OBJECT + 24;
+			for (Object element : (List<?>) value)
+				bytes += 4 + estimate(element);
+			return bytes;
+		}
+
+		return BOXED;
+	}
+}
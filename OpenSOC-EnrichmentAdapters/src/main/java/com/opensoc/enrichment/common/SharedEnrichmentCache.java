@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.common;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.AbstractLoadingCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * One task's LoadingCache view of a cache shared through
+ * EnrichmentCacheRegistry. Misses are loaded with the task's own loader, and
+ * so the task's own adapter instance, since adapters such as the HBase ones
+ * are not thread-safe. Concurrent gets of the same missing key, from any
+ * task, still wait for a single load.
+ * <p>
+ * getAll loads all missing keys with one loadAll call of the task's loader
+ * when it supports bulk loads, and one key at a time otherwise. Bulk loads
+ * are not coordinated between tasks.
+ * <p>
+ * With a refresh interval, an entry older than the interval is still
+ * returned, and a single background thread per task reloads it. A failed
+ * reload keeps the stale entry until it expires. Loads and reloads of one
+ * task are serialized on its loader, so the adapter is never called from two
+ * threads at once.
+ * <p>
+ * stats() reports this view's own hits, misses and load times rather than
+ * those of the shared cache, which counts every task and sees neither bulk
+ * loads nor the lookups behind getAll. A key is counted once per getAll,
+ * and each loader call, bulk or not, is one load. Values loaded elsewhere
+ * and stored with put, as AsyncEnrichmentBolt does, count as misses but not
+ * as loads.
+ */
+final class SharedEnrichmentCache extends
+		AbstractLoadingCache<String, JSONObject> {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(SharedEnrichmentCache.class);
+
+	private final Cache<String, CachedEnrichment> shared;
+	private final CacheLoader<String, JSONObject> loader;
+	private final long refreshMillis;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong loadSuccesses = new AtomicLong();
+	private final AtomicLong loadFailures = new AtomicLong();
+	private final AtomicLong loadNanos = new AtomicLong();
+
+	private ExecutorService refresher;
+
+	/**
+	 * @param refreshMillis
+	 *            Age after which an entry is reloaded in the background, 0 to
+	 *            keep entries until they expire
+	 */
+	SharedEnrichmentCache(Cache<String, CachedEnrichment> shared,
+			CacheLoader<String, JSONObject> loader, long refreshMillis) {
+		this.shared = shared;
+		this.loader = loader;
+		this.refreshMillis = refreshMillis;
+	}
+
+	public JSONObject get(String key) throws ExecutionException {
+		boolean[] loaded = new boolean[1];
+		try {
+			return get(key, loaded);
+		} finally {
+			(loaded[0] ? misses : hits).incrementAndGet();
+		}
+	}
+
+	public JSONObject getIfPresent(Object key) {
+		CachedEnrichment entry = shared.getIfPresent(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return fresh((String) key, entry);
+	}
+
+	@Override
+	public ImmutableMap<String, JSONObject> getAll(Iterable<? extends String> keys)
+			throws ExecutionException {
+		Map<String, JSONObject> result = new LinkedHashMap<String, JSONObject>();
+		Set<String> absent = new LinkedHashSet<String>();
+
+		for (String key : keys) {
+			if (result.containsKey(key) || absent.contains(key))
+				continue;
+
+			CachedEnrichment entry = shared.getIfPresent(key);
+			if (entry != null)
+				result.put(key, fresh(key, entry));
+			else
+				absent.add(key);
+		}
+
+		hits.addAndGet(result.size());
+		misses.addAndGet(absent.size());
+
+		if (absent.isEmpty())
+			return ImmutableMap.copyOf(result);
+
+		Map<String, JSONObject> loaded;
+		try {
+			synchronized (loader) {
+				long start = System.nanoTime();
+				try {
+					loaded = loader.loadAll(absent);
+				} catch (UnsupportedOperationException e) {
+					throw e;
+				} catch (Exception e) {
+					recordLoad(start, false);
+					throw e;
+				}
+				recordLoad(start, true);
+			}
+		} catch (UnsupportedOperationException e) {
+			// Loader has no bulk load
+			for (String key : absent)
+				result.put(key, get(key, new boolean[1]));
+			return ImmutableMap.copyOf(result);
+		} catch (Exception e) {
+			throw new ExecutionException(e);
+		}
+
+		String missing = null;
+
+		for (String key : absent) {
+			JSONObject value = loaded.get(key);
+			if (value == null) {
+				missing = key;
+				continue;
+			}
+			shared.put(key, new CachedEnrichment(value));
+			result.put(key, value);
+		}
+
+		// Like Guava, keep what was loaded but report the gap
+		if (missing != null)
+			throw new InvalidCacheLoadException(
+					"loadAll failed to return a value for " + missing);
+		return ImmutableMap.copyOf(result);
+	}
+
+	@Override
+	public void put(String key, JSONObject value) {
+		shared.put(key, new CachedEnrichment(value));
+	}
+
+	@Override
+	public void invalidate(Object key) {
+		shared.invalidate(key);
+	}
+
+	@Override
+	public void invalidateAll() {
+		shared.invalidateAll();
+	}
+
+	@Override
+	public long size() {
+		return shared.size();
+	}
+
+	/**
+	 * @return This view's hits, misses and loads, with the evictions of the
+	 *         shared cache
+	 */
+	@Override
+	public CacheStats stats() {
+		return new CacheStats(hits.get(), misses.get(), loadSuccesses.get(),
+				loadFailures.get(), loadNanos.get(), shared.stats()
+						.evictionCount());
+	}
+
+	@Override
+	public void cleanUp() {
+		shared.cleanUp();
+	}
+
+	/**
+	 * Returns the cached value or loads it, without counting a hit or miss
+	 * 
+	 * @param loaded
+	 *            Set to true if this call loaded the value
+	 */
+	private JSONObject get(final String key, final boolean[] loaded)
+			throws ExecutionException {
+		CachedEnrichment entry = shared.get(key,
+				new Callable<CachedEnrichment>() {
+					public CachedEnrichment call() throws Exception {
+						loaded[0] = true;
+						return new CachedEnrichment(load(key));
+					}
+				});
+		return fresh(key, entry);
+	}
+
+	private JSONObject load(String key) throws Exception {
+		JSONObject value;
+		synchronized (loader) {
+			long start = System.nanoTime();
+			try {
+				value = loader.load(key);
+			} catch (Exception e) {
+				recordLoad(start, false);
+				throw e;
+			}
+			recordLoad(start, value != null);
+		}
+		if (value == null)
+			throw new InvalidCacheLoadException("Loader returned null for "
+					+ key);
+		return value;
+	}
+
+	private void recordLoad(long start, boolean success) {
+		loadNanos.addAndGet(System.nanoTime() - start);
+		(success ? loadSuccesses : loadFailures).incrementAndGet();
+	}
+
+	/**
+	 * Returns the entry's value and starts a background reload if it is due
+	 */
+	private JSONObject fresh(final String key, final CachedEnrichment entry) {
+		if (refreshMillis <= 0
+				|| System.currentTimeMillis() - entry.written < refreshMillis
+				|| !entry.refreshing.compareAndSet(false, true))
+			return entry.value;
+
+		refresher().execute(new Runnable() {
+			public void run() {
+				try {
+					shared.put(key, new CachedEnrichment(load(key)));
+				} catch (Exception e) {
+					LOG.warn("[OpenSOC] Unable to refresh " + key
+							+ ", keeping the cached enrichment: " + e);
+					entry.refreshing.set(false);
+				}
+			}
+		});
+		return entry.value;
+	}
+
+	private synchronized ExecutorService refresher() {
+		if (refresher == null)
+			refresher = Executors
+					.newSingleThreadExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable,
+									"enrichment-cache-refresh");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		return refresher;
+	}
+}
@@ -18,8 +18,12 @@
  */
 package com.opensoc.enrichment.adapters.cif;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Properties;
 
+import org.json.simple.JSONObject;
+
 import com.opensoc.test.AbstractTestContext;
 import com.opensoc.enrichment.adapters.cif.CIFHbaseAdapter;
 
@@ -161,6 +165,22 @@ public class CIFHbaseAdapterTest extends AbstractTestContext {
             assertNotNull(cifHbaseAdapter.enrich("1.1.1.10"));
        }
     }
+
+    /**
+     * Test method for {@link com.opensoc.enrichment.adapters.cif.CIFHbaseAdapter#enrichBatch(java.util.Collection)}.
+     */
+    public void testEnrichBatch() {
+        if(skipTests(this.getMode())){
+            return;//skip tests
+       }else{
+            cifHbaseAdapter.initializeAdapter();
+            Map<String, JSONObject> batch = cifHbaseAdapter.enrichBatch(Arrays.asList("testinvalid.metadata", "1.1.1.10"));
+
+            assertEquals(2, batch.size());
+            assertEquals(cifHbaseAdapter.enrich("1.1.1.10"), batch.get("1.1.1.10"));
+            assertNotNull(batch.get("testinvalid.metadata"));
+       }
+    }
     
 
     /**
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.adapters.cif;
+
+import junit.framework.TestCase;
+
+/**
+ * <ul>
+ * <li>Title: RowKeyFilterTest</li>
+ * <li>Description: Checks the CIF row key Bloom filter has no false negatives
+ * and stays near its false positive rate</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class RowKeyFilterTest extends TestCase {
+
+	public void testMightContain() {
+		RowKeyFilter.Builder builder = new RowKeyFilter.Builder();
+		for (int i = 0; i < 20000; i++)
+			builder.add(("10.0." + (i >> 8) + "." + (i & 0xff)).getBytes());
+
+		RowKeyFilter filter = builder.build(0.01);
+		assertEquals(20000, filter.size());
+
+		for (int i = 0; i < 20000; i++)
+			assertTrue(filter.mightContain(("10.0." + (i >> 8) + "."
+					+ (i & 0xff)).getBytes()));
+
+		int falsePositives = 0;
+		for (int i = 0; i < 20000; i++) {
+			if (filter.mightContain(("192.168." + (i >> 8) + "." + (i & 0xff))
+					.getBytes()))
+				falsePositives++;
+		}
+		assertTrue("False positives: " + falsePositives, falsePositives < 600);
+	}
+
+	public void testEmpty() {
+		RowKeyFilter filter = new RowKeyFilter.Builder().build(0.01);
+
+		assertEquals(0, filter.size());
+		assertFalse(filter.mightContain("cisco.com".getBytes()));
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.adapters.geo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONObject;
+
+import com.opensoc.helpers.net.Ipv4;
+
+/**
+ * <ul>
+ * <li>Title: GeoIndexAdapterTest</li>
+ * <li>Description: Tests for GeoIndexAdapter and GeoRangeIndex on a GeoLite
+ * CSV sample</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class GeoIndexAdapterTest extends TestCase {
+
+	private GeoIndexAdapter geoIndexAdapter = null;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		geoIndexAdapter = new GeoIndexAdapter(new CsvGeoIndexSource(
+				path("GeoLiteCity-Blocks-Sample.csv"),
+				path("GeoLiteCity-Location-Sample.csv")), 0);
+		assertTrue(geoIndexAdapter.initializeAdapter());
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		geoIndexAdapter = null;
+	}
+
+	/**
+	 * Test method for
+	 * {@link com.opensoc.enrichment.adapters.geo.GeoIndexAdapter#enrich(java.lang.String)}
+	 * .
+	 */
+	public void testEnrich() {
+		JSONObject json = geoIndexAdapter.enrich("72.163.4.161");
+
+		assertEquals("4522", json.get("locID"));
+		assertEquals("US", json.get("country"));
+		assertEquals("San Jose, Alviso", json.get("city"));
+		assertEquals("95134", json.get("postalCode"));
+		assertEquals("37.4176", json.get("latitude"));
+		assertEquals("-121.9543", json.get("longitude"));
+		assertEquals("807", json.get("dmaCode"));
+		assertEquals("-121.9543,37.4176", json.get("location_point"));
+		assertEquals(8, json.size());
+
+		assertEquals("", geoIndexAdapter.enrich("1.0.0.1").get("dmaCode"));
+	}
+
+	public void testRangeBoundaries() {
+		assertEquals("4522", geoIndexAdapter.enrich("72.163.0.0").get("locID"));
+		assertEquals("4522",
+				geoIndexAdapter.enrich("72.163.255.255").get("locID"));
+		assertEquals("223", geoIndexAdapter.enrich("72.164.0.0").get("locID"));
+		assertEquals("223", geoIndexAdapter.enrich("72.164.7.255").get("locID"));
+		assertTrue(geoIndexAdapter.enrich("72.164.8.0").isEmpty());
+		assertTrue(geoIndexAdapter.enrich("72.162.255.255").isEmpty());
+		assertTrue(geoIndexAdapter.enrich("0.255.255.255").isEmpty());
+
+		// Block without a location row
+		assertTrue(geoIndexAdapter.enrich("255.255.255.254").isEmpty());
+	}
+
+	public void testNotRemote() {
+		assertTrue(geoIndexAdapter.enrich("192.168.1.1").isEmpty());
+		assertTrue(geoIndexAdapter.enrich("10.1.1.1").isEmpty());
+		assertTrue(geoIndexAdapter.enrich("172.16.0.1").isEmpty());
+		assertTrue(geoIndexAdapter.enrich("127.0.0.1").isEmpty());
+		assertTrue(geoIndexAdapter.enrich("224.0.0.251").isEmpty());
+		assertTrue(geoIndexAdapter.enrich("0.0.0.0").isEmpty());
+		assertTrue(geoIndexAdapter.enrich("2001:420:1201:2::a").isEmpty());
+		assertTrue(geoIndexAdapter.enrich("www.cisco.com").isEmpty());
+	}
+
+	/**
+	 * Compares binary search lookups with a linear scan over random,
+	 * possibly overlapping ranges that cover the whole unsigned range.
+	 */
+	public void testAgainstLinearScan() {
+		Random random = new Random(11);
+		int blocks = 500;
+		long[] starts = new long[blocks];
+		long[] ends = new long[blocks];
+
+		GeoRangeIndex.Builder builder = new GeoRangeIndex.Builder();
+		for (int i = 0; i < 10; i++)
+			builder.addLocation(String.valueOf(i), "C" + i, "", "", "0", "0",
+					"");
+
+		for (int i = 0; i < blocks; i++) {
+			starts[i] = random.nextLong() & 0xFFFFFFFFL;
+			ends[i] = Math.min(0xFFFFFFFFL,
+					starts[i] + (random.nextLong() & 0xFFFFFFL));
+			builder.addBlock(starts[i], ends[i], String.valueOf(i % 10));
+		}
+		GeoRangeIndex index = builder.build();
+		assertEquals(blocks, index.size());
+
+		for (int n = 0; n < 20000; n++) {
+			long address = random.nextLong() & 0xFFFFFFFFL;
+			if (n % 2 == 0) {
+				int block = random.nextInt(blocks);
+				address = random.nextBoolean() ? starts[block] : ends[block];
+			}
+
+			// Greatest start not above the address, ties go to the last added
+			int best = -1;
+			for (int i = 0; i < blocks; i++) {
+				if (starts[i] <= address
+						&& (best < 0 || starts[i] > starts[best] || starts[i] == starts[best]))
+					best = i;
+			}
+			int expected = best >= 0 && address <= ends[best] ? best % 10 : -1;
+
+			JSONObject found = index.lookup(address);
+			if (expected < 0)
+				assertNull(found);
+			else
+				assertEquals("C" + expected, found.get("country"));
+		}
+	}
+
+	/**
+	 * Writes an index to a file and checks the mapped copy answers every
+	 * lookup the same way, including null and non-ASCII fields.
+	 */
+	public void testIndexFileRoundTrip() throws Exception {
+		Random random = new Random(12);
+		GeoRangeIndex.Builder builder = new GeoRangeIndex.Builder();
+		for (int i = 0; i < 20; i++)
+			builder.addLocation(String.valueOf(i), "C" + (i % 3),
+					i % 2 == 0 ? "Z\u00fcrich" : null, "", "47.3" + i, "8.5",
+					i % 5 == 0 ? null : "0");
+		for (int i = 0; i < 300; i++) {
+			long start = random.nextLong() & 0xFFFFFFFFL;
+			builder.addBlock(start,
+					Math.min(0xFFFFFFFFL, start + (random.nextLong() & 0xFFFFFFL)),
+					String.valueOf(random.nextInt(20)));
+		}
+		GeoRangeIndex index = builder.build();
+
+		File file = File.createTempFile("geo", ".idx");
+		try {
+			GeoIndexFile.write(index, file);
+			MappedGeoIndex mapped = GeoIndexFile.map(file);
+			assertEquals(index.size(), mapped.size());
+
+			for (int n = 0; n < 20000; n++) {
+				long address = random.nextLong() & 0xFFFFFFFFL;
+				assertEquals(index.find(address), mapped.find(address));
+				assertEquals(index.lookup(address), mapped.lookup(address));
+			}
+			assertNull(mapped.lookup(-1));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * A file cut off inside the string data is rejected when it is mapped,
+	 * not when a lookup reaches a missing string
+	 */
+	public void testTruncatedStringsRejected() throws Exception {
+		GeoRangeIndex.Builder builder = new GeoRangeIndex.Builder();
+		builder.addLocation("1", "US", "CA", "San Jose", "95134", "37.4",
+				"-121.9");
+		builder.addBlock(0, 0xFFFFL, "1");
+		GeoRangeIndex index = builder.build();
+
+		File file = File.createTempFile("geo", ".idx");
+		try {
+			GeoIndexFile.write(index, file);
+			// Replacing an existing file
+			GeoIndexFile.write(index, file);
+			assertNotNull(GeoIndexFile.map(file).lookup(42));
+
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.setLength(raf.length() - 3);
+			raf.close();
+
+			try {
+				GeoIndexFile.map(file);
+				fail("Expected an IOException");
+			} catch (IOException e) {
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testMappedSource() throws Exception {
+		GeoRangeIndex index = new CsvGeoIndexSource(
+				path("GeoLiteCity-Blocks-Sample.csv"),
+				path("GeoLiteCity-Location-Sample.csv")).load();
+		File file = File.createTempFile("geo", ".idx");
+
+		try {
+			GeoIndexFile.write(index, file);
+			MappedGeoIndexSource source = new MappedGeoIndexSource(
+					file.getPath());
+			GeoIndexAdapter adapter = new GeoIndexAdapter(source, 0);
+
+			assertTrue(adapter.initializeAdapter());
+			assertEquals(geoIndexAdapter.enrich("72.163.4.161"),
+					adapter.enrich("72.163.4.161"));
+			assertSame(source.load(), new MappedGeoIndexSource(file.getPath())
+					.load());
+
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(new byte[32]);
+			out.close();
+			try {
+				GeoIndexFile.map(file);
+				fail("Expected an IOException");
+			} catch (IOException e) {
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testReloadKeepsIndexOnFailure() {
+		final boolean[] fail = new boolean[1];
+		final GeoIndexSource csv = new CsvGeoIndexSource(
+				path("GeoLiteCity-Blocks-Sample.csv"),
+				path("GeoLiteCity-Location-Sample.csv"));
+
+		GeoIndexAdapter adapter = new GeoIndexAdapter(new GeoIndexSource() {
+			private static final long serialVersionUID = 1L;
+
+			public GeoIndex load() throws Exception {
+				if (fail[0])
+					throw new Exception("source down");
+				return csv.load();
+			}
+		}, 0);
+
+		assertTrue(adapter.initializeAdapter());
+		fail[0] = true;
+		assertFalse(adapter.reload());
+		assertEquals("4522", adapter.enrich("72.163.4.161").get("locID"));
+	}
+
+	public void testIsRemote() {
+		assertTrue(GeoIndexAdapter.isRemote(Ipv4.parse("172.32.0.1")));
+		assertTrue(GeoIndexAdapter.isRemote(Ipv4.parse("172.15.255.255")));
+		assertFalse(GeoIndexAdapter.isRemote(Ipv4.parse("172.31.255.255")));
+		assertTrue(GeoIndexAdapter.isRemote(Ipv4.parse("240.0.0.1")));
+		assertFalse(GeoIndexAdapter.isRemote(Ipv4.parse("239.255.255.255")));
+	}
+
+	private String path(String resource) {
+		URL url = getClass().getClassLoader().getResource(resource);
+		return new File(url.getFile()).getPath();
+	}
+}
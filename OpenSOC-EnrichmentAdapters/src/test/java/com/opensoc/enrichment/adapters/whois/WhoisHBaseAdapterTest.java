@@ -18,6 +18,8 @@
  */
 package com.opensoc.enrichment.adapters.whois;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Properties;
 
 import org.json.simple.JSONObject;
@@ -114,6 +116,21 @@ public class WhoisHBaseAdapterTest extends AbstractTestContext {
        }
     }
 
+    /**
+     * Test method for {@link com.opensoc.enrichment.adapters.whois.WhoisHBaseAdapter#enrichBatch(java.util.Collection)}.
+     */
+    public void testEnrichBatch() {
+        if(skipTests(this.getMode())){
+            return;//skip tests
+       }else{
+            Map<String, JSONObject> batch = whoisHbaseAdapter.enrichBatch(Arrays.asList("cisco.com", "invalid.domain"));
+
+            assertEquals(2, batch.size());
+            assertEquals(whoisHbaseAdapter.enrich("cisco.com"), batch.get("cisco.com"));
+            assertNotNull(batch.get("invalid.domain"));
+       }
+    }
+
 
     /**
      * Returns the whoisHbaseAdapter.
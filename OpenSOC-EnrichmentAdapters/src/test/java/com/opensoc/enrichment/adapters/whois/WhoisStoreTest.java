@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.adapters.whois;
+
+import java.io.File;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * <ul>
+ * <li>Title: WhoisStoreTest</li>
+ * <li>Description: Writes a local whois store spanning several blocks and
+ * reads it back</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class WhoisStoreTest extends TestCase {
+
+	private File file;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("whois", ".store");
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+		super.tearDown();
+	}
+
+	public void testRoundTrip() throws Exception {
+		WhoisStore.Writer writer = WhoisStore.create(file);
+		for (int i = 0; i < 20000; i++)
+			writer.add(domain(i).getBytes("UTF-8"), record(i).getBytes("UTF-8"));
+		writer.close();
+
+		// Compressed well below the raw size
+		assertTrue(file.length() < 20000 * 60);
+
+		WhoisStore store = WhoisStore.open(file);
+		try {
+			assertEquals(20000, store.size());
+
+			for (int i = 0; i < 20000; i += 7)
+				assertEquals(record(i), new String(store.get(domain(i)
+						.getBytes("UTF-8")), "UTF-8"));
+			assertEquals(record(19999), new String(store.get(domain(19999)
+					.getBytes("UTF-8")), "UTF-8"));
+
+			assertNull(store.get("a.com".getBytes("UTF-8")));
+			assertNull(store.get("domain100000.com".getBytes("UTF-8")));
+			assertNull(store.get("zzz.com".getBytes("UTF-8")));
+		} finally {
+			store.close();
+		}
+	}
+
+	public void testLookupsAcrossBlocks() throws Exception {
+		WhoisStore.Writer writer = WhoisStore.create(file);
+		for (int i = 0; i < 20000; i++)
+			writer.add(domain(i).getBytes("UTF-8"), record(i).getBytes("UTF-8"));
+		writer.close();
+
+		WhoisStore store = WhoisStore.open(file);
+		try {
+			// Jumps between more blocks than are kept inflated
+			Random random = new Random(42);
+			for (int n = 0; n < 2000; n++) {
+				int i = random.nextInt(20000);
+				assertEquals(record(i), new String(store.get(domain(i)
+						.getBytes("UTF-8")), "UTF-8"));
+			}
+
+			// Prefixes and extensions of stored keys
+			assertNull(store.get("domain00042.co".getBytes("UTF-8")));
+			assertNull(store.get("domain00042.com.".getBytes("UTF-8")));
+		} finally {
+			store.close();
+		}
+	}
+
+	public void testReplace() throws Exception {
+		WhoisStore.Writer writer = WhoisStore.create(file);
+		writer.add("a.com".getBytes("UTF-8"), "old".getBytes("UTF-8"));
+		writer.close();
+
+		writer = WhoisStore.create(file);
+		writer.add("a.com".getBytes("UTF-8"), "new".getBytes("UTF-8"));
+		writer.close();
+
+		WhoisStore store = WhoisStore.open(file);
+		assertEquals("new", new String(store.get("a.com".getBytes("UTF-8")),
+				"UTF-8"));
+		store.close();
+	}
+
+	public void testEmpty() throws Exception {
+		WhoisStore.create(file).close();
+
+		WhoisStore store = WhoisStore.open(file);
+		assertEquals(0, store.size());
+		assertNull(store.get("cisco.com".getBytes("UTF-8")));
+		store.close();
+	}
+
+	public void testKeysMustBeSorted() throws Exception {
+		WhoisStore.Writer writer = WhoisStore.create(file);
+		writer.add("b.com".getBytes("UTF-8"), new byte[0]);
+
+		try {
+			writer.add("a.com".getBytes("UTF-8"), new byte[0]);
+			fail("Out of order key accepted");
+		} catch (IllegalArgumentException e) {
+		} finally {
+			writer.abort();
+		}
+	}
+
+	private static String domain(int i) {
+		return String.format("domain%05d.com", i);
+	}
+
+	private static String record(int i) {
+		return "{\"domainName\":\"" + domain(i)
+				+ "\",\"registrar\":\"Example Registrar, Inc.\",\"id\":" + i
+				+ "}";
+	}
+}
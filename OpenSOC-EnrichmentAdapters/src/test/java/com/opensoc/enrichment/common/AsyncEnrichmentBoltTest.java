@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.common;
+
+import static com.opensoc.enrichment.common.RecordingCollector.enrichment;
+import static com.opensoc.enrichment.common.RecordingCollector.tick;
+import static com.opensoc.enrichment.common.RecordingCollector.tuple;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONObject;
+
+import backtype.storm.task.OutputCollector;
+
+import com.opensoc.enrichment.interfaces.ThreadSafeEnrichmentAdapter;
+
+/**
+ * <ul>
+ * <li>Title: AsyncEnrichmentBoltTest</li>
+ * <li>Description: Tests for the lookup handoff, in-flight limit, timeouts
+ * and shared lookups of AsyncEnrichmentBolt</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class AsyncEnrichmentBoltTest extends TestCase {
+
+	private BlockingAdapter adapter;
+	private RecordingCollector collector;
+	private AsyncEnrichmentBolt bolt;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		EnrichmentCacheRegistry.clear();
+		adapter = new BlockingAdapter();
+		collector = new RecordingCollector();
+	}
+
+	protected void tearDown() throws Exception {
+		adapter.release();
+		if (bolt != null)
+			bolt.cleanup();
+		super.tearDown();
+	}
+
+	public void testEmittedAfterLookupCompletes() throws Exception {
+		prepare(1000, 60000);
+
+		bolt.execute(tuple("a", "b"));
+		assertEquals(0, collector.ackCount());
+
+		adapter.release();
+		tickUntilAcked(1);
+
+		assertEquals(1, collector.messages.size());
+		JSONObject in_json = collector.messages.get(0);
+		assertEquals("a", enrichment(in_json, "test", "ip_src_addr").get("value"));
+		assertEquals("b", enrichment(in_json, "test", "ip_dst_addr").get("value"));
+		assertNotNull(bolt.cache.getIfPresent("a"));
+	}
+
+	public void testSameValueSharesOneLookup() throws Exception {
+		prepare(1000, 60000);
+
+		bolt.execute(tuple("a", "b"));
+		bolt.execute(tuple("c", "a"));
+		bolt.execute(tuple("a", "a"));
+
+		adapter.release();
+		tickUntilAcked(3);
+
+		assertEquals(1, adapter.calls("a"));
+		assertEquals(1, adapter.calls("b"));
+		assertEquals(1, adapter.calls("c"));
+		assertEquals("a", enrichment(collector.messages.get(2), "test",
+				"ip_dst_addr").get("value"));
+	}
+
+	public void testExecuteBlocksAtMaxInFlight() throws Exception {
+		prepare(1, 60000);
+
+		bolt.execute(tuple("a", "b"));
+
+		Thread second = new Thread() {
+			public void run() {
+				bolt.execute(tuple("c", "d"));
+			}
+		};
+		second.start();
+		second.join(200);
+		assertTrue(second.isAlive());
+		assertEquals(0, collector.ackCount());
+
+		adapter.release();
+		second.join(5000);
+		assertFalse(second.isAlive());
+		assertEquals(1, collector.ackCount());
+
+		tickUntilAcked(2);
+	}
+
+	public void testTimedOutLookupIsAckedWithEmptyEnrichment()
+			throws Exception {
+		prepare(1000, 50);
+
+		bolt.execute(tuple("a", "b"));
+		Thread.sleep(100);
+		bolt.execute(tick());
+
+		assertEquals(1, collector.ackCount());
+		assertTrue(collector.failed.isEmpty());
+		assertTrue(collector.errors.isEmpty());
+		assertTrue(enrichment(collector.messages.get(0), "test", "ip_src_addr")
+				.isEmpty());
+	}
+
+	public void testAbandonedResultIsNotCached() throws Exception {
+		prepare(1000, 50);
+
+		bolt.execute(tuple("a", "a"));
+		Thread.sleep(100);
+		bolt.execute(tick());
+		assertEquals(1, collector.ackCount());
+
+		// The adapter ignores the interrupt and still returns a value. With
+		// one lookup thread, the next lookup only runs after that value has
+		// been handed back, and it is completed after it.
+		adapter.release();
+		bolt.execute(tuple("b", "b"));
+		tickUntilAcked(2);
+
+		assertEquals(1, adapter.calls("a"));
+		assertNull(bolt.cache.getIfPresent("a"));
+		assertNotNull(bolt.cache.getIfPresent("b"));
+	}
+
+	private void prepare(int maxInFlight, long lookupTimeout) {
+		bolt = (AsyncEnrichmentBolt) new AsyncEnrichmentBolt()
+				.withMaxInFlight(maxInFlight).withLookupTimeout(lookupTimeout)
+				.withLookupPoolSize(1).withEnrichmentTag("test")
+				.withOutputFieldName("test").withAdapter(adapter)
+				.withMaxCacheSize(100).withMaxTimeRetain(10)
+				.withKeys(Arrays.asList("ip_src_addr", "ip_dst_addr"));
+		bolt.prepare(new HashMap<Object, Object>(), null, new OutputCollector(
+				collector));
+	}
+
+	private void tickUntilAcked(int acked) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (collector.ackCount() < acked
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			bolt.execute(tick());
+		}
+		assertEquals(acked, collector.ackCount());
+	}
+
+	/**
+	 * Holds every lookup until released, and ignores interrupts so a
+	 * cancelled lookup still returns its value
+	 */
+	@SuppressWarnings("serial")
+	private static class BlockingAdapter implements
+			ThreadSafeEnrichmentAdapter, Serializable {
+
+		private final CountDownLatch released = new CountDownLatch(1);
+		private final ConcurrentHashMap<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+
+		@SuppressWarnings("unchecked")
+		public JSONObject enrich(String metadata) {
+			AtomicInteger count = new AtomicInteger();
+			AtomicInteger previous = calls.putIfAbsent(metadata, count);
+			(previous == null ? count : previous).incrementAndGet();
+
+			while (true) {
+				try {
+					released.await();
+					break;
+				} catch (InterruptedException e) {
+					// Keeps waiting, like a call that cannot be interrupted
+				}
+			}
+
+			JSONObject value = new JSONObject();
+			value.put("value", metadata);
+			return value;
+		}
+
+		void release() {
+			released.countDown();
+		}
+
+		int calls(String metadata) {
+			AtomicInteger count = calls.get(metadata);
+			return count == null ? 0 : count.get();
+		}
+
+		public boolean initializeAdapter() {
+			return true;
+		}
+	}
+}
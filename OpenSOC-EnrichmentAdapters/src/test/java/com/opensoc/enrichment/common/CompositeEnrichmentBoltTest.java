@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.common;
+
+import static com.opensoc.enrichment.common.RecordingCollector.enrichment;
+import static com.opensoc.enrichment.common.RecordingCollector.tuple;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONObject;
+
+import backtype.storm.task.OutputCollector;
+import backtype.storm.tuple.Tuple;
+
+import com.opensoc.enrichment.interfaces.EnrichmentAdapter;
+
+/**
+ * <ul>
+ * <li>Title: CompositeEnrichmentBoltTest</li>
+ * <li>Description: Tests that CompositeEnrichmentBolt runs its stages in
+ * order and emits, acks or fails each tuple once</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class CompositeEnrichmentBoltTest extends TestCase {
+
+	private final List<String> calls = new ArrayList<String>();
+	private RecordingCollector collector;
+	private CompositeEnrichmentBolt bolt;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		EnrichmentCacheRegistry.clear();
+
+		collector = new RecordingCollector();
+		bolt = new CompositeEnrichmentBolt().withEnrichment(
+				stage("geo", "ip_src_addr")).withEnrichment(
+				stage("cif", "ip_dst_addr"));
+		bolt.prepare(new HashMap<Object, Object>(), null, new OutputCollector(
+				collector));
+	}
+
+	public void testStagesRunInOrder() {
+		Tuple tuple = tuple("a", "b");
+		bolt.execute(tuple);
+
+		assertEquals(Arrays.asList("geo:a", "cif:b"), calls);
+
+		assertEquals(1, collector.messages.size());
+		assertEquals(Arrays.asList(tuple), collector.acked);
+		assertTrue(collector.failed.isEmpty());
+
+		JSONObject in_json = collector.messages.get(0);
+		assertEquals("geo:a", enrichment(in_json, "geo", "ip_src_addr").get(
+				"value"));
+		assertEquals("cif:b", enrichment(in_json, "cif", "ip_dst_addr").get(
+				"value"));
+		assertNull(enrichment(in_json, "geo", "ip_dst_addr"));
+		assertNull(enrichment(in_json, "cif", "ip_src_addr"));
+	}
+
+	public void testFailingStageFailsTuple() {
+		Tuple tuple = tuple("a", "fail");
+		bolt.execute(tuple);
+
+		assertTrue(collector.messages.isEmpty());
+		assertTrue(collector.acked.isEmpty());
+		assertEquals(Arrays.asList(tuple), collector.failed);
+		assertEquals(1, collector.errors.size());
+
+		// The next tuple is not affected
+		bolt.execute(tuple("a", "c"));
+		assertEquals(1, collector.messages.size());
+		assertEquals(1, collector.acked.size());
+	}
+
+	private GenericEnrichmentBolt stage(String tag, String key) {
+		return new GenericEnrichmentBolt().withEnrichmentTag(tag)
+				.withOutputFieldName(tag)
+				.withAdapter(new RecordingAdapter(tag, calls))
+				.withCacheName("RecordingAdapter:" + tag).withMaxCacheSize(100)
+				.withMaxTimeRetain(10).withKeys(Arrays.asList(key));
+	}
+
+	/**
+	 * Records its calls, and fails for the value "fail"
+	 */
+	@SuppressWarnings("serial")
+	private static class RecordingAdapter implements EnrichmentAdapter,
+			Serializable {
+
+		private final String tag;
+		private final List<String> calls;
+
+		RecordingAdapter(String tag, List<String> calls) {
+			this.tag = tag;
+			this.calls = calls;
+		}
+
+		@SuppressWarnings("unchecked")
+		public JSONObject enrich(String metadata) {
+			calls.add(tag + ":" + metadata);
+			if (metadata.equals("fail"))
+				throw new IllegalStateException("Lookup failed");
+
+			JSONObject value = new JSONObject();
+			value.put("value", tag + ":" + metadata);
+			return value;
+		}
+
+		public boolean initializeAdapter() {
+			return true;
+		}
+	}
+}
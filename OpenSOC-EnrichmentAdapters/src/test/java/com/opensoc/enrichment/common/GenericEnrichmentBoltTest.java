@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.common;
+
+import static com.opensoc.enrichment.common.RecordingCollector.enrichment;
+import static com.opensoc.enrichment.common.RecordingCollector.tuple;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONObject;
+
+import backtype.storm.task.OutputCollector;
+
+import com.google.common.cache.CacheStats;
+import com.opensoc.enrichment.interfaces.BatchEnrichmentAdapter;
+
+/**
+ * <ul>
+ * <li>Title: GenericEnrichmentBoltTest</li>
+ * <li>Description: Checks that a batched flush looks up each value once and
+ * reports matching cache stats</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class GenericEnrichmentBoltTest extends TestCase {
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		EnrichmentCacheRegistry.clear();
+	}
+
+	public void testStatsAfterBatchedFlush() {
+		CountingAdapter adapter = new CountingAdapter();
+		GenericEnrichmentBolt bolt = new GenericEnrichmentBolt()
+				.withEnrichmentTag("test").withOutputFieldName("test")
+				.withAdapter(adapter).withMaxCacheSize(100)
+				.withMaxTimeRetain(10).withBatchSize(3)
+				.withBatchTimeLimit(60000)
+				.withKeys(Arrays.asList("ip_src_addr", "ip_dst_addr"));
+		RecordingCollector collector = new RecordingCollector();
+		bolt.prepare(new HashMap<Object, Object>(), null, new OutputCollector(
+				collector));
+
+		bolt.execute(tuple("a", "b"));
+		bolt.execute(tuple("a", "c"));
+		assertTrue(collector.messages.isEmpty());
+		bolt.execute(tuple("b", "c"));
+
+		assertEquals(3, collector.acked.size());
+		assertEquals(1, adapter.batches);
+		assertEquals(0, adapter.singles);
+
+		// Three distinct values missed, one multi-get, and no second lookup
+		// of the same values while the tuples are enriched
+		CacheStats stats = bolt.cache.stats();
+		assertEquals(0, stats.hitCount());
+		assertEquals(3, stats.missCount());
+		assertEquals(1, stats.loadSuccessCount());
+
+		bolt.execute(tuple("a", "b"));
+		bolt.execute(tuple("c", "a"));
+		bolt.execute(tuple("b", "c"));
+
+		stats = bolt.cache.stats();
+		assertEquals(3, stats.hitCount());
+		assertEquals(3, stats.missCount());
+		assertEquals(1, stats.loadSuccessCount());
+		assertEquals(0.5, stats.hitRate(), 0.0001);
+
+		assertEquals(6, collector.acked.size());
+		assertTrue(collector.failed.isEmpty());
+		assertEquals("c", enrichment(collector.messages.get(5), "test",
+				"ip_dst_addr").get("value"));
+	}
+
+	@SuppressWarnings("serial")
+	private static class CountingAdapter implements BatchEnrichmentAdapter,
+			Serializable {
+
+		int batches;
+		int singles;
+
+		public JSONObject enrich(String metadata) {
+			singles++;
+			return value(metadata);
+		}
+
+		public Map<String, JSONObject> enrichBatch(Collection<String> metadata) {
+			batches++;
+			Map<String, JSONObject> values = new HashMap<String, JSONObject>();
+			for (String key : metadata)
+				values.put(key, value(key));
+			return values;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static JSONObject value(String key) {
+			JSONObject value = new JSONObject();
+			value.put("value", key);
+			return value;
+		}
+
+		public boolean initializeAdapter() {
+			return true;
+		}
+	}
+}
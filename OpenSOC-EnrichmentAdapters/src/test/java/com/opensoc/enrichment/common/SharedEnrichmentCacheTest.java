@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.enrichment.common;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONObject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * <ul>
+ * <li>Title: SharedEnrichmentCacheTest</li>
+ * <li>Description: Checks that tasks share one cache through
+ * EnrichmentCacheRegistry and that a key is loaded only once, and the refresh and weight
+ * policies</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class SharedEnrichmentCacheTest extends TestCase {
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		EnrichmentCacheRegistry.clear();
+	}
+
+	public void testTasksShareCache() throws Exception {
+		CountingLoader first = new CountingLoader(0);
+		CountingLoader second = new CountingLoader(0);
+
+		LoadingCache<String, JSONObject> firstTask = view("geo", first);
+		LoadingCache<String, JSONObject> secondTask = view("geo", second);
+		LoadingCache<String, JSONObject> otherTable = view("geo2", second);
+
+		assertEquals("1.1.1.1", firstTask.get("1.1.1.1").get("value"));
+		assertEquals("1.1.1.1", secondTask.get("1.1.1.1").get("value"));
+		assertEquals(1, first.loads.get());
+		assertEquals(0, second.loads.get());
+
+		otherTable.get("1.1.1.1");
+		assertEquals(1, second.loads.get());
+
+		// Each view counts its own lookups
+		assertEquals(1, firstTask.stats().missCount());
+		assertEquals(1, firstTask.stats().loadCount());
+		assertEquals(1.0, secondTask.stats().hitRate(), 0.0001);
+		assertEquals(0, secondTask.stats().loadCount());
+	}
+
+	public void testConcurrentLoadsOfSameKey() throws Exception {
+		final CountingLoader loader = new CountingLoader(100);
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[8];
+
+		for (int i = 0; i < threads.length; i++) {
+			final LoadingCache<String, JSONObject> task = view("cif", loader);
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						task.getUnchecked("evil.com");
+					} catch (InterruptedException e) {
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(1, loader.loads.get());
+	}
+
+	public void testGetAll() throws Exception {
+		CountingLoader loader = new CountingLoader(0);
+		LoadingCache<String, JSONObject> task = view("whois", loader);
+		task.get("a");
+
+		Map<String, JSONObject> all = task.getAll(Arrays.asList("a", "b", "c",
+				"b"));
+		assertEquals(3, all.size());
+		assertEquals(1, loader.bulkLoads.get());
+		assertEquals(3, loader.loads.get());
+
+		task.getAll(Arrays.asList("a", "b", "c"));
+		assertEquals(1, loader.bulkLoads.get());
+
+		// get misses and loads a, the first getAll hits a and bulk loads b
+		// and c, the second hits all three
+		assertEquals(4, task.stats().hitCount());
+		assertEquals(3, task.stats().missCount());
+		assertEquals(2, task.stats().loadSuccessCount());
+
+		CacheLoader<String, JSONObject> single = new CacheLoader<String, JSONObject>() {
+			public JSONObject load(String key) {
+				return value(key);
+			}
+		};
+		assertEquals(2, view("hosts", single).getAll(Arrays.asList("x", "y"))
+				.size());
+	}
+
+	/**
+	 * An entry past its refresh age is served as is while it is reloaded in
+	 * the background.
+	 */
+	public void testRefreshServesStaleValue() throws Exception {
+		CountingLoader loader = new CountingLoader(50);
+		LoadingCache<String, JSONObject> task = view("whois", loader, 0, 1);
+
+		JSONObject stale = task.get("a");
+		Thread.sleep(5);
+
+		assertSame(stale, task.get("a"));
+		assertSame(stale, task.get("a"));
+
+		for (int i = 0; i < 100 && task.getIfPresent("a") == stale; i++)
+			Thread.sleep(10);
+
+		assertEquals(2, loader.loads.get());
+		assertNotSame(stale, task.getIfPresent("a"));
+		assertEquals("a", task.getIfPresent("a").get("value"));
+	}
+
+	public void testWeightBound() throws Exception {
+		CountingLoader loader = new CountingLoader(0);
+		long weight = JsonWeigher.estimate("key000")
+				+ JsonWeigher.estimate(value("key000"));
+
+		assertTrue(weight > 0);
+		assertTrue(JsonWeigher.estimate(value("a longer value")) > JsonWeigher
+				.estimate(value("a")));
+
+		// Room for about ten entries, whatever MAX_CACHE_SIZE says
+		LoadingCache<String, JSONObject> task = view("geo", loader,
+				weight * 10, 0);
+		for (int i = 0; i < 100; i++)
+			task.get(String.format("key%03d", i));
+
+		task.cleanUp();
+		assertTrue(task.size() <= 10);
+		assertTrue(task.size() > 0);
+	}
+
+	private static LoadingCache<String, JSONObject> view(String name,
+			CacheLoader<String, JSONObject> loader) {
+		return view(name, loader, 0, 0);
+	}
+
+	private static LoadingCache<String, JSONObject> view(String name,
+			CacheLoader<String, JSONObject> loader, long maxWeightBytes,
+			long refreshMillis) {
+		Cache<String, CachedEnrichment> shared = EnrichmentCacheRegistry
+				.getCache(name, 100, maxWeightBytes, 10);
+		return new SharedEnrichmentCache(shared, loader, refreshMillis);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject value(String key) {
+		JSONObject value = new JSONObject();
+		value.put("value", key);
+		return value;
+	}
+
+	private static class CountingLoader extends CacheLoader<String, JSONObject> {
+
+		final AtomicInteger loads = new AtomicInteger();
+		final AtomicInteger bulkLoads = new AtomicInteger();
+		final long delay;
+
+		CountingLoader(long delay) {
+			this.delay = delay;
+		}
+
+		public JSONObject load(String key) throws Exception {
+			loads.incrementAndGet();
+			Thread.sleep(delay);
+			return value(key);
+		}
+
+		public Map<String, JSONObject> loadAll(Iterable<? extends String> keys) {
+			bulkLoads.incrementAndGet();
+			Map<String, JSONObject> values = new HashMap<String, JSONObject>();
+			for (String key : keys) {
+				loads.incrementAndGet();
+				values.put(key, value(key));
+			}
+			return values;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.opensoc.filters;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+
+import com.opensoc.helpers.text.AhoCorasickMatcher;
+import com.opensoc.parser.interfaces.RawMessageFilter;
+
+public class ByteSignatureMessageFilter implements RawMessageFilter,
+		Serializable {
+
+	/**
+	 * Drops raw messages that start with, or contain, one of a set of
+	 * literals before they are parsed. Each list is compiled into a single
+	 * Aho-Corasick automaton, so a message is scanned at most once per list
+	 * no matter how many literals are configured.
+	 * <p>
+	 * Supported keys, each taking a comma separated list:
+	 * <ul>
+	 * <li>source.exclude.raw.prefixes : literals the message starts with, e.g.
+	 * {"x509": for Bro's x509 log
+	 * <li>source.exclude.raw.substrings : literals found anywhere in the
+	 * message
+	 * </ul>
+	 * Literals are matched byte for byte against the UTF-8 message, without
+	 * skipping whitespace. This is only meant to save parsing work on
+	 * traffic that is thrown away anyway; MessageFilter still sees every
+	 * message that gets through.
+	 */
+
+	private static final long serialVersionUID = 6105393187317806546L;
+
+	private final AhoCorasickMatcher prefixes;
+	private final AhoCorasickMatcher substrings;
+
+	/**
+	 * @param conf
+	 *            Topology configuration holding the source.exclude.raw.*
+	 *            lists
+	 */
+	public ByteSignatureMessageFilter(Configuration conf) {
+		this(Arrays.asList(conf.getStringArray("source.exclude.raw.prefixes")),
+				Arrays.asList(conf
+						.getStringArray("source.exclude.raw.substrings")));
+	}
+
+	/**
+	 * @param prefixes
+	 *            Literals a dropped message starts with
+	 * @param substrings
+	 *            Literals a dropped message contains
+	 */
+	public ByteSignatureMessageFilter(List<String> prefixes,
+			List<String> substrings) {
+		this.prefixes = new AhoCorasickMatcher(prefixes);
+		this.substrings = new AhoCorasickMatcher(substrings);
+	}
+
+	/**
+	 * @param raw_message
+	 *            Raw message bytes
+	 * @return False if message is filtered and True if message is not filtered
+	 */
+	public boolean emitTuple(byte[] raw_message) {
+		return !prefixes.matchesPrefix(raw_message)
+				&& !substrings.matchesAnywhere(raw_message);
+	}
+
+	/**
+	 * @return True if no literals are configured and every message passes
+	 */
+	public boolean isEmpty() {
+		return prefixes.isEmpty() && substrings.isEmpty();
+	}
+}
@@ -0,0 +1,200 @@
+package com.opensoc.filters;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.configuration.Configuration;
+import org.json.simple.JSONObject;
+
+import com.opensoc.helpers.net.Ipv4;
+import com.opensoc.parser.interfaces.MessageFilter;
+
+public class ConfigurableMessageFilter implements MessageFilter, Serializable {
+
+	/**
+	 * Filter messages with include and exclude rules read from topology.conf.
+	 * All rules are compiled into hash sets and sorted address ranges when
+	 * the filter is built, so evaluating a message does not parse or allocate
+	 * anything beyond the IP lookups.
+	 * <p>
+	 * Supported keys, each taking a comma separated list:
+	 * <ul>
+	 * <li>source.include.protocols / source.exclude.protocols : values of the
+	 * protocol field
+	 * <li>source.include.field.NAME / source.exclude.field.NAME : values of the
+	 * field NAME
+	 * <li>source.include.cidr / source.exclude.cidr : IPv4 blocks matched
+	 * against ip_src_addr and ip_dst_addr
+	 * </ul>
+	 * A message is dropped if any exclude rule matches it. If include rules
+	 * are configured, every one of them has to match: the field has to hold
+	 * one of the listed values, and for cidr either address has to be in one
+	 * of the blocks. Without any rules every message is emitted.
+	 */
+
+	private static final long serialVersionUID = -2437406916235271815L;
+
+	private static final String PREFIX = "source";
+
+	private final FieldRule[] includeFields;
+	private final FieldRule[] excludeFields;
+	private final Ranges includeRanges;
+	private final Ranges excludeRanges;
+
+	/**
+	 * @param conf
+	 *            Topology configuration holding the source.* rules
+	 */
+	public ConfigurableMessageFilter(Configuration conf) {
+		includeFields = fieldRules(conf, "include");
+		excludeFields = fieldRules(conf, "exclude");
+		includeRanges = ranges(conf, PREFIX + ".include.cidr");
+		excludeRanges = ranges(conf, PREFIX + ".exclude.cidr");
+	}
+
+	/**
+	 * @param message
+	 *            Parsed message
+	 * @return False if message is filtered and True if message is not filtered
+	 */
+	public boolean emitTuple(JSONObject message) {
+		for (FieldRule rule : excludeFields) {
+			if (rule.matches(message))
+				return false;
+		}
+
+		for (FieldRule rule : includeFields) {
+			if (!rule.matches(message))
+				return false;
+		}
+
+		if (excludeRanges == null && includeRanges == null)
+			return true;
+
+		long src = address(message.get("ip_src_addr"));
+		long dst = address(message.get("ip_dst_addr"));
+
+		if (excludeRanges != null
+				&& (excludeRanges.contains(src) || excludeRanges.contains(dst)))
+			return false;
+
+		return includeRanges == null || includeRanges.contains(src)
+				|| includeRanges.contains(dst);
+	}
+
+	private static long address(Object ip) {
+		return ip == null ? Ipv4.INVALID : Ipv4.parse(ip.toString());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static FieldRule[] fieldRules(Configuration conf, String kind) {
+		List<FieldRule> rules = new ArrayList<FieldRule>();
+
+		String[] protocols = conf.getStringArray(PREFIX + "." + kind
+				+ ".protocols");
+		if (protocols.length > 0)
+			rules.add(new FieldRule("protocol", protocols));
+
+		String fieldPrefix = PREFIX + "." + kind + ".field";
+		Iterator<String> keys = conf.getKeys(fieldPrefix);
+		while (keys.hasNext()) {
+			String key = keys.next();
+			if (key.length() > fieldPrefix.length() + 1)
+				rules.add(new FieldRule(
+						key.substring(fieldPrefix.length() + 1), conf
+								.getStringArray(key)));
+		}
+
+		return rules.toArray(new FieldRule[rules.size()]);
+	}
+
+	private static Ranges ranges(Configuration conf, String key) {
+		String[] blocks = conf.getStringArray(key);
+		return blocks.length == 0 ? null : new Ranges(blocks);
+	}
+
+	/**
+	 * Field must hold one of a set of values
+	 */
+	private static class FieldRule implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String field;
+		private final Set<String> values;
+
+		FieldRule(String field, String[] values) {
+			this.field = field;
+			this.values = new HashSet<String>();
+			for (String value : values)
+				this.values.add(value.trim());
+		}
+
+		boolean matches(JSONObject message) {
+			Object value = message.get(field);
+			return value != null && values.contains(value.toString());
+		}
+	}
+
+	/**
+	 * Merged, sorted IPv4 ranges searched with a binary search
+	 */
+	private static class Ranges implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long[] starts;
+		private final long[] ends;
+
+		Ranges(String[] blocks) {
+			long[][] parsed = new long[blocks.length][];
+			for (int i = 0; i < blocks.length; i++)
+				parsed[i] = Ipv4.parseCidr(blocks[i]);
+
+			Arrays.sort(parsed, new Comparator<long[]>() {
+				public int compare(long[] a, long[] b) {
+					return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+				}
+			});
+
+			long[] s = new long[parsed.length];
+			long[] e = new long[parsed.length];
+			int count = 0;
+			for (long[] range : parsed) {
+				if (count > 0 && range[0] <= e[count - 1] + 1) {
+					e[count - 1] = Math.max(e[count - 1], range[1]);
+				} else {
+					s[count] = range[0];
+					e[count] = range[1];
+					count++;
+				}
+			}
+			starts = Arrays.copyOf(s, count);
+			ends = Arrays.copyOf(e, count);
+		}
+
+		boolean contains(long address) {
+			if (address == Ipv4.INVALID)
+				return false;
+
+			int low = 0;
+			int high = starts.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (address < starts[mid])
+					high = mid - 1;
+				else if (address > ends[mid])
+					low = mid + 1;
+				else
+					return true;
+			}
+			return false;
+		}
+	}
+}
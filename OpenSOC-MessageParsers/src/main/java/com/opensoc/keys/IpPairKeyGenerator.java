@@ -0,0 +1,71 @@
+package com.opensoc.keys;
+
+import java.io.Serializable;
+
+import com.opensoc.helpers.net.Ipv4;
+import com.opensoc.parser.interfaces.TopologyKeyGenerator;
+
+public class IpPairKeyGenerator implements TopologyKeyGenerator, Serializable {
+
+	/**
+	 * Packs two IPv4 addresses into one long, the lower address in the high
+	 * half, so both directions of a conversation get the same key. The long
+	 * is then run through the 64 bit MurmurHash3 finalizer. That step is a
+	 * bijection, so distinct IPv4 pairs never share a key, while neighbouring
+	 * addresses still end up far apart once Storm hashes the key onto a task.
+	 * <p>
+	 * A missing address counts as 0.0.0.0. Values that are not dotted IPv4
+	 * addresses, such as IPv6, are hashed to 64 bits and combined
+	 * symmetrically; those keys can collide, although it is unlikely.
+	 */
+
+	private static final long serialVersionUID = 5484913064346734125L;
+
+	private static final long NOT_IPV4 = Ipv4.INVALID;
+
+	public String generateKey(String src_ip, String dst_ip) {
+		boolean noSrc = src_ip == null || src_ip.length() == 0;
+		boolean noDst = dst_ip == null || dst_ip.length() == 0;
+
+		if (noSrc && noDst)
+			return "0";
+
+		long src = noSrc ? 0 : Ipv4.parse(src_ip);
+		long dst = noDst ? 0 : Ipv4.parse(dst_ip);
+
+		long packed;
+		if (src != NOT_IPV4 && dst != NOT_IPV4) {
+			packed = src < dst ? src << 32 | dst : dst << 32 | src;
+		} else {
+			long a = src != NOT_IPV4 ? src : hash(src_ip);
+			long b = dst != NOT_IPV4 ? dst : hash(dst_ip);
+			packed = mix(Math.min(a, b)) * 31 + Math.max(a, b);
+		}
+
+		return Long.toHexString(mix(packed));
+	}
+
+	/**
+	 * 64 bit FNV-1a over the characters of a non IPv4 value
+	 */
+	private static long hash(String value) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * MurmurHash3 fmix64
+	 */
+	private static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
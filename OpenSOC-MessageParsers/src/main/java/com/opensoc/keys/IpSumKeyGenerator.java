@@ -0,0 +1,36 @@
+package com.opensoc.keys;
+
+import java.io.Serializable;
+
+import com.opensoc.parser.interfaces.TopologyKeyGenerator;
+
+public class IpSumKeyGenerator implements TopologyKeyGenerator, Serializable {
+
+	/**
+	 * Original OpenSOC key: both addresses with the dots removed, read as
+	 * numbers and added. Many address pairs share a sum, so prefer
+	 * IpPairKeyGenerator unless stored keys have to stay comparable.
+	 */
+
+	private static final long serialVersionUID = -1931637524170457316L;
+
+	public String generateKey(String src_ip, String dst_ip) {
+		try {
+			if (dst_ip == null && src_ip == null)
+				return "0";
+
+			if (src_ip == null || src_ip.length() == 0)
+				return dst_ip;
+
+			if (dst_ip == null || dst_ip.length() == 0)
+				return src_ip;
+
+			double ip1 = Double.parseDouble(src_ip.replace(".", ""));
+			double ip2 = Double.parseDouble(dst_ip.replace(".", ""));
+
+			return String.valueOf(ip1 + ip2);
+		} catch (Exception e) {
+			return "0";
+		}
+	}
+}
@@ -29,9 +29,12 @@ import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.base.BaseRichBolt;
 
 import com.codahale.metrics.Counter;
+import com.opensoc.keys.IpPairKeyGenerator;
 import com.opensoc.metrics.MetricReporter;
 import com.opensoc.parser.interfaces.MessageFilter;
 import com.opensoc.parser.interfaces.MessageParser;
+import com.opensoc.parser.interfaces.RawMessageFilter;
+import com.opensoc.parser.interfaces.TopologyKeyGenerator;
 
 @SuppressWarnings("rawtypes")
 public abstract class AbstractParserBolt extends BaseRichBolt {
@@ -49,6 +52,8 @@ public abstract class AbstractParserBolt extends BaseRichBolt {
 	protected String OutputFieldName;
 	protected MetricReporter _reporter;
 	protected MessageFilter _filter;
+	protected RawMessageFilter _rawFilter;
+	protected TopologyKeyGenerator _keyGenerator = new IpPairKeyGenerator();
 
 	protected Counter ackCounter, emitCounter, failCounter;
 
@@ -141,23 +146,7 @@ public abstract class AbstractParserBolt extends BaseRichBolt {
 
 	protected String generateTopologyKey(String src_ip, String dst_ip)
 			throws Exception {
-		try {
-			if (dst_ip == null && src_ip == null)
-				return "0";
-
-			if (src_ip == null || src_ip.length() == 0)
-				return dst_ip;
-
-			if (dst_ip == null || dst_ip.length() == 0)
-				return src_ip;
-
-			double ip1 = Double.parseDouble(src_ip.replace(".", ""));
-			double ip2 = Double.parseDouble(dst_ip.replace(".", ""));
-
-			return String.valueOf(ip1 + ip2);
-		} catch (Exception e) {
-			return "0";
-		}
+		return _keyGenerator.generateKey(src_ip, dst_ip);
 	}
 
 }
\ No newline at end of file
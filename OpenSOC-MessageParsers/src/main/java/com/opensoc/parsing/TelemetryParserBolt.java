@@ -18,11 +18,19 @@
 package com.opensoc.parsing;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.configuration.Configuration;
 import org.json.simple.JSONObject;
 
+import backtype.storm.Config;
+import backtype.storm.Constants;
 import backtype.storm.task.OutputCollector;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.OutputFieldsDeclarer;
@@ -30,11 +38,14 @@ import backtype.storm.tuple.Fields;
 import backtype.storm.tuple.Tuple;
 import backtype.storm.tuple.Values;
 
+import com.codahale.metrics.Histogram;
 import com.opensoc.helpers.topology.ErrorGenerator;
 import com.opensoc.json.serialization.JSONEncoderHelper;
 import com.opensoc.metrics.MetricReporter;
 import com.opensoc.parser.interfaces.MessageFilter;
 import com.opensoc.parser.interfaces.MessageParser;
+import com.opensoc.parser.interfaces.RawMessageFilter;
+import com.opensoc.parser.interfaces.TopologyKeyGenerator;
 
 /**
  * Uses an adapter to parse a telemetry message from its native format into a
@@ -56,6 +67,16 @@ import com.opensoc.parser.interfaces.MessageParser;
  * <p>
  * If a message does not contain at least one of these variables it will be
  * failed
+ * <p>
+ * When a batch size greater than 1 is configured the bolt collects tuples
+ * until the batch is full or the batch time limit has passed, parses the batch
+ * on a small fork-join pool and then emits and acks the results in input order.
+ * This lets one executor use several cores for expensive parsers, but requires
+ * a parser that is safe to call from several threads.
+ * <p>
+ * An optional RawMessageFilter runs on the raw bytes before the parser, so
+ * messages that would be filtered anyway can be dropped without paying for
+ * the parse.
  **/
 
 @SuppressWarnings("rawtypes")
@@ -64,6 +85,15 @@ public class TelemetryParserBolt extends AbstractParserBolt {
 	private static final long serialVersionUID = -2647123143398352020L;
 	private JSONObject metricConfiguration;
 
+	private int batchSize = 1;
+	private long batchTimeLimit = 1000;
+	private int poolSize = Runtime.getRuntime().availableProcessors();
+
+	private transient ForkJoinPool pool;
+	private transient List<Tuple> pending;
+	private transient long batchStart;
+	private transient Histogram parseLatencyHistogram, batchSizeHistogram;
+
 	/**
 	 * @param parser
 	 *            The parser class for parsing the incoming raw message byte
@@ -98,6 +128,31 @@ public class TelemetryParserBolt extends AbstractParserBolt {
 		return this;
 	}
 
+	/**
+	 * @param rawFilter
+	 *            Optional check on the raw message bytes. Messages it rejects
+	 *            are acked without being parsed
+	 * @return Instance of this class
+	 */
+
+	public TelemetryParserBolt withRawMessageFilter(RawMessageFilter rawFilter) {
+		this._rawFilter = rawFilter;
+		return this;
+	}
+
+	/**
+	 * @param keyGenerator
+	 *            Builds the key used to group emitted messages onto the tasks
+	 *            of the next bolt. Defaults to IpPairKeyGenerator
+	 * @return Instance of this class
+	 */
+
+	public TelemetryParserBolt withTopologyKeyGenerator(
+			TopologyKeyGenerator keyGenerator) {
+		this._keyGenerator = keyGenerator;
+		return this;
+	}
+
 	/**
 	 * @param config
 	 *            A class for generating custom metrics into graphite
@@ -110,6 +165,42 @@ public class TelemetryParserBolt extends AbstractParserBolt {
 		return this;
 	}
 
+	/**
+	 * @param batchSize
+	 *            Number of tuples to collect before parsing them as one batch.
+	 *            A value of 1 or less parses every tuple as it arrives
+	 * @return Instance of this class
+	 */
+
+	public TelemetryParserBolt withBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * @param batchTimeLimit
+	 *            Maximum time in milliseconds a tuple can wait for its batch
+	 *            to fill up before the batch is parsed anyway
+	 * @return Instance of this class
+	 */
+
+	public TelemetryParserBolt withBatchTimeLimit(long batchTimeLimit) {
+		this.batchTimeLimit = batchTimeLimit;
+		return this;
+	}
+
+	/**
+	 * @param poolSize
+	 *            Number of threads used to parse a batch. The configured
+	 *            MessageParser must be safe to call from several threads
+	 * @return Instance of this class
+	 */
+
+	public TelemetryParserBolt withParserPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+		return this;
+	}
+
 	@Override
 	void doPrepare(Map conf, TopologyContext topologyContext,
 			OutputCollector collector) throws IOException {
@@ -125,33 +216,140 @@ public class TelemetryParserBolt extends AbstractParserBolt {
 			LOG.info("[OpenSOC] Metric reporter is not initialized");
 		}
 		this.registerCounters();
+
+		_parser.initializeParser();
+
+		if (isBatching()) {
+			pool = new ForkJoinPool(Math.max(1, poolSize));
+			pending = new ArrayList<Tuple>(batchSize);
+
+			if (metricConfiguration != null) {
+				String name = _parser.getClass().getSimpleName();
+				parseLatencyHistogram = _reporter.registerHistogram(name
+						+ ".parse.latency");
+				batchSizeHistogram = _reporter.registerHistogram(name
+						+ ".batch.size");
+			}
+
+			LOG.info("[OpenSOC] Parsing in batches of " + batchSize
+					+ " tuples or " + batchTimeLimit + " ms on " + poolSize
+					+ " threads");
+		}
 	}
 
-	@SuppressWarnings("unchecked")
 	public void execute(Tuple tuple) {
 
 		LOG.trace("[OpenSOC] Starting to process a new incoming tuple");
 
-		byte[] original_message = null;
+		if (!isBatching()) {
+			byte[] original_message = tuple.getBinary(0);
+			JSONObject transformed_message = null;
+			Exception parse_error = null;
 
-		try {
+			try {
+				transformed_message = parseMessage(original_message);
+			} catch (Exception e) {
+				parse_error = e;
+			}
+
+			process(tuple, original_message, transformed_message, parse_error);
+			return;
+		}
 
-			original_message = tuple.getBinary(0);
+		if (isTickTuple(tuple)) {
+			if (!pending.isEmpty()
+					&& System.currentTimeMillis() - batchStart >= batchTimeLimit)
+				flush();
+			return;
+		}
 
-			LOG.trace("[OpenSOC] Starting the parsing process");
+		if (pending.isEmpty())
+			batchStart = System.currentTimeMillis();
 
-			if (original_message == null || original_message.length == 0) {
-				LOG.error("Incomming tuple is null");
-				throw new Exception("Invalid message length");
-			}
+		pending.add(tuple);
 
-			LOG.trace("[OpenSOC] Attempting to transofrm binary message to JSON");
-			JSONObject transformed_message = _parser.parse(original_message);
+		if (pending.size() >= batchSize
+				|| System.currentTimeMillis() - batchStart >= batchTimeLimit)
+			flush();
+	}
+
+	/**
+	 * Parses all pending tuples on the pool, then checks, emits and acks them
+	 * in the order they arrived.
+	 */
+	private void flush() {
+
+		int size = pending.size();
+		byte[][] original_messages = new byte[size][];
+		JSONObject[] transformed_messages = new JSONObject[size];
+		Exception[] parse_errors = new Exception[size];
+
+		for (int i = 0; i < size; i++)
+			original_messages[i] = pending.get(i).getBinary(0);
+
+		long start = System.nanoTime();
+		pool.invoke(new ParseTask(original_messages, transformed_messages,
+				parse_errors, 0, size));
+
+		if (parseLatencyHistogram != null) {
+			parseLatencyHistogram.update(TimeUnit.NANOSECONDS
+					.toMicros(System.nanoTime() - start));
+			batchSizeHistogram.update(size);
+		}
+
+		for (int i = 0; i < size; i++)
+			process(pending.get(i), original_messages[i],
+					transformed_messages[i], parse_errors[i]);
+
+		pending.clear();
+	}
+
+	/**
+	 * @return The parsed message, or null if the raw message filter dropped it
+	 */
+	private JSONObject parseMessage(byte[] original_message) throws Exception {
+
+		LOG.trace("[OpenSOC] Starting the parsing process");
+
+		if (original_message == null || original_message.length == 0) {
+			LOG.error("Incomming tuple is null");
+			throw new Exception("Invalid message length");
+		}
+
+		if (_rawFilter != null && !_rawFilter.emitTuple(original_message)) {
+			LOG.trace("[OpenSOC] Message dropped before parsing");
+			return null;
+		}
+
+		LOG.trace("[OpenSOC] Attempting to transofrm binary message to JSON");
+		JSONObject transformed_message = _parser.parse(original_message);
+
+		if (LOG.isDebugEnabled())
 			LOG.debug("[OpenSOC] Transformed Telemetry message: "
 					+ transformed_message);
 
-			if (transformed_message == null || transformed_message.isEmpty())
-				throw new Exception("Unable to turn binary message into a JSON");
+		if (transformed_message == null || transformed_message.isEmpty())
+			throw new Exception("Unable to turn binary message into a JSON");
+
+		return transformed_message;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void process(Tuple tuple, byte[] original_message,
+			JSONObject transformed_message, Exception parse_error) {
+
+		try {
+
+			if (parse_error != null)
+				throw parse_error;
+
+			// Dropped by the raw message filter, nothing was parsed
+			if (transformed_message == null) {
+				_collector.ack(tuple);
+				if (metricConfiguration != null)
+					ackCounter.inc();
+				return;
+			}
 
 			LOG.trace("[OpenSOC] Checking if the transformed JSON conforms to the right schema");
 
@@ -194,20 +392,101 @@ public class TelemetryParserBolt extends AbstractParserBolt {
 			}
 
 		} catch (Exception e) {
-			e.printStackTrace();
-			LOG.error("Failed to parse telemetry message :" + original_message);
+			String message = original_message == null ? "null" : new String(
+					original_message);
+
+			LOG.error("Failed to parse telemetry message: " + e.getMessage());
+			if (LOG.isDebugEnabled())
+				LOG.debug("Failed to parse telemetry message :" + message, e);
+
 			_collector.fail(tuple);
 
 			if (metricConfiguration != null)
 				failCounter.inc();
 
 			JSONObject error = ErrorGenerator.generateErrorMessage(
-					"Parsing problem: " + new String(original_message),
-					e.toString());
+					"Parsing problem: " + message, e.toString());
 			_collector.emit("error", new Values(error));
 		}
 	}
 
+	private boolean isBatching() {
+		return batchSize > 1;
+	}
+
+	private static boolean isTickTuple(Tuple tuple) {
+		return Constants.SYSTEM_COMPONENT_ID.equals(tuple.getSourceComponent())
+				&& Constants.SYSTEM_TICK_STREAM_ID.equals(tuple
+						.getSourceStreamId());
+	}
+
+	/**
+	 * Requests tick tuples in batching mode so a partially filled batch is
+	 * flushed even when no new tuples arrive.
+	 */
+	@Override
+	public Map<String, Object> getComponentConfiguration() {
+		if (!isBatching())
+			return null;
+
+		Map<String, Object> conf = new HashMap<String, Object>();
+		conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS,
+				Math.max(1, (int) ((batchTimeLimit + 999) / 1000)));
+		return conf;
+	}
+
+	@Override
+	public void cleanup() {
+		if (pool != null)
+			pool.shutdown();
+	}
+
+	/**
+	 * Splits a batch in halves until each piece is small enough to parse on a
+	 * single thread.
+	 */
+	private class ParseTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 4398263146071263431L;
+		private static final int THRESHOLD = 16;
+
+		private final byte[][] original_messages;
+		private final JSONObject[] transformed_messages;
+		private final Exception[] parse_errors;
+		private final int from;
+		private final int to;
+
+		ParseTask(byte[][] original_messages,
+				JSONObject[] transformed_messages, Exception[] parse_errors,
+				int from, int to) {
+			this.original_messages = original_messages;
+			this.transformed_messages = transformed_messages;
+			this.parse_errors = parse_errors;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					try {
+						transformed_messages[i] = parseMessage(original_messages[i]);
+					} catch (Exception e) {
+						parse_errors[i] = e;
+					}
+				}
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new ParseTask(original_messages, transformed_messages,
+					parse_errors, from, middle), new ParseTask(
+					original_messages, transformed_messages, parse_errors,
+					middle, to));
+		}
+	}
+
 	public void declareOutputFields(OutputFieldsDeclarer declearer) {
 		declearer.declareStream("message", new Fields("key", "message"));
 		declearer.declareStream("error", new Fields("message"));
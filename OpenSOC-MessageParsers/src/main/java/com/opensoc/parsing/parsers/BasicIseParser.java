@@ -17,38 +17,34 @@
 
 package com.opensoc.parsing.parsers;
 
-import java.io.StringReader;
-
 import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.esotericsoftware.minlog.Log;
-import com.opensoc.ise.parser.ISEParser;
+import com.opensoc.ise.parser.ByteArrayISEParser;
 
+/**
+ * Parses ISE syslog messages with the JavaCC generated ISE grammar. Each
+ * thread gets its own reusable parser that reads the raw bytes directly, so
+ * one instance can be shared by several threads.
+ */
 @SuppressWarnings("serial")
 public class BasicIseParser extends AbstractParser {
 
 	protected static final Logger _LOG = LoggerFactory
 			.getLogger(BasicIseParser.class);
-	static final transient ISEParser _parser = new ISEParser("header=");
+
+	private transient ThreadLocal<ByteArrayISEParser> parsers;
 
 	@SuppressWarnings("unchecked")
 	public JSONObject parse(byte[] msg) {
-	
-		String raw_message = "";
 
 		try {
 
-			raw_message = new String(msg, "UTF-8");
-			_LOG.debug("Received message: " + raw_message);
-			
-			/*
-			 * Reinitialize Parser. It has the effect of calling the constructor again. 
-			 */
-			_parser.ReInit(new StringReader("header=" + raw_message.trim()));
+			if (_LOG.isDebugEnabled())
+				_LOG.debug("Received message: " + new String(msg, "UTF-8"));
 
-			JSONObject payload = _parser.parseObject();
+			JSONObject payload = parser().parse(msg);
 
 			String ip_src_addr = (String) payload.get("Device IP Address");
 			String ip_src_port = (String) payload.get("Device Port");
@@ -74,9 +70,20 @@ public class BasicIseParser extends AbstractParser {
 			return payload;
 
 		} catch (Exception e) {
-			Log.error(e.toString());
-			e.printStackTrace();
+			_LOG.error("Unable to parse message: " + e.toString());
 		}
 		return null;
 	}
+
+	private ByteArrayISEParser parser() {
+		if (parsers == null) {
+			parsers = new ThreadLocal<ByteArrayISEParser>() {
+				@Override
+				protected ByteArrayISEParser initialValue() {
+					return new ByteArrayISEParser("header=");
+				}
+			};
+		}
+		return parsers.get();
+	}
 }
@@ -17,9 +17,6 @@
 
 package com.opensoc.parsing.parsers;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 
@@ -28,35 +25,49 @@ public class BasicLancopeParser extends AbstractParser {
 	// Sample Lancope Message
 	// {"message":"<131>Jul 17 15:59:01 smc-01 StealthWatch[12365]: 2014-07-17T15:58:30Z 10.40.10.254 0.0.0.0 Minor High Concern Index The host's concern index has either exceeded the CI threshold or rapidly increased. Observed 36.55M points. Policy maximum allows up to 20M points.","@version":"1","@timestamp":"2014-07-17T15:56:05.992Z","type":"syslog","host":"10.122.196.201"}
 
+	// Space separated positions of the event time and the two hosts
+	private static final int TIMESTAMP_FIELD = 5;
+	private static final int SRC_FIELD = 6;
+	private static final int DST_FIELD = 7;
+
+	// Shared by all instances; Lancope batches mostly carry the same second
+	private static final IsoTimestampParser timestampParser = new IsoTimestampParser();
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public JSONObject parse(byte[] msg) {
 
-		JSONObject payload = null;
+		String raw_message = null;
 
 		try {
 			
-			String raw_message = new String(msg, "UTF-8");
+			raw_message = new String(msg, "UTF-8");
 			
-			payload = (JSONObject) JSONValue.parse(raw_message);
+			JSONObject payload = (JSONObject) JSONValue.parse(raw_message);
 			
-			
-
 			String message = payload.get("message").toString();
-			String[] parts = message.split(" ");
-			payload.put("ip_src_addr", parts[6]);
-			payload.put("ip_dst_addr", parts[7]);
 
-			String fixed_date = parts[5].replace('T', ' ');
-			fixed_date = fixed_date.replace('Z', ' ').trim();
+			// Start of every field up to DST_FIELD, then the end of DST_FIELD
+			int[] bounds = new int[DST_FIELD + 2];
+			int field = 0;
+			for (int i = 0; i < message.length() && field <= DST_FIELD; i++) {
+				if (message.charAt(i) == ' ')
+					bounds[++field] = i + 1;
+			}
+			bounds[DST_FIELD + 1] = field > DST_FIELD ? bounds[DST_FIELD + 1] - 1
+					: message.length();
 
-			SimpleDateFormat formatter = new SimpleDateFormat(
-					"yyyy-MM-dd HH:mm:ss");
+			// split(" ") drops trailing empty fields
+			if (field < DST_FIELD || isBlank(message, bounds[DST_FIELD]))
+				throw new IllegalArgumentException("Expected at least "
+						+ (DST_FIELD + 1) + " fields in: " + message);
 
-			Date date;
-
-			date = formatter.parse(fixed_date);
-			payload.put("timestamp", date.getTime());
+			payload.put("ip_src_addr",
+					message.substring(bounds[SRC_FIELD], bounds[DST_FIELD] - 1));
+			payload.put("ip_dst_addr", message.substring(bounds[DST_FIELD],
+					bounds[DST_FIELD + 1]));
+			payload.put("timestamp", timestampParser.parse(message,
+					bounds[TIMESTAMP_FIELD], bounds[SRC_FIELD] - 1));
 
 			payload.remove("@timestamp");
 			payload.remove("message");
@@ -65,8 +76,16 @@ public class BasicLancopeParser extends AbstractParser {
 			return payload;
 		} catch (Exception e) {
 
-			_LOG.error("Unable to parse message: " + payload.toJSONString());
+			_LOG.error("Unable to parse message: " + raw_message);
 			return null;
 		}
 	}
+
+	private static boolean isBlank(String message, int from) {
+		for (int i = from; i < message.length(); i++) {
+			if (message.charAt(i) != ' ')
+				return false;
+		}
+		return true;
+	}
 }
@@ -17,6 +17,7 @@
 
 package com.opensoc.parsing.parsers;
 
+import java.nio.charset.Charset;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,6 +25,14 @@ import org.json.simple.JSONObject;
 
 import com.opensoc.parser.interfaces.MessageParser;
 
+/**
+ * Parses Sourcefire messages of the form
+ * <code>... [gid:sid:rev] text ... {PROTO} src_ip:src_port -> dst_ip:dst_port</code>.
+ * <p>
+ * The message is scanned as bytes. Only the fields that end up in the
+ * output are decoded into Strings; the delimiters Sourcefire uses are all
+ * ASCII, so they can never fall inside a multi-byte UTF-8 sequence.
+ */
 @SuppressWarnings("serial")
 public class BasicSourcefireParser extends AbstractParser implements MessageParser{
 
@@ -33,72 +42,180 @@ public class BasicSourcefireParser extends AbstractParser implements MessagePars
 	Pattern sidPattern = Pattern.compile(sidRegex);
 	Pattern pattern = Pattern.compile(domain_name_regex);
 
-	@SuppressWarnings({ "unchecked", "unused" })
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@SuppressWarnings("unchecked")
 	public JSONObject parse(byte[] msg) {
 
 		JSONObject payload = new JSONObject();
-		String toParse = "";
 
 		try {
 
-			toParse = new String(msg, "UTF-8");
-			_LOG.debug("Received message: " + toParse);
-
-			String tmp = toParse.substring(toParse.lastIndexOf("{"));
-			payload.put("key", tmp);
+			if (_LOG.isDebugEnabled())
+				_LOG.debug("Received message: " + new String(msg, UTF8));
 
-			String protocol = tmp.substring(tmp.indexOf("{") + 1,
-					tmp.indexOf("}")).toLowerCase();
-			String source = tmp.substring(tmp.indexOf("}") + 1,
-					tmp.indexOf("->")).trim();
-			String dest = tmp.substring(tmp.indexOf("->") + 2, tmp.length())
-					.trim();
+			int length = msg.length;
+			int open = lastIndexOf(msg, (byte) '{');
+			int close = indexOf(msg, (byte) '}', open + 1, length);
+			int arrow = indexOfArrow(msg, open + 1, length);
 
-			payload.put("protocol", protocol);
+			if (open < 0 || close < 0 || arrow < 0 || arrow < close)
+				throw new IllegalArgumentException(
+						"No {protocol} src -> dst section found");
 
-			String source_ip = "";
-			String dest_ip = "";
+			payload.put("key", decode(msg, open, length));
+			payload.put("protocol", decode(msg, open + 1, close)
+					.toLowerCase());
 
-			if (source.contains(":")) {
-				String parts[] = source.split(":");
-				payload.put("ip_src_addr", parts[0]);
-				payload.put("ip_src_port", parts[1]);
-				source_ip = parts[0];
-			} else {
-				payload.put("ip_src_addr", source);
-				source_ip = source;
-
-			}
-
-			if (dest.contains(":")) {
-				String parts[] = dest.split(":");
-				payload.put("ip_dst_addr", parts[0]);
-				payload.put("ip_dst_port", parts[1]);
-				dest_ip = parts[0];
-			} else {
-				payload.put("ip_dst_addr", dest);
-				dest_ip = dest;
-			}
+			putEndpoint(payload, msg, close + 1, arrow, "ip_src_addr",
+					"ip_src_port");
+			putEndpoint(payload, msg, arrow + 2, length, "ip_dst_addr",
+					"ip_dst_port");
 
 			payload.put("timestamp", System.currentTimeMillis());
-			
-			Matcher sidMatcher = sidPattern.matcher(toParse);
-			String originalString = null;
-			if (sidMatcher.find()) {
-				originalString = sidMatcher.group(2);
-			} else {
-				_LOG.warn("Unable to find SID in message: " + toParse);
-				originalString = toParse;
+
+			String originalString = findSidText(msg);
+			if (originalString == null) {
+				originalString = new String(msg, UTF8);
+				if (_LOG.isWarnEnabled())
+					_LOG.warn("Unable to find SID in message: "
+							+ originalString);
 			}
 			payload.put("original_string", originalString);
 
 			return payload;
 		} catch (Exception e) {
 			e.printStackTrace();
-			_LOG.error("Failed to parse: " + toParse);
+			_LOG.error("Failed to parse: " + new String(msg, UTF8));
 			return null;
 		}
 	}
 
+	/**
+	 * Puts the address and port of one endpoint. The range is trimmed, and
+	 * the port is the text between the first and second colon, the way
+	 * split(":") would return it.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the endpoint ends in a colon without a port
+	 */
+	@SuppressWarnings("unchecked")
+	private static void putEndpoint(JSONObject payload, byte[] msg, int from,
+			int to, String addrKey, String portKey) {
+
+		while (from < to && (msg[from] & 0xff) <= ' ')
+			from++;
+		while (to > from && (msg[to - 1] & 0xff) <= ' ')
+			to--;
+
+		int colon = indexOf(msg, (byte) ':', from, to);
+		if (colon < 0) {
+			payload.put(addrKey, decode(msg, from, to));
+			return;
+		}
+
+		int portEnd = indexOf(msg, (byte) ':', colon + 1, to);
+		if (portEnd < 0)
+			portEnd = to;
+
+		// split(":") drops trailing empty strings, so "addr:" has no port
+		if (portEnd == colon + 1 && !hasNonColon(msg, portEnd, to))
+			throw new IllegalArgumentException("Endpoint has no port: "
+					+ decode(msg, from, to));
+
+		payload.put(addrKey, decode(msg, from, colon));
+		payload.put(portKey, decode(msg, colon + 1, portEnd));
+	}
+
+	/**
+	 * Returns the text after the first <code>[gid:sid:rev]</code> block, as
+	 * sidPattern would, or null if there is none. If that text contains a
+	 * line break the message goes through sidPattern itself, since its $
+	 * anchor treats line breaks specially.
+	 */
+	private String findSidText(byte[] msg) {
+		int length = msg.length;
+
+		for (int i = indexOf(msg, (byte) '[', 0, length); i >= 0; i = indexOf(
+				msg, (byte) '[', i + 1, length)) {
+			int p = skipDigits(msg, i + 1, length, Integer.MAX_VALUE);
+			if (p < 0 || p >= length || msg[p] != ':')
+				continue;
+			p = skipDigits(msg, p + 1, length, Integer.MAX_VALUE);
+			if (p < 0 || p >= length || msg[p] != ':')
+				continue;
+			p = skipDigits(msg, p + 1, length, 1);
+			if (p < 0 || p >= length || msg[p] != ']')
+				continue;
+
+			if (hasLineBreak(msg, p + 1, length)) {
+				Matcher sidMatcher = sidPattern.matcher(new String(msg, UTF8));
+				return sidMatcher.find() ? sidMatcher.group(2) : null;
+			}
+			return decode(msg, p + 1, length);
+		}
+		return null;
+	}
+
+	/**
+	 * True if the range may hold a character regex . does not match: \n, \r,
+	 * U+0085, U+2028 or U+2029. The last three are detected by their UTF-8
+	 * lead byte, which is conservative.
+	 */
+	private static boolean hasLineBreak(byte[] msg, int from, int to) {
+		for (int i = from; i < to; i++) {
+			byte b = msg[i];
+			if (b == '\n' || b == '\r' || b == (byte) 0xc2 || b == (byte) 0xe2)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index after at least one and at most max ASCII digits
+	 * starting at from, or -1 if there is no digit there.
+	 */
+	private static int skipDigits(byte[] msg, int from, int to, int max) {
+		int i = from;
+		while (i < to && i - from < max && msg[i] >= '0' && msg[i] <= '9')
+			i++;
+		return i == from ? -1 : i;
+	}
+
+	private static boolean hasNonColon(byte[] msg, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (msg[i] != ':')
+				return true;
+		}
+		return false;
+	}
+
+	private static int indexOf(byte[] msg, byte b, int from, int to) {
+		for (int i = Math.max(from, 0); i < to; i++) {
+			if (msg[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	private static int lastIndexOf(byte[] msg, byte b) {
+		for (int i = msg.length - 1; i >= 0; i--) {
+			if (msg[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	private static int indexOfArrow(byte[] msg, int from, int to) {
+		for (int i = Math.max(from, 0); i < to - 1; i++) {
+			if (msg[i] == '-' && msg[i + 1] == '>')
+				return i;
+		}
+		return -1;
+	}
+
+	private static String decode(byte[] msg, int from, int to) {
+		return new String(msg, from, to - from, UTF8);
+	}
 
 }
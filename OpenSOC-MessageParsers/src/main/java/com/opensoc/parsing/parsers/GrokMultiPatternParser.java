@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.parsing.parsers;
+
+import java.io.FileReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import oi.thekraken.grok.api.Grok;
+import oi.thekraken.grok.api.exception.GrokException;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Grok parser that handles several message layouts in one instance. Every
+ * configured Grok pattern is expanded and compiled once, when the parser is
+ * initialized, instead of per message.
+ * <p>
+ * Each message is first routed to a single pattern by a literal prefix check.
+ * The remaining patterns are only tried if that pattern does not match or no
+ * prefix applies. Only the named captures (lower case names such as
+ * %{protocol} or %{NONNEGINT:syslog_priority}) are copied into the output;
+ * upper case building blocks like GREEDYDATA are skipped. As with Grok's own
+ * Match, integer values are emitted as Integer and surrounding quotes are
+ * stripped.
+ * <p>
+ * The default constructor parses the Sourcefire variants described in
+ * patters/sourcefire, with or without a syslog priority header. Compiled
+ * patterns are thread-safe, so an instance can be shared by the batching
+ * threads of TelemetryParserBolt.
+ */
+public class GrokMultiPatternParser extends AbstractParser {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String DEFAULT_PATTERN_RESOURCE = "patters/sourcefire";
+
+	private final String patternResource;
+	private final String patternFile;
+	private final List<String> patterns = new ArrayList<String>();
+	private final Map<String, String> prefixes = new LinkedHashMap<String, String>();
+
+	private transient volatile CompiledPattern[] compiled;
+	private transient String[] routePrefixes;
+	private transient int[] routeTargets;
+
+	public GrokMultiPatternParser() {
+		this(DEFAULT_PATTERN_RESOURCE, null);
+
+		withPattern("SOURCEFIRE_SYSLOG").withPattern("SOURCEFIRE");
+		withPrefix("<", "SOURCEFIRE_SYSLOG");
+		withPrefix("SFIMS:", "SOURCEFIRE");
+		withPrefix("snort:", "SOURCEFIRE");
+	}
+
+	/**
+	 * @param filepath
+	 *            Grok pattern file on the local file system. Add the patterns
+	 *            to use with {@link #withPattern(String)}
+	 */
+	public GrokMultiPatternParser(String filepath) {
+		this(null, filepath);
+	}
+
+	private GrokMultiPatternParser(String patternResource, String patternFile) {
+		this.patternResource = patternResource;
+		this.patternFile = patternFile;
+	}
+
+	/**
+	 * @param pattern
+	 *            Name of a pattern from the pattern file. Patterns are tried
+	 *            in the order they are added when no prefix applies
+	 * @return Instance of this class
+	 */
+
+	public GrokMultiPatternParser withPattern(String pattern) {
+		if (!patterns.contains(pattern))
+			patterns.add(pattern);
+		compiled = null;
+		return this;
+	}
+
+	/**
+	 * @param prefix
+	 *            Literal the message starts with
+	 * @param pattern
+	 *            Name of the pattern tried first for such messages. It is
+	 *            added with {@link #withPattern(String)} if needed
+	 * @return Instance of this class
+	 */
+
+	public GrokMultiPatternParser withPrefix(String prefix, String pattern) {
+		withPattern(pattern);
+		prefixes.put(prefix, pattern);
+		return this;
+	}
+
+	@Override
+	public void initializeParser() {
+		_LOG.debug("Initializing adapter...");
+
+		try {
+			compile();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to compile Grok patterns "
+					+ patterns, e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public JSONObject parse(byte[] raw_message) {
+
+		try {
+			if (compiled == null)
+				initializeParser();
+
+			CompiledPattern[] all = compiled;
+			String toParse = new String(raw_message, "UTF-8");
+			int first = route(toParse);
+
+			JSONObject payload = null;
+
+			if (first >= 0)
+				payload = all[first].match(toParse);
+
+			for (int i = 0; payload == null && i < all.length; i++) {
+				if (i != first)
+					payload = all[i].match(toParse);
+			}
+
+			if (payload == null) {
+				_LOG.debug("No Grok pattern matched message: " + toParse);
+				return null;
+			}
+
+			payload.put("original_string", toParse);
+			return payload;
+
+		} catch (Exception e) {
+			_LOG.error("Unable to parse message with Grok", e);
+			return null;
+		}
+	}
+
+	private int route(String message) {
+		String[] candidates = routePrefixes;
+
+		for (int i = 0; i < candidates.length; i++) {
+			if (message.startsWith(candidates[i]))
+				return routeTargets[i];
+		}
+		return -1;
+	}
+
+	private synchronized void compile() throws Exception {
+		if (compiled != null)
+			return;
+
+		Grok definitions = new Grok();
+		Reader reader;
+
+		if (patternFile != null) {
+			reader = new FileReader(patternFile);
+		} else {
+			InputStream stream = getClass().getClassLoader()
+					.getResourceAsStream(patternResource);
+			if (stream == null)
+				throw new GrokException("Pattern resource not found: "
+						+ patternResource);
+			reader = new InputStreamReader(stream, "UTF-8");
+		}
+
+		try {
+			definitions.addPatternFromReader(reader);
+		} finally {
+			reader.close();
+		}
+
+		CompiledPattern[] all = new CompiledPattern[patterns.size()];
+		for (int i = 0; i < all.length; i++)
+			all[i] = new CompiledPattern(definitions.getPatterns(),
+					patterns.get(i));
+
+		routePrefixes = prefixes.keySet().toArray(new String[prefixes.size()]);
+		routeTargets = new int[routePrefixes.length];
+		for (int i = 0; i < routePrefixes.length; i++)
+			routeTargets[i] = patterns.indexOf(prefixes.get(routePrefixes[i]));
+
+		compiled = all;
+	}
+
+	/**
+	 * One Grok pattern expanded to a plain regex, with the group names that
+	 * map to output fields resolved up front.
+	 */
+	private static class CompiledPattern {
+
+		private final Pattern regex;
+		private final String[] groups;
+		private final String[] fields;
+
+		CompiledPattern(Map<String, String> definitions, String name)
+				throws GrokException {
+			Grok grok = new Grok();
+			grok.copyPatterns(definitions);
+			grok.compile("%{" + name + "}");
+
+			regex = Pattern.compile(grok.getNamedRegex());
+
+			List<String> groupList = new ArrayList<String>();
+			List<String> fieldList = new ArrayList<String>();
+
+			for (Map.Entry<String, String> group : grok
+					.getNamedRegexCollection().entrySet()) {
+				String field = group.getValue();
+				if (field.isEmpty() || !Character.isLowerCase(field.charAt(0)))
+					continue;
+				groupList.add(group.getKey());
+				fieldList.add(field);
+			}
+
+			groups = groupList.toArray(new String[groupList.size()]);
+			fields = fieldList.toArray(new String[fieldList.size()]);
+		}
+
+		@SuppressWarnings("unchecked")
+		JSONObject match(String message) {
+			Matcher matcher = regex.matcher(message);
+			if (!matcher.find())
+				return null;
+
+			JSONObject payload = new JSONObject();
+			for (int i = 0; i < groups.length; i++) {
+				String value = matcher.group(groups[i]);
+				if (value != null)
+					payload.put(fields[i], toValue(value));
+			}
+			return payload;
+		}
+
+		private static Object toValue(String value) {
+			int length = value.length();
+
+			if (length > 0 && length <= 11) {
+				int i = value.charAt(0) == '-' && length > 1 ? 1 : 0;
+				while (i < length && Character.isDigit(value.charAt(i)))
+					i++;
+				if (i == length) {
+					try {
+						return Integer.valueOf(value);
+					} catch (NumberFormatException e) {
+						return value;
+					}
+				}
+			}
+
+			if (length >= 2) {
+				char first = value.charAt(0);
+				if ((first == '"' || first == '\'')
+						&& value.charAt(length - 1) == first)
+					return value.substring(1, length - 1);
+			}
+			return value;
+		}
+	}
+}
@@ -20,7 +20,7 @@ public class GrokSourcefireParser extends AbstractParser{
 	public GrokSourcefireParser() throws GrokException
 	{
 		URL pattern_url = getClass().getClassLoader().getResource(
-				"pattarns/sourcefire");
+				"patters/sourcefire");
 		grok = Grok.create(pattern_url.getFile());
 		grok.compile("%{SOURCEFIRE}");
 	}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.parsing.parsers;
+
+/**
+ * Converts ISO-8601 timestamps such as <code>2014-07-17T15:58:30Z</code> to
+ * epoch milliseconds without SimpleDateFormat or Calendar.
+ * <p>
+ * Accepted form: <code>yyyy-MM-dd</code>, 'T' or a space,
+ * <code>HH:mm:ss</code>, an optional fraction of a second, and an optional
+ * zone of Z, +HH, +HHmm or +HH:mm. A timestamp without a zone is taken as UTC.
+ * <p>
+ * The conversion of the most recent second is cached, since telemetry often
+ * arrives in bursts that share a timestamp. The cache entry is immutable and
+ * replaced as a whole, so one instance can be shared by all threads.
+ */
+public final class IsoTimestampParser {
+
+	private static final int SECOND_LENGTH = "yyyy-MM-ddTHH:mm:ss".length();
+
+	private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31,
+			31, 30, 31, 30, 31 };
+
+	private volatile CachedSecond last = new CachedSecond("", 0);
+
+	/**
+	 * @param text
+	 *            Text holding the timestamp
+	 * @param start
+	 *            Index of the first character of the timestamp
+	 * @param end
+	 *            Index after the last character of the timestamp
+	 * @return Milliseconds since the epoch
+	 * @throws IllegalArgumentException
+	 *             If the range is not a valid timestamp
+	 */
+	public long parse(String text, int start, int end) {
+		if (start < 0 || end > text.length() || end - start < SECOND_LENGTH)
+			throw invalid(text, start, end);
+
+		long millis = secondMillis(text, start);
+		int pos = start + SECOND_LENGTH;
+
+		if (pos < end && (text.charAt(pos) == '.' || text.charAt(pos) == ',')) {
+			int digits = 0;
+			int fraction = 0;
+			pos++;
+			while (pos < end && isDigit(text.charAt(pos))) {
+				if (digits < 3) {
+					fraction = fraction * 10 + text.charAt(pos) - '0';
+					digits++;
+				}
+				pos++;
+			}
+			if (digits == 0)
+				throw invalid(text, start, end);
+			while (digits++ < 3)
+				fraction *= 10;
+			millis += fraction;
+		}
+
+		if (pos == end)
+			return millis;
+
+		char zone = text.charAt(pos);
+		if (zone == 'Z' && pos + 1 == end)
+			return millis;
+		if (zone != '+' && zone != '-')
+			throw invalid(text, start, end);
+
+		int length = end - pos - 1;
+		int hours;
+		int minutes = 0;
+
+		if (length == 2) {
+			hours = number(text, pos + 1, 2);
+		} else if (length == 4) {
+			hours = number(text, pos + 1, 2);
+			minutes = number(text, pos + 3, 2);
+		} else if (length == 5 && text.charAt(pos + 3) == ':') {
+			hours = number(text, pos + 1, 2);
+			minutes = number(text, pos + 4, 2);
+		} else {
+			throw invalid(text, start, end);
+		}
+
+		if (hours < 0 || hours > 18 || minutes < 0 || minutes > 59)
+			throw invalid(text, start, end);
+
+		long offset = (hours * 60L + minutes) * 60000L;
+		return zone == '+' ? millis - offset : millis + offset;
+	}
+
+	/**
+	 * Epoch milliseconds of the whole second at start, taken as UTC.
+	 */
+	private long secondMillis(String text, int start) {
+		CachedSecond cached = last;
+		if (text.regionMatches(start, cached.text, 0, SECOND_LENGTH))
+			return cached.millis;
+
+		int year = number(text, start, 4);
+		int month = number(text, start + 5, 2);
+		int day = number(text, start + 8, 2);
+		int hour = number(text, start + 11, 2);
+		int minute = number(text, start + 14, 2);
+		int second = number(text, start + 17, 2);
+		char separator = text.charAt(start + 10);
+
+		if (year < 0 || text.charAt(start + 4) != '-'
+				|| text.charAt(start + 7) != '-'
+				|| (separator != 'T' && separator != ' ')
+				|| text.charAt(start + 13) != ':'
+				|| text.charAt(start + 16) != ':' || month < 1 || month > 12
+				|| day < 1 || day > DAYS_IN_MONTH[month - 1]
+				|| (month == 2 && day == 29 && !isLeapYear(year)) || hour < 0
+				|| hour > 23 || minute < 0 || minute > 59 || second < 0
+				|| second > 59)
+			throw invalid(text, start, start + SECOND_LENGTH);
+
+		long millis = ((daysSinceEpoch(year, month, day) * 24 + hour) * 60
+				+ minute)
+				* 60000L + second * 1000L;
+
+		last = new CachedSecond(text.substring(start, start + SECOND_LENGTH),
+				millis);
+		return millis;
+	}
+
+	/**
+	 * Days from 1970-01-01 to the given date in the proleptic Gregorian
+	 * calendar.
+	 */
+	private static long daysSinceEpoch(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day
+				- 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+				+ dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	private static boolean isLeapYear(int year) {
+		return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+	}
+
+	/**
+	 * Reads a fixed number of digits, or returns -1 if any of them is not a
+	 * digit.
+	 */
+	private static int number(String text, int start, int digits) {
+		int value = 0;
+		for (int i = start; i < start + digits; i++) {
+			char c = text.charAt(i);
+			if (!isDigit(c))
+				return -1;
+			value = value * 10 + c - '0';
+		}
+		return value;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static IllegalArgumentException invalid(String text, int start,
+			int end) {
+		int from = Math.min(Math.max(start, 0), text.length());
+		int to = Math.min(Math.max(end, from), text.length());
+		return new IllegalArgumentException("Invalid ISO-8601 timestamp: "
+				+ text.substring(from, to));
+	}
+
+	private static final class CachedSecond {
+
+		final String text;
+		final long millis;
+
+		CachedSecond(String text, long millis) {
+			this.text = text;
+			this.millis = millis;
+		}
+	}
+}
@@ -1,12 +1,10 @@
 package com.opensoc.parsing.parsers;
 
 import java.io.EOFException;
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 import org.krakenapps.pcap.decoder.ethernet.EthernetDecoder;
 import org.krakenapps.pcap.decoder.ethernet.EthernetType;
@@ -132,54 +130,4 @@ public final class PcapParser {
     return packetInfoList;
   }
 
-  /**
-   * The main method.
-   * 
-   * @param args
-   *          the arguments
-   * @throws IOException
-   *           Signals that an I/O exception has occurred.
-   * @throws InterruptedException
-   *           the interrupted exception
-   */
-  public static void main(String[] args) throws IOException,
-      InterruptedException {
-
-    double totalIterations = 1000000;
-    double parallelism = 64;
-    double targetEvents = 1000000;
-
-    File fin = new File("/Users/sheetal/Downloads/bad_packets/bad_packet_1405988125427.pcap");
-    File fout = new File(fin.getAbsolutePath() + ".parsed");
-    byte[] pcapBytes = FileUtils.readFileToByteArray(fin);
-    long startTime = System.currentTimeMillis();
-    for (int i = 0; i < totalIterations; i++) {
-      List<PacketInfo> list = parse(pcapBytes);
-
-      for (PacketInfo packetInfo : list) {
-        System.out.println(packetInfo.getJsonIndexDoc());
-      }
-    }
-    long endTime = System.currentTimeMillis();
-
-    System.out.println("Time taken to process " + totalIterations + " events :"
-        + (endTime - startTime) + " milliseconds");
-
-    System.out
-        .println("With parallelism of "
-            + parallelism
-            + " estimated time to process "
-            + targetEvents
-            + " events: "
-            + (((((endTime - startTime) / totalIterations) * targetEvents) / parallelism) / 1000)
-            + " seconds");
-    System.out.println("With parallelism of " + parallelism
-        + " estimated # of events per second: "
-        + ((parallelism * 1000 * totalIterations) / (endTime - startTime))
-        + " events");
-    System.out.println("Expected Parallelism to process " + targetEvents
-        + " events in a second: "
-        + (targetEvents / ((1000 * totalIterations) / (endTime - startTime))));
-  }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,494 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opensoc.parsing.parsers;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drop-in replacement for {@link BasicBroParser} that tokenizes the raw Bro
+ * JSON directly from the tuple's byte array instead of decoding it to a String
+ * and running it through {@link JSONCleaner}. Top level keys are sanitized
+ * while they are read, the standard field renames are applied while
+ * original_string is built, and original_string is assembled in a buffer that
+ * is reused between messages.
+ * <p>
+ * The returned JSONObject is equal to the one produced by
+ * {@link BasicBroParser} for the same input. Values are decoded into the same
+ * json-simple types (String, Long, Double, Boolean, JSONObject, JSONArray).
+ * <p>
+ * Enable it by setting
+ * bolt.parser.adapter=com.opensoc.parsing.parsers.StreamingBroParser in
+ * topology.conf.
+ */
+@SuppressWarnings("serial")
+public class StreamingBroParser extends AbstractParser {
+
+	protected static final Logger _LOG = LoggerFactory
+			.getLogger(StreamingBroParser.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private transient ThreadLocal<Scanner> scanners;
+
+	@SuppressWarnings("unchecked")
+	public JSONObject parse(byte[] msg) {
+
+		_LOG.trace("[OpenSOC] Starting to parse incoming message");
+
+		try {
+
+			Scanner scanner = scanner();
+			JSONObject cleaned_message = scanner.reset(msg).parseMessage();
+
+			if (cleaned_message.isEmpty())
+				throw new Exception("Unable to clean message");
+
+			String key = cleaned_message.keySet().iterator().next().toString();
+			JSONObject payload = (JSONObject) cleaned_message.get(key);
+
+			if (payload == null)
+				throw new Exception("Unable to retrieve payload for message");
+
+			JSONObject output = new JSONObject();
+			StringBuilder originalString = scanner.original;
+			originalString.setLength(0);
+			originalString.append(key.toUpperCase()).append(" |");
+
+			String timestamp = null, src_ip = null, dst_ip = null;
+			String src_port = null, dst_port = null;
+
+			for (Object e : payload.entrySet()) {
+				Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+				String k = (String) entry.getKey();
+				Object v = entry.getValue();
+
+				if (v == null)
+					throw new Exception("Null value for field: " + k);
+
+				String value = v.toString();
+				originalString.append(' ').append(k).append(':').append(value);
+
+				if (k.equals("ts"))
+					timestamp = value;
+				else if (k.equals("id.orig_h"))
+					src_ip = value;
+				else if (k.equals("id.resp_h"))
+					dst_ip = value;
+				else if (k.equals("id.orig_p"))
+					src_port = value;
+				else if (k.equals("id.resp_p"))
+					dst_port = value;
+				else
+					output.put(k, v);
+			}
+
+			output.put("original_string", originalString.toString());
+
+			if (timestamp != null)
+				output.put("timestamp", timestamp);
+			if (src_ip != null)
+				output.put("ip_src_addr", src_ip);
+			if (dst_ip != null)
+				output.put("ip_dst_addr", dst_ip);
+			if (src_port != null)
+				output.put("ip_src_port", src_port);
+			if (dst_port != null)
+				output.put("ip_dst_port", dst_port);
+
+			Object host = output.get("host");
+			if (host != null)
+				putTld(output, host.toString().trim());
+
+			Object query = output.get("query");
+			if (query != null)
+				putTld(output, query.toString());
+
+			output.put("protocol", key);
+
+			if (_LOG.isDebugEnabled())
+				_LOG.debug("[OpenSOC] Returning parsed message: " + output);
+
+			return output;
+
+		} catch (Exception e) {
+
+			_LOG.error("Unable to Parse Message: " + new String(msg, UTF_8), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Adds the last two labels of a domain name as the tld field. Mirrors
+	 * host.split("\\.") in {@link BasicBroParser}, including the way split
+	 * drops trailing empty labels.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void putTld(JSONObject output, String host) {
+		int end = host.length();
+		while (end > 0 && host.charAt(end - 1) == '.')
+			end--;
+
+		int last = host.lastIndexOf('.', end - 1);
+		if (last < 0)
+			return;
+
+		int prev = host.lastIndexOf('.', last - 1);
+		output.put("tld", host.substring(prev + 1, end));
+	}
+
+	private Scanner scanner() {
+		if (scanners == null) {
+			scanners = new ThreadLocal<Scanner>() {
+				@Override
+				protected Scanner initialValue() {
+					return new Scanner();
+				}
+			};
+		}
+		return scanners.get();
+	}
+
+	/**
+	 * Single-use-at-a-time JSON tokenizer over a byte array. One instance is
+	 * kept per thread so its buffers can be reused between messages.
+	 */
+	static final class Scanner {
+
+		private byte[] buf;
+		private int pos;
+		private int end;
+
+		private final StringBuilder chars = new StringBuilder(64);
+		final StringBuilder original = new StringBuilder(512);
+
+		Scanner reset(byte[] msg) {
+			this.buf = msg;
+			this.pos = 0;
+			this.end = msg.length;
+			return this;
+		}
+
+		/**
+		 * Parses the outer Bro object, stripping everything but
+		 * [._a-zA-Z0-9] from its keys as {@link JSONCleaner} does.
+		 */
+		@SuppressWarnings("unchecked")
+		JSONObject parseMessage() throws Exception {
+			JSONObject message = new JSONObject();
+
+			skipWhitespace();
+			expect('{');
+			skipWhitespace();
+
+			if (peek() != '}') {
+				while (true) {
+					skipWhitespace();
+					String key = sanitize(readString());
+					skipWhitespace();
+					expect(':');
+					message.put(key, readValue());
+					skipWhitespace();
+					if (peek() == ',') {
+						pos++;
+						continue;
+					}
+					break;
+				}
+			}
+			expect('}');
+			skipWhitespace();
+
+			if (pos != end)
+				throw error("Unexpected trailing data");
+
+			return message;
+		}
+
+		private String sanitize(String key) {
+			int length = key.length();
+			for (int i = 0; i < length; i++) {
+				if (!isKeyChar(key.charAt(i))) {
+					chars.setLength(0);
+					for (int j = 0; j < length; j++) {
+						char c = key.charAt(j);
+						if (isKeyChar(c))
+							chars.append(c);
+					}
+					return chars.toString();
+				}
+			}
+			return key;
+		}
+
+		private static boolean isKeyChar(char c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+					|| (c >= '0' && c <= '9') || c == '.' || c == '_';
+		}
+
+		private Object readValue() throws Exception {
+			skipWhitespace();
+			int c = peek();
+
+			switch (c) {
+			case '"':
+				return readString();
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			case 't':
+				readLiteral("true");
+				return Boolean.TRUE;
+			case 'f':
+				readLiteral("false");
+				return Boolean.FALSE;
+			case 'n':
+				readLiteral("null");
+				return null;
+			default:
+				if (c == '-' || (c >= '0' && c <= '9'))
+					return readNumber();
+				throw error("Unexpected character");
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private JSONObject readObject() throws Exception {
+			JSONObject object = new JSONObject();
+			expect('{');
+			skipWhitespace();
+
+			if (peek() == '}') {
+				pos++;
+				return object;
+			}
+
+			while (true) {
+				skipWhitespace();
+				String key = readString();
+				skipWhitespace();
+				expect(':');
+				object.put(key, readValue());
+				skipWhitespace();
+				if (peek() == ',') {
+					pos++;
+					continue;
+				}
+				expect('}');
+				return object;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private JSONArray readArray() throws Exception {
+			JSONArray array = new JSONArray();
+			expect('[');
+			skipWhitespace();
+
+			if (peek() == ']') {
+				pos++;
+				return array;
+			}
+
+			while (true) {
+				array.add(readValue());
+				skipWhitespace();
+				if (peek() == ',') {
+					pos++;
+					continue;
+				}
+				expect(']');
+				return array;
+			}
+		}
+
+		/**
+		 * Numbers without a fraction or exponent become Long, everything
+		 * else Double, matching json-simple.
+		 */
+		private Object readNumber() throws Exception {
+			int start = pos;
+			boolean decimal = false;
+
+			if (buf[pos] == '-')
+				pos++;
+
+			while (pos < end) {
+				byte b = buf[pos];
+				if (b >= '0' && b <= '9') {
+					pos++;
+				} else if (b == '.' || b == 'e' || b == 'E' || b == '+'
+						|| b == '-') {
+					decimal = true;
+					pos++;
+				} else {
+					break;
+				}
+			}
+
+			if (!decimal && pos - start <= 18) {
+				boolean negative = buf[start] == '-';
+				int i = negative ? start + 1 : start;
+				if (i == pos)
+					throw error("Malformed number");
+				long value = 0;
+				for (; i < pos; i++)
+					value = value * 10 + (buf[i] - '0');
+				return Long.valueOf(negative ? -value : value);
+			}
+
+			String number = new String(buf, start, pos - start, ISO_8859_1);
+			if (decimal)
+				return Double.valueOf(number);
+			return Long.valueOf(number);
+		}
+
+		/**
+		 * Reads a quoted string. Plain ASCII strings are copied straight out
+		 * of the byte array; escapes and multi-byte characters take the slow
+		 * path through the shared char buffer.
+		 */
+		private String readString() throws Exception {
+			expect('"');
+			int start = pos;
+			boolean ascii = true;
+
+			while (pos < end) {
+				byte b = buf[pos];
+				if (b == '"') {
+					String value = new String(buf, start, pos - start,
+							ascii ? ISO_8859_1 : UTF_8);
+					pos++;
+					return value;
+				}
+				if (b == '\\')
+					return readEscapedString(start);
+				if (b < 0)
+					ascii = false;
+				pos++;
+			}
+			throw error("Unterminated string");
+		}
+
+		private String readEscapedString(int start) throws Exception {
+			chars.setLength(0);
+			chars.append(new String(buf, start, pos - start, UTF_8));
+
+			while (pos < end) {
+				byte b = buf[pos];
+
+				if (b == '"') {
+					pos++;
+					return chars.toString();
+				}
+
+				if (b == '\\') {
+					if (++pos >= end)
+						break;
+					byte escaped = buf[pos++];
+					switch (escaped) {
+					case '"':
+						chars.append('"');
+						break;
+					case '\\':
+						chars.append('\\');
+						break;
+					case '/':
+						chars.append('/');
+						break;
+					case 'b':
+						chars.append('\b');
+						break;
+					case 'f':
+						chars.append('\f');
+						break;
+					case 'n':
+						chars.append('\n');
+						break;
+					case 'r':
+						chars.append('\r');
+						break;
+					case 't':
+						chars.append('\t');
+						break;
+					case 'u':
+						if (pos + 4 > end)
+							throw error("Malformed unicode escape");
+						chars.append((char) Integer.parseInt(new String(buf,
+								pos, 4, ISO_8859_1), 16));
+						pos += 4;
+						break;
+					default:
+						throw error("Illegal escape");
+					}
+					continue;
+				}
+
+				int run = pos;
+				while (pos < end && buf[pos] != '"' && buf[pos] != '\\')
+					pos++;
+				chars.append(new String(buf, run, pos - run, UTF_8));
+			}
+			throw error("Unterminated string");
+		}
+
+		private void readLiteral(String literal) throws Exception {
+			int length = literal.length();
+			if (pos + length > end)
+				throw error("Unexpected end of message");
+			for (int i = 0; i < length; i++) {
+				if (buf[pos + i] != literal.charAt(i))
+					throw error("Unexpected literal");
+			}
+			pos += length;
+		}
+
+		private void skipWhitespace() {
+			while (pos < end) {
+				byte b = buf[pos];
+				if (b != ' ' && b != '\t' && b != '\n' && b != '\r'
+						&& b != '\f')
+					return;
+				pos++;
+			}
+		}
+
+		private int peek() throws Exception {
+			if (pos >= end)
+				throw error("Unexpected end of message");
+			return buf[pos];
+		}
+
+		private void expect(char c) throws Exception {
+			if (peek() != c)
+				throw error("Expected '" + c + "'");
+			pos++;
+		}
+
+		private Exception error(String reason) {
+			return new Exception(reason + " at position " + pos);
+		}
+	}
+}
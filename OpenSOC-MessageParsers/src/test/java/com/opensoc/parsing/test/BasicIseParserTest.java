@@ -20,6 +20,12 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
@@ -124,6 +130,82 @@ public class BasicIseParserTest extends AbstractSchemaTest {
 		br.close();
 	}
 
+	/**
+	 * Parses the sample log from several threads sharing one parser instance
+	 * and checks every result against a single threaded run. The same work is
+	 * then timed on one thread and on all threads: sharing the parser must
+	 * not cost more than half of the single threaded throughput, even on a
+	 * single core. IseParserBenchmark measures the absolute rate.
+	 * 
+	 * @throws Exception
+	 */
+	public void testMultiThreadedParse() throws Exception {
+		URL log_url = getClass().getClassLoader().getResource("IseSample.log");
+
+		final List<byte[]> lines = new ArrayList<byte[]>();
+		final List<JSONObject> expected = new ArrayList<JSONObject>();
+
+		BufferedReader br = new BufferedReader(new FileReader(log_url.getFile()));
+		String line = "";
+		while ((line = br.readLine()) != null) {
+			lines.add(line.getBytes());
+			expected.add(new BasicIseParser().parse(line.getBytes()));
+		}
+		br.close();
+
+		final int threads = 4;
+		final int rounds = 20;
+		final BasicIseParser shared = getIseParser();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Callable<Integer> parseAll = new Callable<Integer>() {
+			public Integer call() throws Exception {
+				int mismatches = 0;
+				for (int r = 0; r < rounds; r++) {
+					for (int i = 0; i < lines.size(); i++) {
+						JSONObject parsed = shared.parse(lines.get(i));
+						if (parsed == null || !parsed.equals(expected.get(i)))
+							mismatches++;
+					}
+				}
+				return mismatches;
+			}
+		};
+
+		// The first run also warms up the parser for the timed runs
+		assertEquals(0, parseAll(executor, parseAll, threads));
+
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++)
+			assertEquals(0, parseAll.call().intValue());
+		long single = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		assertEquals(0, parseAll(executor, parseAll, threads));
+		long parallel = System.nanoTime() - start;
+
+		executor.shutdown();
+
+		assertTrue("Parsing on " + threads + " threads took " + parallel
+				/ 1000000 + " ms, on one thread " + single / 1000000 + " ms",
+				parallel <= 2 * single);
+	}
+
+	/**
+	 * @return The number of mismatches over all threads
+	 */
+	private static int parseAll(ExecutorService executor,
+			Callable<Integer> task, int threads) throws Exception {
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int t = 0; t < threads; t++)
+			results.add(executor.submit(task));
+
+		int mismatches = 0;
+		for (Future<Integer> result : results)
+			mismatches += result.get().intValue();
+		return mismatches;
+	}
+
 	/**
 	 * Returns the rawMessage.
 	 * 
@@ -99,6 +99,38 @@ public class BasicSourcefireParserTest extends TestCase
 		}
 	}
 
+	/**
+	 * Checks the extracted fields, including the SID text and endpoints
+	 * without a port.
+	 */
+	public void testParseFields() {
+		JSONObject parsed = sourceFireParser.parse(getSourceFireStrings()[1]
+				.getBytes());
+
+		assertEquals("{TCP} 46.149.110.103:80 -> 192.168.56.102:1073",
+				parsed.get("key"));
+		assertEquals("tcp", parsed.get("protocol"));
+		assertEquals("46.149.110.103", parsed.get("ip_src_addr"));
+		assertEquals("80", parsed.get("ip_src_port"));
+		assertEquals("192.168.56.102", parsed.get("ip_dst_addr"));
+		assertEquals("1073", parsed.get("ip_dst_port"));
+		assertEquals(
+				" WEB-CLIENT Windows Media Player directory traversal via Content-Disposition attempt [Classification: Attempted User Privilege Gain] [Priority: 1] {TCP} 46.149.110.103:80 -> 192.168.56.102:1073",
+				parsed.get("original_string"));
+
+		parsed = sourceFireParser.parse("[1:2:34] x {ICMP} 10.0.0.1 -> 10.0.0.2"
+				.getBytes());
+
+		assertEquals("icmp", parsed.get("protocol"));
+		assertEquals("10.0.0.1", parsed.get("ip_src_addr"));
+		assertNull(parsed.get("ip_src_port"));
+		assertEquals("10.0.0.2", parsed.get("ip_dst_addr"));
+		assertEquals("[1:2:34] x {ICMP} 10.0.0.1 -> 10.0.0.2",
+				parsed.get("original_string"));
+
+		assertNull(sourceFireParser.parse("no endpoints here".getBytes()));
+	}
+
 	/**
 	 * Returns SourceFire Input String
 	 */
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.parsing.test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+import com.opensoc.filters.ByteSignatureMessageFilter;
+import com.opensoc.helpers.text.AhoCorasickMatcher;
+
+/**
+ * <ul>
+ * <li>Title: Test For ByteSignatureMessageFilter</li>
+ * <li>Description: Checks prefix and substring rejection on raw messages and
+ * compares the matcher with a naive search</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class ByteSignatureMessageFilterTest extends TestCase {
+
+	public void testBroPrefixes() throws Exception {
+		PropertiesConfiguration conf = new PropertiesConfiguration();
+		conf.load(new StringReader(
+				"source.exclude.raw.prefixes={\"x509\":,{\"files\":,{\"app_stats\":\n"));
+		ByteSignatureMessageFilter filter = new ByteSignatureMessageFilter(conf);
+
+		assertFalse(filter.isEmpty());
+		assertFalse(filter.emitTuple(bytes("{\"x509\":{\"ts\":1}}")));
+		assertFalse(filter.emitTuple(bytes("{\"files\":{\"ts\":1}}")));
+		assertTrue(filter.emitTuple(bytes("{\"http\":{\"ts\":1,\"note\":\"{\\\"x509\\\":\"}}")));
+		assertTrue(filter.emitTuple(bytes("{\"x509\"")));
+		assertTrue(filter.emitTuple(new byte[0]));
+	}
+
+	public void testSubstrings() throws Exception {
+		ByteSignatureMessageFilter filter = new ByteSignatureMessageFilter(
+				Collections.<String> emptyList(), Arrays.asList("he", "she",
+						"hers", "caf\u00e9"));
+
+		assertFalse(filter.emitTuple(bytes("ushers")));
+		assertFalse(filter.emitTuple(bytes("a caf\u00e9 b")));
+		assertTrue(filter.emitTuple(bytes("his")));
+		assertTrue(filter.emitTuple(bytes("cafe")));
+	}
+
+	public void testNoRules() throws Exception {
+		ByteSignatureMessageFilter filter = new ByteSignatureMessageFilter(
+				new PropertiesConfiguration());
+
+		assertTrue(filter.isEmpty());
+		assertTrue(filter.emitTuple(bytes("{\"x509\":{}}")));
+	}
+
+	/**
+	 * Random patterns and inputs over a small alphabet, so overlapping and
+	 * nested matches are common.
+	 */
+	public void testAgainstNaiveSearch() throws Exception {
+		Random random = new Random(17);
+
+		for (int round = 0; round < 500; round++) {
+			List<String> patterns = new ArrayList<String>();
+			int count = 1 + random.nextInt(6);
+			for (int i = 0; i < count; i++)
+				patterns.add(randomString(random, 1 + random.nextInt(4)));
+
+			AhoCorasickMatcher matcher = new AhoCorasickMatcher(patterns);
+
+			for (int i = 0; i < 20; i++) {
+				String input = randomString(random, random.nextInt(12));
+				boolean prefix = false;
+				boolean anywhere = false;
+				for (String pattern : patterns) {
+					prefix |= input.startsWith(pattern);
+					anywhere |= input.contains(pattern);
+				}
+
+				assertEquals(patterns + " " + input, prefix,
+						matcher.matchesPrefix(bytes(input)));
+				assertEquals(patterns + " " + input, anywhere,
+						matcher.matchesAnywhere(bytes(input)));
+			}
+		}
+	}
+
+	private static String randomString(Random random, int length) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			builder.append((char) ('a' + random.nextInt(3)));
+		return builder.toString();
+	}
+
+	private static byte[] bytes(String value) throws Exception {
+		return value.getBytes("UTF-8");
+	}
+}
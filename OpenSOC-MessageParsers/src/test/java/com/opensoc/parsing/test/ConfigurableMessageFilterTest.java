@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.parsing.test;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.json.simple.JSONObject;
+
+import com.opensoc.filters.ConfigurableMessageFilter;
+
+/**
+ * <ul>
+ * <li>Title: Test For ConfigurableMessageFilter</li>
+ * <li>Description: Checks protocol, field and CIDR rules read from a
+ * configuration</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class ConfigurableMessageFilterTest extends TestCase {
+
+	private PropertiesConfiguration conf = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void setUp() throws Exception {
+		conf = new PropertiesConfiguration();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void tearDown() throws Exception {
+		conf = null;
+	}
+
+	public void testNoRules() throws Exception {
+		ConfigurableMessageFilter filter = new ConfigurableMessageFilter(conf);
+
+		assertTrue(filter.emitTuple(message("http", "10.0.0.1", "10.0.0.2")));
+		assertTrue(filter.emitTuple(new JSONObject()));
+	}
+
+	public void testProtocols() throws Exception {
+		conf.addProperty("source.exclude.protocols", "x509,files,app_stats");
+		ConfigurableMessageFilter filter = new ConfigurableMessageFilter(conf);
+
+		assertFalse(filter.emitTuple(message("x509", "10.0.0.1", "10.0.0.2")));
+		assertFalse(filter.emitTuple(message("app_stats", null, null)));
+		assertTrue(filter.emitTuple(message("conn", "10.0.0.1", "10.0.0.2")));
+
+		conf.addProperty("source.include.protocols", "http, dns");
+		filter = new ConfigurableMessageFilter(conf);
+
+		assertTrue(filter.emitTuple(message("dns", "10.0.0.1", "10.0.0.2")));
+		assertFalse(filter.emitTuple(message("conn", "10.0.0.1", "10.0.0.2")));
+		assertFalse(filter.emitTuple(message(null, "10.0.0.1", "10.0.0.2")));
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testFields() throws Exception {
+		conf.addProperty("source.exclude.field.ip_dst_port", "137,138");
+		conf.addProperty("source.include.field.proto", "tcp,udp");
+		ConfigurableMessageFilter filter = new ConfigurableMessageFilter(conf);
+
+		JSONObject message = message("dns", "10.0.0.1", "10.0.0.2");
+		message.put("proto", "udp");
+		message.put("ip_dst_port", 53);
+		assertTrue(filter.emitTuple(message));
+
+		message.put("ip_dst_port", 137);
+		assertFalse(filter.emitTuple(message));
+
+		message.put("ip_dst_port", 53);
+		message.put("proto", "icmp");
+		assertFalse(filter.emitTuple(message));
+	}
+
+	public void testCidr() throws Exception {
+		conf.addProperty("source.exclude.cidr", "10.1.0.0/16,10.1.2.0/24");
+		conf.addProperty("source.include.cidr", "10.0.0.0/8,192.168.1.7/32");
+		ConfigurableMessageFilter filter = new ConfigurableMessageFilter(conf);
+
+		assertTrue(filter.emitTuple(message("http", "10.2.0.1", "8.8.8.8")));
+		assertTrue(filter.emitTuple(message("http", "8.8.8.8", "192.168.1.7")));
+		assertFalse(filter.emitTuple(message("http", "8.8.8.8", "192.168.1.8")));
+		assertFalse(filter.emitTuple(message("http", "10.2.0.1", "10.1.255.255")));
+		assertFalse(filter.emitTuple(message("http", "10.1.2.3", null)));
+		assertFalse(filter.emitTuple(message("http", "fe80::1", "bad")));
+	}
+
+	public void testInvalidCidr() throws Exception {
+		conf.addProperty("source.exclude.cidr", "10.0.0.0/33");
+
+		try {
+			new ConfigurableMessageFilter(conf);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject message(String protocol, String src, String dst) {
+		JSONObject message = new JSONObject();
+		if (protocol != null)
+			message.put("protocol", protocol);
+		if (src != null)
+			message.put("ip_src_addr", src);
+		if (dst != null)
+			message.put("ip_dst_addr", dst);
+		return message;
+	}
+}
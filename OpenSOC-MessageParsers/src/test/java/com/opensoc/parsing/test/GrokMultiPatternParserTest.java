@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.parsing.test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONObject;
+
+import com.opensoc.parsing.parsers.GrokMultiPatternParser;
+import com.opensoc.parsing.parsers.GrokSourcefireParser;
+
+/**
+ * <ul>
+ * <li>Title: Test For GrokMultiPatternParser</li>
+ * <li>Description: Checks prefix dispatch and that the captured fields match
+ * GrokSourcefireParser</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class GrokMultiPatternParserTest extends TestCase {
+
+	private static final String SNORT = "snort: [1:3192:2] WEB-CLIENT Windows Media Player directory traversal via Content-Disposition attempt [Classification: Attempted User Privilege Gain] [Priority: 1] {TCP} 46.149.110.103:80 -> 192.168.56.102:1073";
+
+	private GrokMultiPatternParser parser = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void setUp() throws Exception {
+		parser = new GrokMultiPatternParser();
+		parser.initializeParser();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void tearDown() throws Exception {
+		parser = null;
+	}
+
+	/**
+	 * Parses SourceFireSample.log and compares the captured fields with the
+	 * single pattern GrokSourcefireParser.
+	 */
+	public void testParseSampleLog() throws Exception {
+		URL log_url = getClass().getClassLoader().getResource(
+				"SourceFireSample.log");
+		GrokSourcefireParser grokParser = new GrokSourcefireParser();
+
+		BufferedReader br = new BufferedReader(new FileReader(log_url.getFile()));
+		String line = "";
+		while ((line = br.readLine()) != null) {
+			JSONObject expected = grokParser.parse(line.getBytes("UTF-8"));
+			expected.remove("GREEDYDATA");
+			expected.put("original_string", line);
+
+			assertEquals(expected, parser.parse(line.getBytes("UTF-8")));
+		}
+		br.close();
+	}
+
+	public void testParseSyslog() throws Exception {
+		JSONObject parsed = parser.parse(("<12>" + SNORT).getBytes("UTF-8"));
+
+		assertNotNull(parsed);
+		assertEquals(12, parsed.get("syslog_priority"));
+		assertEquals("TCP", parsed.get("protocol"));
+		assertEquals("46.149.110.103", parsed.get("ip_src_addr"));
+		assertEquals(80, parsed.get("ip_src_port"));
+		assertEquals("192.168.56.102", parsed.get("ip_dst_addr"));
+		assertEquals(1073, parsed.get("ip_dst_port"));
+		assertEquals("<12>" + SNORT, parsed.get("original_string"));
+	}
+
+	/**
+	 * A message whose prefix routes to the wrong pattern still falls back to
+	 * the others.
+	 */
+	public void testFallback() throws Exception {
+		JSONObject parsed = parser.parse(("<garbage " + SNORT).getBytes("UTF-8"));
+
+		assertNotNull(parsed);
+		assertNull(parsed.get("syslog_priority"));
+		assertEquals("TCP", parsed.get("protocol"));
+
+		assertNull(parser.parse("no match".getBytes("UTF-8")));
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.parsing.test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.opensoc.keys.IpPairKeyGenerator;
+import com.opensoc.keys.IpSumKeyGenerator;
+import com.opensoc.parser.interfaces.TopologyKeyGenerator;
+
+/**
+ * <ul>
+ * <li>Title: Test For IpPairKeyGenerator</li>
+ * <li>Description: Checks symmetry, uniqueness and how evenly keys spread
+ * over the tasks of a fields grouping</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class IpPairKeyGeneratorTest extends TestCase {
+
+	private static final int TASKS = 32;
+	private static final int PAIRS = 20000;
+
+	private IpPairKeyGenerator generator = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void setUp() throws Exception {
+		generator = new IpPairKeyGenerator();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void tearDown() throws Exception {
+		generator = null;
+	}
+
+	public void testSymmetric() {
+		assertEquals(generator.generateKey("10.1.2.3", "72.163.4.161"),
+				generator.generateKey("72.163.4.161", "10.1.2.3"));
+		assertEquals(generator.generateKey("fe80::1", "10.1.2.3"),
+				generator.generateKey("10.1.2.3", "fe80::1"));
+		assertEquals(generator.generateKey(null, "10.1.2.3"),
+				generator.generateKey("10.1.2.3", ""));
+		assertEquals("0", generator.generateKey(null, null));
+		assertFalse(generator.generateKey("10.1.2.3", "10.1.2.4").equals(
+				generator.generateKey("10.1.2.4", "10.1.2.5")));
+	}
+
+	/**
+	 * 10.0.0.2 + 10.0.0.10 and 10.0.0.11 + 10.0.0.1 share a summed key but
+	 * must not share a packed one.
+	 */
+	public void testNoCollisions() {
+		assertEquals(new IpSumKeyGenerator().generateKey("10.0.0.2",
+				"10.0.0.10"), new IpSumKeyGenerator().generateKey("10.0.0.11",
+				"10.0.0.1"));
+		assertFalse(generator.generateKey("10.0.0.2", "10.0.0.10").equals(
+				generator.generateKey("10.0.0.11", "10.0.0.1")));
+
+		Set<String> pairs = new HashSet<String>();
+		Set<String> keys = new HashSet<String>();
+		for (String[] pair : samplePairs()) {
+			if (pairs.add(pair[0] + " " + pair[1])
+					&& pairs.add(pair[1] + " " + pair[0]))
+				assertTrue(keys.add(generator.generateKey(pair[0], pair[1])));
+		}
+	}
+
+	/**
+	 * Distributes distinct conversations between a corporate /16 and a set of
+	 * external networks the way Storm's fields grouping would, and checks the
+	 * busiest task against the average.
+	 */
+	public void testTaskSkew() {
+		double pairSkew = skew(generator);
+
+		assertTrue("Skew too high: " + pairSkew, pairSkew < 1.2);
+	}
+
+	private double skew(TopologyKeyGenerator keys) {
+		int[] load = new int[TASKS];
+		Set<String> seen = new HashSet<String>();
+
+		for (String[] pair : samplePairs()) {
+			if (!seen.add(pair[0] + " " + pair[1]))
+				continue;
+			int hash = Arrays.asList(keys.generateKey(pair[0], pair[1]))
+					.hashCode();
+			load[((hash % TASKS) + TASKS) % TASKS]++;
+		}
+
+		int max = 0;
+		for (int tasks : load)
+			max = Math.max(max, tasks);
+		return max / (seen.size() / (double) TASKS);
+	}
+
+	/**
+	 * Clients from a few internal subnets talking to external servers, with
+	 * both sides skewed towards low host numbers and popular networks.
+	 */
+	private static String[][] samplePairs() {
+		String[] external = { "72.163.4.", "173.194.46.", "23.21.160.",
+				"204.79.197.", "104.16.", "8.8.", "157.240.2.", "13.107.21." };
+		Random random = new Random(42);
+		String[][] pairs = new String[PAIRS][];
+
+		for (int i = 0; i < PAIRS; i++) {
+			String client = "10.1." + (int) Math.abs(random.nextGaussian() * 8)
+					% 256 + "." + (1 + random.nextInt(254));
+
+			String network = external[(int) Math.abs(random.nextGaussian()
+					* external.length / 3)
+					% external.length];
+			String server = network
+					+ (network.split("\\.").length == 2 ? random.nextInt(4)
+							+ "." : "") + (1 + random.nextInt(40));
+
+			pairs[i] = random.nextBoolean() ? new String[] { client, server }
+					: new String[] { server, client };
+		}
+		return pairs;
+	}
+}
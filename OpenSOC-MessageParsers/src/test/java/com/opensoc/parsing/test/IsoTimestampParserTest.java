@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.parsing.test;
+
+import junit.framework.TestCase;
+
+import com.opensoc.parsing.parsers.IsoTimestampParser;
+
+/**
+ * <ul>
+ * <li>Title: Test For IsoTimestampParser</li>
+ * <li>Description: Checks epoch conversion, zones and the cached second</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class IsoTimestampParserTest extends TestCase {
+
+	private IsoTimestampParser parser = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void setUp() throws Exception {
+		parser = new IsoTimestampParser();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void tearDown() throws Exception {
+		parser = null;
+	}
+
+	public void testParse() {
+		assertEquals(1405612710000L, parse("2014-07-17T15:58:30Z"));
+		assertEquals(1405612710000L, parse("2014-07-17 15:58:30"));
+		assertEquals(1405612710500L, parse("2014-07-17T15:58:30.5Z"));
+		assertEquals(1405605510123L, parse("2014-07-17T15:58:30.123456+02:00"));
+		assertEquals(1405618110000L, parse("2014-07-17T15:58:30-0130"));
+		assertEquals(951825600000L, parse("2000-02-29T12:00:00Z"));
+		assertEquals(-1L, parse("1969-12-31T23:59:59.999Z"));
+	}
+
+	/**
+	 * The cached second must not leak into other seconds or zones.
+	 */
+	public void testCachedSecond() {
+		assertEquals(1405612710000L, parse("2014-07-17T15:58:30Z"));
+		assertEquals(1405612710000L, parse("2014-07-17T15:58:30Z"));
+		assertEquals(1405609110000L, parse("2014-07-17T15:58:30+01"));
+		assertEquals(1405612711000L, parse("2014-07-17T15:58:31Z"));
+
+		String message = "at 2014-07-17T15:58:30Z from";
+		assertEquals(1405612710000L, parser.parse(message, 3, 23));
+	}
+
+	public void testParseInvalid() {
+		String[] invalid = { "2014-02-29T00:00:00Z", "2014-07-17T15:58:3Z",
+				"2014-07-17T24:00:00Z", "2014-07-17X15:58:30Z",
+				"2014-07-17T15:58:30.Z", "2014-07-17T15:58:30+5",
+				"2014-07-17T15:58:30Zx", "" };
+
+		for (String timestamp : invalid) {
+			try {
+				parse(timestamp);
+				fail("Accepted " + timestamp);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	private long parse(String timestamp) {
+		return parser.parse(timestamp, 0, timestamp.length());
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.parsing.test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONObject;
+
+import com.opensoc.parsing.parsers.BasicBroParser;
+import com.opensoc.parsing.parsers.StreamingBroParser;
+
+/**
+ * <ul>
+ * <li>Title: Test For StreamingBroParser</li>
+ * <li>Description: Checks that the streaming parser produces the same output
+ * as BasicBroParser</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class StreamingBroParserTest extends TestCase {
+
+	private BasicBroParser basicParser = null;
+	private StreamingBroParser streamingParser = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void setUp() throws Exception {
+		basicParser = new BasicBroParser();
+		streamingParser = new StreamingBroParser();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void tearDown() throws Exception {
+		basicParser = null;
+		streamingParser = null;
+	}
+
+	/**
+	 * Parses every line of BroSample.log with both parsers and compares the
+	 * results.
+	 */
+	public void testParseSampleLog() throws Exception {
+		URL log_url = getClass().getClassLoader().getResource("BroSample.log");
+
+		BufferedReader br = new BufferedReader(new FileReader(log_url.getFile()));
+		String line = "";
+		while ((line = br.readLine()) != null) {
+			assertSameOutput(line);
+		}
+		br.close();
+	}
+
+	/**
+	 * Covers escapes, non-ASCII text, nested containers, numbers and a top
+	 * level key that needs sanitizing.
+	 */
+	public void testParseEdgeCases() throws Exception {
+		assertSameOutput("{\"dns\":{\"ts\":1402308259.609,\"uid\":\"CuJT272SKaJSuqO0Ia\",\"id.orig_h\":\"10.122.196.204\",\"id.orig_p\":33976,\"id.resp_h\":\"144.254.71.184\",\"id.resp_p\":53,\"proto\":\"udp\",\"trans_id\":62418,\"query\":\"www.cisco.com\",\"qclass\":1,\"qclass_name\":\"C_INTERNET\",\"qtype\":28,\"qtype_name\":\"AAAA\",\"rcode\":0,\"rcode_name\":\"NOERROR\",\"AA\":true,\"TC\":false,\"RD\":true,\"RA\":true,\"Z\":0,\"answers\":[\"www.cisco.com.akadns.net\",\"origin-www.cisco.com\",\"2001:420:1201:2::a\"],\"TTLs\":[3600.0,289.0,14.0],\"rejected\":false}}");
+		assertSameOutput(" { \"http-log\" : { \"ts\" : -12 , \"uri\" : \"/a\\\"b\\\\c\\/d\\u00e9\\n\", \"host\" : \"caf\u00e9.example.co.uk.\" , \"nested\" : { \"a\" : [ 1 , 2.5e3 , null , { } , [ ] ] } } } ");
+	}
+
+	public void testParseInvalid() throws Exception {
+		assertNull(streamingParser.parse("{\"http\":{\"ts\":1".getBytes("UTF-8")));
+		assertNull(streamingParser.parse("{\"http\":\"ts\"}".getBytes("UTF-8")));
+		assertNull(streamingParser.parse("{\"http\":{}} trailing".getBytes("UTF-8")));
+	}
+
+	private void assertSameOutput(String message) throws Exception {
+		JSONObject expected = basicParser.parse(message.getBytes("UTF-8"));
+		JSONObject actual = streamingParser.parse(message.getBytes("UTF-8"));
+
+		assertNotNull(expected);
+		assertNotNull(actual);
+		assertEquals(expected, actual);
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opensoc.parsing.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.json.simple.JSONObject;
+
+import backtype.storm.Constants;
+import backtype.storm.task.IOutputCollector;
+import backtype.storm.task.OutputCollector;
+import backtype.storm.tuple.Tuple;
+
+import com.opensoc.parser.interfaces.MessageFilter;
+import com.opensoc.parser.interfaces.MessageParser;
+import com.opensoc.parsing.TelemetryParserBolt;
+
+/**
+ * <ul>
+ * <li>Title: TelemetryParserBoltTest</li>
+ * <li>Description: Tests that a batching TelemetryParserBolt emits and acks
+ * in input order, flushes a partial batch on a tick, and fails only the
+ * tuple that could not be parsed</li>
+ * <li>Created: Oct 17, 2026</li>
+ * </ul>
+ * @version $Revision: 1.0 $
+ */
+public class TelemetryParserBoltTest extends TestCase {
+
+	private RecordingCollector collector;
+	private TelemetryParserBolt bolt;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void setUp() throws Exception {
+		collector = new RecordingCollector();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	public void tearDown() throws Exception {
+		if (bolt != null)
+			bolt.cleanup();
+	}
+
+	public void testBatchEmitsInInputOrder() {
+		prepare(50, 60000);
+
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 49; i++) {
+			bolt.execute(tuple(String.valueOf(i)));
+			expected.add("emit " + i);
+			expected.add("ack " + i);
+		}
+		assertTrue(collector.events.isEmpty());
+
+		bolt.execute(tuple("49"));
+		expected.add("emit 49");
+		expected.add("ack 49");
+
+		assertEquals(expected, collector.events);
+	}
+
+	public void testTickFlushesPartialBatch() throws Exception {
+		prepare(10, 50);
+
+		bolt.execute(tuple("a"));
+		bolt.execute(tuple("b"));
+		bolt.execute(tick());
+		assertTrue(collector.events.isEmpty());
+
+		Thread.sleep(100);
+		bolt.execute(tick());
+		assertEquals(Arrays.asList("emit a", "ack a", "emit b", "ack b"),
+				collector.events);
+
+		// The next tick has nothing left to flush
+		Thread.sleep(100);
+		bolt.execute(tick());
+		assertEquals(4, collector.events.size());
+	}
+
+	public void testFailedParseFailsOnlyItsTuple() {
+		prepare(3, 60000);
+
+		bolt.execute(tuple("a"));
+		bolt.execute(tuple("bad"));
+		bolt.execute(tuple("c"));
+
+		assertEquals(Arrays.asList("emit a", "ack a", "fail bad", "error",
+				"emit c", "ack c"), collector.events);
+	}
+
+	private void prepare(int batchSize, long batchTimeLimit) {
+		BaseConfiguration config = new BaseConfiguration();
+		config.setProperty("com.opensoc.metrics.reporter.jmx", "false");
+		config.setProperty("com.opensoc.metrics.reporter.console", "false");
+		config.setProperty("com.opensoc.metrics.reporter.graphite", "false");
+
+		bolt = new TelemetryParserBolt().withMessageParser(new SlowParser())
+				.withOutputFieldName("test")
+				.withMessageFilter(new MessageFilter() {
+					public boolean emitTuple(JSONObject message) {
+						return true;
+					}
+				}).withBatchSize(batchSize).withBatchTimeLimit(batchTimeLimit)
+				.withParserPoolSize(4).withMetricConfig(config);
+		bolt.prepare(new HashMap<Object, Object>(), null, new OutputCollector(
+				collector));
+	}
+
+	private static Tuple tuple(String id) {
+		return tuple("kafka", "default", id);
+	}
+
+	private static Tuple tick() {
+		return tuple(Constants.SYSTEM_COMPONENT_ID,
+				Constants.SYSTEM_TICK_STREAM_ID, null);
+	}
+
+	/**
+	 * Only answers the accessors the bolt uses. Storm's own tuples need a
+	 * running topology.
+	 */
+	private static Tuple tuple(final String component, final String stream,
+			final String id) {
+		return (Tuple) Proxy.newProxyInstance(Tuple.class.getClassLoader(),
+				new Class<?>[] { Tuple.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						String name = method.getName();
+						if (name.equals("getBinary"))
+							return id.getBytes();
+						if (name.equals("getSourceComponent"))
+							return component;
+						if (name.equals("getSourceStreamId"))
+							return stream;
+						if (name.equals("hashCode"))
+							return System.identityHashCode(proxy);
+						if (name.equals("equals"))
+							return proxy == args[0];
+						if (name.equals("toString"))
+							return id;
+						throw new UnsupportedOperationException(name);
+					}
+				});
+	}
+
+	/**
+	 * Takes a random few milliseconds per message so the pool finishes them
+	 * out of order, and throws for "bad"
+	 */
+	private static class SlowParser implements MessageParser {
+
+		private final Random random = new Random();
+
+		public void initializeParser() {
+		}
+
+		@SuppressWarnings("unchecked")
+		public JSONObject parse(byte[] raw_message) {
+			String id = new String(raw_message);
+			if (id.equals("bad"))
+				throw new IllegalArgumentException("Cannot parse " + id);
+
+			int delay;
+			synchronized (random) {
+				delay = random.nextInt(3);
+			}
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			JSONObject message = new JSONObject();
+			message.put("id", id);
+			message.put("ip_src_addr", "10.0.0.1");
+			message.put("ip_dst_addr", "10.0.0.2");
+			return message;
+		}
+	}
+
+	/**
+	 * Records emits, acks and fails in the order the bolt makes them
+	 */
+	private static class RecordingCollector implements IOutputCollector {
+
+		final List<String> events = new ArrayList<String>();
+
+		public List<Integer> emit(String streamId, Collection<Tuple> anchors,
+				List<Object> tuple) {
+			if (streamId.equals("message")) {
+				JSONObject message = (JSONObject) ((JSONObject) tuple.get(1))
+						.get("message");
+				events.add("emit " + message.get("id"));
+			} else {
+				events.add(streamId);
+			}
+			return null;
+		}
+
+		public void emitDirect(int taskId, String streamId,
+				Collection<Tuple> anchors, List<Object> tuple) {
+		}
+
+		public void ack(Tuple input) {
+			events.add("ack " + input);
+		}
+
+		public void fail(Tuple input) {
+			events.add("fail " + input);
+		}
+
+		public void reportError(Throwable error) {
+		}
+	}
+}
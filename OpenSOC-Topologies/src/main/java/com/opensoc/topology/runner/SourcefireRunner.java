@@ -17,8 +17,10 @@
  */
 package com.opensoc.topology.runner;
 
-import com.opensoc.filters.GenericMessageFilter;
+import com.opensoc.filters.ByteSignatureMessageFilter;
+import com.opensoc.filters.ConfigurableMessageFilter;
 import com.opensoc.parser.interfaces.MessageParser;
+import com.opensoc.parser.interfaces.TopologyKeyGenerator;
 import com.opensoc.parsing.AbstractParserBolt;
 import com.opensoc.parsing.TelemetryParserBolt;
 import com.opensoc.test.spouts.GenericInternalTestSpout;
@@ -47,12 +49,26 @@ public class SourcefireRunner extends TopologyRunner{
 			
 			Class loaded_class = Class.forName(class_name);
 			MessageParser parser = (MessageParser) loaded_class.newInstance();
+			
+			String key_generator_class = config.getString(
+					"bolt.parser.key.generator",
+					"com.opensoc.keys.IpPairKeyGenerator");
+			TopologyKeyGenerator key_generator = (TopologyKeyGenerator) Class
+					.forName(key_generator_class).newInstance();
 	        
 	        
 			AbstractParserBolt parser_bolt = new TelemetryParserBolt()
 					.withMessageParser(parser)
 					.withOutputFieldName(topology_name)
-					.withMessageFilter(new GenericMessageFilter())
+					.withMessageFilter(new ConfigurableMessageFilter(config))
+					.withRawMessageFilter(new ByteSignatureMessageFilter(config))
+					.withTopologyKeyGenerator(key_generator)
+					.withBatchSize(config.getInt("bolt.parser.batch.size", 1))
+					.withBatchTimeLimit(
+							config.getLong("bolt.parser.batch.time.limit", 1000))
+					.withParserPoolSize(
+							config.getInt("bolt.parser.pool.size", Runtime
+									.getRuntime().availableProcessors()))
 					.withMetricConfig(config);
 
 			builder.setBolt(name, parser_bolt,
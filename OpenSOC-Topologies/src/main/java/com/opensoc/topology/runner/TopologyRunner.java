@@ -59,11 +59,21 @@ import com.opensoc.alerts.TelemetryAlertsBolt;
 import com.opensoc.alerts.adapters.HbaseWhiteAndBlacklistAdapter;
 import com.opensoc.alerts.interfaces.AlertsAdapter;
 import com.opensoc.enrichment.adapters.cif.CIFHbaseAdapter;
+import com.opensoc.enrichment.adapters.geo.AbstractGeoAdapter;
+import com.opensoc.enrichment.adapters.geo.CsvGeoIndexSource;
+import com.opensoc.enrichment.adapters.geo.GeoIndexAdapter;
+import com.opensoc.enrichment.adapters.geo.GeoIndexSource;
 import com.opensoc.enrichment.adapters.geo.GeoMysqlAdapter;
+import com.opensoc.enrichment.adapters.geo.MappedGeoIndexSource;
+import com.opensoc.enrichment.adapters.geo.MysqlGeoIndexSource;
 import com.opensoc.enrichment.adapters.host.HostFromPropertiesFileAdapter;
 import com.opensoc.enrichment.adapters.whois.WhoisHBaseAdapter;
+import com.opensoc.enrichment.adapters.whois.WhoisLocalAdapter;
+import com.opensoc.enrichment.common.AsyncEnrichmentBolt;
+import com.opensoc.enrichment.common.CompositeEnrichmentBolt;
 import com.opensoc.enrichment.common.GenericEnrichmentBolt;
 import com.opensoc.enrichment.interfaces.EnrichmentAdapter;
+import com.opensoc.enrichment.interfaces.ThreadSafeEnrichmentAdapter;
 import com.opensoc.hbase.HBaseBolt;
 import com.opensoc.hbase.HBaseStreamPartitioner;
 import com.opensoc.hbase.TupleTableConfig;
@@ -88,6 +98,7 @@ public abstract class TopologyRunner {
 	protected Stack<String> alertComponents = new Stack<String>();
 	protected Stack<String> dataComponents = new Stack<String>();
 	protected Stack<String> terminalComponents = new Stack<String>();
+	protected CompositeEnrichmentBolt compositeEnrichment;
 
 	public void initTopology(String args[], String subdir)
 			throws Exception {
@@ -193,13 +204,16 @@ public abstract class TopologyRunner {
 					"parser.bolt");
 		}
 
+		if (config.getBoolean("bolt.enrichment.composite.enabled", false))
+			compositeEnrichment = new CompositeEnrichmentBolt()
+					.withMetricConfiguration(config);
+
 		if (config.getBoolean("bolt.enrichment.geo.enabled", false)) {
 			String component_name = config.getString(
 					"bolt.enrichment.geo.name", "DefaultGeoEnrichmentBolt");
 
 			success = initializeGeoEnrichment(topology_name, component_name);
-			messageComponents.add(component_name);
-			errorComponents.add(component_name);
+			addEnrichmentComponent(component_name);
 
 			System.out.println("[OpenSOC] ------Component " + component_name
 					+ " initialized with the following settings:");
@@ -216,8 +230,7 @@ public abstract class TopologyRunner {
 
 			success = initializeHostsEnrichment(topology_name, component_name,
 					"OpenSOC_Configs/etc/whitelists/known_hosts.conf");
-			messageComponents.add(component_name);
-			errorComponents.add(component_name);
+			addEnrichmentComponent(component_name);
 
 			System.out.println("[OpenSOC] ------Component " + component_name
 					+ " initialized with the following settings:");
@@ -231,8 +244,7 @@ public abstract class TopologyRunner {
 					"bolt.enrichment.whois.name", "DefaultWhoisEnrichmentBolt");
 
 			success = initializeWhoisEnrichment(topology_name, component_name);
-			messageComponents.add(component_name);
-			errorComponents.add(component_name);
+			addEnrichmentComponent(component_name);
 
 			System.out.println("[OpenSOC] ------Component " + component_name
 					+ " initialized with the following settings:");
@@ -246,6 +258,21 @@ public abstract class TopologyRunner {
 					"bolt.enrichment.cif.name", "DefaultCIFEnrichmentBolt");
 
 			success = initializeCIFEnrichment(topology_name, component_name);
+			addEnrichmentComponent(component_name);
+
+			System.out.println("[OpenSOC] ------Component " + component_name
+					+ " initialized with the following settings:");
+
+			SettingsLoader.printConfigOptions((PropertiesConfiguration) config,
+					"bolt.enrichment.cif");
+		}
+
+		if (compositeEnrichment != null && compositeEnrichment.size() > 0) {
+			String component_name = config.getString(
+					"bolt.enrichment.composite.name",
+					"DefaultCompositeEnrichmentBolt");
+
+			success = initializeCompositeEnrichment(component_name);
 			messageComponents.add(component_name);
 			errorComponents.add(component_name);
 
@@ -253,7 +280,7 @@ public abstract class TopologyRunner {
 					+ " initialized with the following settings:");
 
 			SettingsLoader.printConfigOptions((PropertiesConfiguration) config,
-					"bolt.enrichment.cif");
+					"bolt.enrichment.composite");
 		}
 
 		if (config.getBoolean("bolt.alerts.enabled", false)) {
@@ -543,6 +570,107 @@ public abstract class TopologyRunner {
 
 	abstract boolean initializeTestingSpout(String name);
 
+	/**
+	 * Returns an AsyncEnrichmentBolt if bolt.enrichment.NAME.async.enabled is
+	 * set and the adapter is a ThreadSafeEnrichmentAdapter, so slow lookups do
+	 * not block the executor, and a GenericEnrichmentBolt otherwise. Stages of
+	 * the composite enrichment bolt are always GenericEnrichmentBolts, since
+	 * the composite bolt does not use their async or batch settings. The
+	 * cache policy is read from bolt.enrichment.NAME.cache.*
+	 */
+	private GenericEnrichmentBolt newEnrichmentBolt(String enrichment,
+			EnrichmentAdapter adapter) {
+		String prefix = "bolt.enrichment." + enrichment + ".async.";
+		GenericEnrichmentBolt bolt;
+		boolean async = config.getBoolean(prefix + "enabled", false);
+
+		if (compositeEnrichment != null) {
+			if (async)
+				System.out.println("[OpenSOC] WARNING: " + enrichment
+						+ " is fused into the composite enrichment bolt, ignoring "
+						+ prefix + "enabled");
+			if (config.getInt("bolt.enrichment." + enrichment + ".batch.size", 1) > 1)
+				System.out.println("[OpenSOC] WARNING: " + enrichment
+						+ " is fused into the composite enrichment bolt, ignoring bolt.enrichment."
+						+ enrichment + ".batch.size");
+			async = false;
+		} else if (async && !(adapter instanceof ThreadSafeEnrichmentAdapter)) {
+			System.out.println("[OpenSOC] " + adapter.getClass().getSimpleName()
+					+ " is not thread-safe, ignoring " + prefix + "enabled");
+			async = false;
+		}
+
+		if (!async)
+			bolt = new GenericEnrichmentBolt();
+		else
+			bolt = new AsyncEnrichmentBolt()
+					.withMaxInFlight(config.getInt(prefix + "max.inflight", 1000))
+					.withLookupTimeout(config.getLong(prefix + "timeout", 2000))
+					.withLookupPoolSize(config.getInt(prefix + "pool.size", 8));
+
+		prefix = "bolt.enrichment." + enrichment + ".cache.";
+
+		return bolt
+				.withMaxCacheWeight(config.getLong(prefix + "max.weight.bytes", 0))
+				.withCacheRefresh(config.getLong(prefix + "refresh.minutes", 0))
+				.withHotKeyFile(config.getString(prefix + "hotkeys.file", null));
+	}
+
+	/**
+	 * Adds an enrichment bolt behind the last message component, or makes it
+	 * a stage of the composite enrichment bolt if enrichments are fused
+	 */
+	private void setEnrichmentBolt(String name, String enrichment,
+			GenericEnrichmentBolt bolt, String messageUpstreamComponent) {
+
+		if (compositeEnrichment != null) {
+			compositeEnrichment.withEnrichment(bolt);
+			return;
+		}
+
+		builder.setBolt(name, bolt,
+				config.getInt("bolt.enrichment." + enrichment + ".parallelism.hint"))
+				.fieldsGrouping(messageUpstreamComponent, "message",
+						new Fields("key"))
+				.setNumTasks(
+						config.getInt("bolt.enrichment." + enrichment + ".num.tasks"));
+	}
+
+	/**
+	 * Fused enrichments are registered once, as the composite bolt
+	 */
+	private void addEnrichmentComponent(String name) {
+		if (compositeEnrichment != null)
+			return;
+
+		messageComponents.add(name);
+		errorComponents.add(name);
+	}
+
+	private boolean initializeCompositeEnrichment(String name) {
+
+		try {
+			String messageUpstreamComponent = messageComponents
+					.get(messageComponents.size() - 1);
+
+			System.out.println("[OpenSOC] ------" + name
+					+ " is initializing from " + messageUpstreamComponent);
+
+			builder.setBolt(name, compositeEnrichment,
+					config.getInt("bolt.enrichment.composite.parallelism.hint"))
+					.fieldsGrouping(messageUpstreamComponent, "message",
+							new Fields("key"))
+					.setNumTasks(
+							config.getInt("bolt.enrichment.composite.num.tasks"));
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(0);
+		}
+
+		return true;
+	}
+
 	private boolean initializeGeoEnrichment(String topology_name, String name) {
 
 		try {
@@ -556,28 +684,52 @@ public abstract class TopologyRunner {
 			geo_keys.add(config.getString("source.ip"));
 			geo_keys.add(config.getString("dest.ip"));
 
-			GeoMysqlAdapter geo_adapter = new GeoMysqlAdapter(
-					config.getString("mysql.ip"), config.getInt("mysql.port"),
-					config.getString("mysql.username"),
-					config.getString("mysql.password"),
-					config.getString("bolt.enrichment.geo.adapter.table"));
+			AbstractGeoAdapter geo_adapter;
+
+			if (config.getBoolean("bolt.enrichment.geo.index.enabled", false)) {
+				GeoIndexSource geo_source;
+
+				if (config.containsKey("bolt.enrichment.geo.index.file"))
+					geo_source = new MappedGeoIndexSource(
+							config.getString("bolt.enrichment.geo.index.file"));
+				else if (config.containsKey("bolt.enrichment.geo.index.blocks.csv"))
+					geo_source = new CsvGeoIndexSource(
+							config.getString("bolt.enrichment.geo.index.blocks.csv"),
+							config.getString("bolt.enrichment.geo.index.locations.csv"));
+				else
+					geo_source = new MysqlGeoIndexSource(
+							config.getString("mysql.ip"),
+							config.getInt("mysql.port"),
+							config.getString("mysql.username"),
+							config.getString("mysql.password"),
+							config.getString("bolt.enrichment.geo.adapter.table"));
+
+				geo_adapter = new GeoIndexAdapter(geo_source, config.getLong(
+						"bolt.enrichment.geo.index.reload.minutes", 0));
+			} else {
+				geo_adapter = new GeoMysqlAdapter(
+						config.getString("mysql.ip"), config.getInt("mysql.port"),
+						config.getString("mysql.username"),
+						config.getString("mysql.password"),
+						config.getString("bolt.enrichment.geo.adapter.table"));
+			}
 
-			GenericEnrichmentBolt geo_enrichment = new GenericEnrichmentBolt()
+			GenericEnrichmentBolt geo_enrichment = newEnrichmentBolt("geo", geo_adapter)
 					.withEnrichmentTag(
 							config.getString("bolt.enrichment.geo.enrichment_tag"))
 					.withOutputFieldName(topology_name)
 					.withAdapter(geo_adapter)
+					.withCacheName(
+							geo_adapter.getClass().getSimpleName() + ":"
+									+ config.getString("bolt.enrichment.geo.adapter.table"))
 					.withMaxTimeRetain(
 							config.getInt("bolt.enrichment.geo.MAX_TIME_RETAIN"))
 					.withMaxCacheSize(
 							config.getInt("bolt.enrichment.geo.MAX_CACHE_SIZE"))
 					.withKeys(geo_keys).withMetricConfiguration(config);
 
-			builder.setBolt(name, geo_enrichment,
-					config.getInt("bolt.enrichment.geo.parallelism.hint"))
-					.fieldsGrouping(messageUpstreamComponent, "message",
-							new Fields("key"))
-					.setNumTasks(config.getInt("bolt.enrichment.geo.num.tasks"));
+			setEnrichmentBolt(name, "geo", geo_enrichment,
+					messageUpstreamComponent);
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -619,12 +771,8 @@ public abstract class TopologyRunner {
 					.withOutputFieldName(topology_name).withKeys(hosts_keys)
 					.withMetricConfiguration(config);
 
-			builder.setBolt(name, host_enrichment,
-					config.getInt("bolt.enrichment.host.parallelism.hint"))
-					.fieldsGrouping(messageUpstreamComponent, "message",
-							new Fields("key"))
-					.setNumTasks(
-							config.getInt("bolt.enrichment.host.num.tasks"));
+			setEnrichmentBolt(name, "host", host_enrichment,
+					messageUpstreamComponent);
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -644,6 +792,9 @@ public abstract class TopologyRunner {
 			Constructor constructor = loaded_class.getConstructor(new Class[] { Map.class});
 			
 			Map<String, String> settings = SettingsLoader.getConfigOptions((PropertiesConfiguration)config, config.getString("bolt.alerts.adapter") + ".");
+
+			if (!settings.containsKey("rules_file"))
+				settings.put("rules_file", alerts_path);
 			
 			System.out.println("Adapter Settings: ");
 			SettingsLoader.printOptionalSettings(settings);
@@ -664,12 +815,24 @@ public abstract class TopologyRunner {
 
 			 
 
+			String[] aggregation_key = config
+					.getStringArray("bolt.alerts.aggregation.key");
+			if (aggregation_key.length == 0)
+				aggregation_key = new String[] { "designated_host", "type" };
+
 			TelemetryAlertsBolt alerts_bolt = new TelemetryAlertsBolt()
-					.withIdentifier(alerts_identifier).withMaxCacheSize(1000)
-					.withMaxTimeRetain(3600).withAlertsAdapter(alerts_adapter)
+					.withIdentifier(alerts_identifier)
+					.withMaxCacheSize(config.getInt("bolt.alerts.cache.size", 1000))
+					.withMaxTimeRetain(config.getInt("bolt.alerts.cache.time.retain", 3600))
+					.withAggregationWindow(config.getInt("bolt.alerts.aggregation.window.seconds", 0))
+					.withAggregationKey(aggregation_key)
+					.withAggregationMaxKeys(config.getInt("bolt.alerts.aggregation.max.keys", 10000))
+					.withAlertsAdapter(alerts_adapter)
 					.withOutputFieldName("message")
 					.withMetricConfiguration(config);
 
+			// The aggregation key fields are only set by the alerts adapter,
+			// so tasks aggregate separately, see the Alerts readme
 			builder.setBolt(name, alerts_bolt,
 					config.getInt("bolt.alerts.parallelism.hint"))
 					.fieldsGrouping(messageUpstreamComponent, "message",
@@ -775,28 +938,43 @@ public abstract class TopologyRunner {
 			for (String key : keys_from_settings)
 				whois_keys.add(key);
 
-			EnrichmentAdapter whois_adapter = new WhoisHBaseAdapter(
-					config.getString("bolt.enrichment.whois.hbase.table.name"),
-					config.getString("kafka.zk.list"),
-					config.getString("kafka.zk.port"));
+			EnrichmentAdapter whois_adapter;
 
-			GenericEnrichmentBolt whois_enrichment = new GenericEnrichmentBolt()
+			if (config.getBoolean("bolt.enrichment.whois.local.enabled", false))
+				whois_adapter = new WhoisLocalAdapter(
+						config.getString("bolt.enrichment.whois.hbase.table.name"),
+						config.getString("kafka.zk.list"),
+						config.getString("kafka.zk.port"),
+						config.getString("bolt.enrichment.whois.local.dir"))
+						.withDeltaRefresh(config.getLong(
+								"bolt.enrichment.whois.local.delta.minutes", 15));
+			else
+				whois_adapter = new WhoisHBaseAdapter(
+						config.getString("bolt.enrichment.whois.hbase.table.name"),
+						config.getString("kafka.zk.list"),
+						config.getString("kafka.zk.port"));
+
+			GenericEnrichmentBolt whois_enrichment = newEnrichmentBolt("whois", whois_adapter)
 					.withEnrichmentTag(
 							config.getString("bolt.enrichment.whois.enrichment_tag"))
 					.withOutputFieldName(topology_name)
 					.withAdapter(whois_adapter)
+					.withCacheName(
+							whois_adapter.getClass().getSimpleName() + ":"
+									+ config.getString("bolt.enrichment.whois.hbase.table.name"))
 					.withMaxTimeRetain(
 							config.getInt("bolt.enrichment.whois.MAX_TIME_RETAIN"))
 					.withMaxCacheSize(
 							config.getInt("bolt.enrichment.whois.MAX_CACHE_SIZE"))
-					.withKeys(whois_keys).withMetricConfiguration(config);
+					.withKeys(whois_keys)
+					.withBatchSize(
+							config.getInt("bolt.enrichment.whois.batch.size", 1))
+					.withBatchTimeLimit(
+							config.getLong("bolt.enrichment.whois.batch.time.limit", 1000))
+					.withMetricConfiguration(config);
 
-			builder.setBolt(name, whois_enrichment,
-					config.getInt("bolt.enrichment.whois.parallelism.hint"))
-					.fieldsGrouping(messageUpstreamComponent, "message",
-							new Fields("key"))
-					.setNumTasks(
-							config.getInt("bolt.enrichment.whois.num.tasks"));
+			setEnrichmentBolt(name, "whois", whois_enrichment,
+					messageUpstreamComponent);
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -869,14 +1047,24 @@ public abstract class TopologyRunner {
 			cif_keys.add(config.getString("bolt.enrichment.cif.host"));
 			cif_keys.add(config.getString("bolt.enrichment.cif.email"));
 
-			GenericEnrichmentBolt cif_enrichment = new GenericEnrichmentBolt()
+			CIFHbaseAdapter cif_adapter = new CIFHbaseAdapter(
+					config.getString("kafka.zk.list"),
+					config.getString("kafka.zk.port"),
+					config.getString("bolt.enrichment.cif.tablename"))
+					.withMetricConfiguration(config);
+
+			if (config.getBoolean("bolt.enrichment.cif.filter.enabled", false))
+				cif_adapter.withRowKeyFilter(config.getDouble(
+						"bolt.enrichment.cif.filter.false.positive.rate", 0.01),
+						config.getLong("bolt.enrichment.cif.filter.refresh.minutes", 60));
+
+			GenericEnrichmentBolt cif_enrichment = newEnrichmentBolt("cif", cif_adapter)
 					.withEnrichmentTag(
 							config.getString("bolt.enrichment.cif.enrichment_tag"))
-					.withAdapter(
-							new CIFHbaseAdapter(config
-									.getString("kafka.zk.list"), config
-									.getString("kafka.zk.port"), config
-									.getString("bolt.enrichment.cif.tablename")))
+					.withAdapter(cif_adapter)
+					.withCacheName(
+							"CIFHbaseAdapter:"
+									+ config.getString("bolt.enrichment.cif.tablename"))
 					.withOutputFieldName(topology_name)
 					.withEnrichmentTag("CIF_Enrichment")
 					.withKeys(cif_keys)
@@ -884,13 +1072,14 @@ public abstract class TopologyRunner {
 							config.getInt("bolt.enrichment.cif.MAX_TIME_RETAIN"))
 					.withMaxCacheSize(
 							config.getInt("bolt.enrichment.cif.MAX_CACHE_SIZE"))
+					.withBatchSize(
+							config.getInt("bolt.enrichment.cif.batch.size", 1))
+					.withBatchTimeLimit(
+							config.getLong("bolt.enrichment.cif.batch.time.limit", 1000))
 					.withMetricConfiguration(config);
 
-			builder.setBolt(name, cif_enrichment,
-					config.getInt("bolt.enrichment.cif.parallelism.hint"))
-					.fieldsGrouping(messageUpstreamComponent, "message",
-							new Fields("key"))
-					.setNumTasks(config.getInt("bolt.enrichment.cif.num.tasks"));
+			setEnrichmentBolt(name, "cif", cif_enrichment,
+					messageUpstreamComponent);
 
 		} catch (Exception e) {
 			e.printStackTrace();